@@ -335,7 +335,7 @@ class OutputData{
 }
 
 public class Main {	
-	private static FormulaStruct formula0(){
+	static FormulaStruct formula0(){
 		// TN: very basic fmla
 		// Every element is in either r1 or r2, possibly both:
 				
@@ -356,7 +356,7 @@ public class Main {
 	}
 
 	
-	private static FormulaStruct formula1(){
+	static FormulaStruct formula1(){
 		Variable x = Variable.unary("x");
 		Relation r1 = Relation.unary("R1");
 		Relation r2 = Relation.unary("R2"); 
@@ -377,7 +377,7 @@ public class Main {
 		return new FormulaStruct(f, b);
 	}
 
-	private static FormulaStruct formula2(int length){
+	static FormulaStruct formula2(int length){
 		Variable x = Variable.unary("x");
 		Variable y = Variable.unary("y");
 		Expression xy = x.product(y);
@@ -406,7 +406,7 @@ public class Main {
 	}
 
 	//Multiplication where variables interleave (This example is not that interesting!).
-	private static FormulaStruct formula3(int length){
+	static FormulaStruct formula3(int length){
 		int size = length;
 		Formula f = null;
 		Formula temp = null;
@@ -454,7 +454,7 @@ public class Main {
 	}
 	
 	//Multiplication where relations interleave.
-	private static FormulaStruct formula4(int length){
+	static FormulaStruct formula4(int length){
 		int size = length;
 		Formula f = null;
 		Formula temp = null;
@@ -504,7 +504,7 @@ public class Main {
 	}
 	
 	//Transitive Closure
-	private static FormulaStruct formula5(){
+	static FormulaStruct formula5(){
 		Variable x = Variable.unary("x");
 		Variable y = Variable.unary("y");
 		Variable z = Variable.unary("z");
@@ -550,7 +550,7 @@ public class Main {
 	 * @param fileName is the address of the example file.
 	 * @return a formula
 	 */
-	private static FormulaStruct exampleFormula(String fileName){
+	static FormulaStruct exampleFormula(String fileName){
 		Variable x = Variable.unary("x");
 		ExampleLoader example = new ExampleLoader(fileName);
 		ArrayList<ArrayList<Integer>> data = example.getContent();
@@ -607,6 +607,24 @@ public class Main {
 		return new FormulaStruct(f, b);
 	}
 	
+	/**
+	 * Builds one of the formulas above.
+	 * @param which the number of the formula (0 to 5).
+	 * @param length the length of the formulas 2, 3 and 4.
+	 * @return the formula and its bounds, or null if there is no such formula.
+	 */
+	static FormulaStruct formula(int which, int length){
+		switch (which){
+			case 0: return formula0();
+			case 1: return formula1();
+			case 2: return formula2(length);
+			case 3: return formula3(length);
+			case 4: return formula4(length);
+			case 5: return formula5();
+			default: return null;
+		}
+	}
+	
 	/**
 	 * Gets executed when parameter "-m formula" is passed to the program.
 	 * @param optFormula parameter -f
@@ -624,15 +642,7 @@ public class Main {
 			System.exit(0);
 		}
 		
-		FormulaStruct fs = null;
-		switch (optFormula.value){
-			case 0: fs = formula0(); break;
-			case 1: fs = formula1(); break;
-			case 2: fs = formula2(optLength.value); break;
-			case 3: fs = formula3(optLength.value); break;
-			case 4: fs = formula4(optLength.value); break;
-			case 5: fs = formula5(); break;
-		}
+		FormulaStruct fs = formula(optFormula.value, optLength.value);
 		
 		Formula fmla = fs.getFmla();
 		Bounds b = fs.getBounds();
@@ -705,7 +715,7 @@ public class Main {
 						System.out.println("Model:    " + model.instance().relationTuples());
 						Iterator<MinSolution> augModels = null;
 						try{
-							augModels = solver.augment(fs.fmla, models, instance);
+							augModels = solver.augment(models, instance);
 						}
 						catch(ExplorationException e){
 							System.err.println(e.getMessage());
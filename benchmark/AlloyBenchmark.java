@@ -0,0 +1,194 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kodkod.ast.Relation;
+import kodkod.instance.Instance;
+import kodkod.instance.Tuple;
+import minalloy.InstanceCanonicalizer;
+import minalloy.IsomorphicSolutionBuilder;
+import minalloy.translator.MinA4Options;
+import minalloy.translator.MinA4Solution;
+import minalloy.translator.MinTranslateAlloyToKodkod;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.mit.csail.sdg.alloy4.A4Reporter;
+import edu.mit.csail.sdg.alloy4compiler.ast.Command;
+import edu.mit.csail.sdg.alloy4compiler.ast.Module;
+import edu.mit.csail.sdg.alloy4compiler.parser.CompUtil;
+
+/**
+ * Benchmarks of Aluminum on a run command of an Alloy spec. Translation is part of
+ * firstModel, as MinTranslateAlloyToKodkod does both. As in FormulaBenchmark, every
+ * operation is measured once per iteration on a new solution, except that nextModel goes
+ * on with the solution of the previous one.
+ * The benchmarks are:
+ *  firstModel         MinTranslateAlloyToKodkod.execute_command
+ *  nextModel          MinA4Solution.next, up to the models-th solution of a command
+ *  consistentFacts    MinA4Solution.getConsistentFacts on the first solution
+ *  augment            augmenting the first solution with one of its consistent facts, in turn
+ *  isomorphic         IsomorphicSolutionBuilder.getIsomorphicSolutions on the first solution
+ *  canonicalForm      InstanceCanonicalizer.canonicalForm on the first solution
+ *
+ * Example: java org.openjdk.jmh.Main AlloyBenchmark -p spec=resources/test.als -p command=0,1 -rf json -rff results.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AlloyBenchmark {
+	/** The Alloy spec. */
+	@Param("resources/test.als")
+	public String spec;
+
+	/** The index of the run command among the run commands of the spec (check commands are left out). */
+	@Param("0")
+	public int command;
+
+	/** The number of solutions that nextModel takes from a command before it starts over. */
+	@Param("10")
+	public int models;
+
+	/** The symmetry-breaking option of the solver. */
+	@Param("0")
+	public int symmetryBreaking;
+
+	private final A4Reporter rep = new A4Reporter();
+	private Module world;
+	private Command run;
+	private MinA4Options options;
+
+	@Setup(Level.Trial)
+	public void loadSpec() throws Exception {
+		world = CompUtil.parseEverything_fromFile(rep, null, spec);
+		List<Command> runs = new ArrayList<Command>();
+		for(Command c : world.getAllCommands())
+			if(!c.check)
+				runs.add(c);
+		if(command >= runs.size())
+			throw new IllegalArgumentException(spec + " has " + runs.size() + " run commands.");
+		run = runs.get(command);
+		options = new MinA4Options();
+		options.symmetry = symmetryBreaking;
+	}
+
+	/**
+	 * Returns the first solution of the run command.
+	 */
+	private MinA4Solution execute() throws Exception {
+		return MinTranslateAlloyToKodkod.execute_command(rep, world.getAllReachableSigs(), run, options);
+	}
+
+	/**
+	 * Returns the first solution of the run command of the given benchmark.
+	 * @throws IllegalStateException - the command is unsatisfiable, so the benchmark that needs it cannot run
+	 */
+	private static MinA4Solution firstSolution(AlloyBenchmark b) throws Exception {
+		MinA4Solution ans = b.execute();
+		if(!ans.satisfiable())
+			throw new IllegalStateException("The command is unsatisfiable.");
+		return ans;
+	}
+
+	/**
+	 * The first solution of the command.
+	 */
+	@State(Scope.Thread)
+	public static class FirstSolution {
+		MinA4Solution ans;
+
+		@Setup(Level.Iteration)
+		public void setup(AlloyBenchmark b) throws Exception {
+			ans = firstSolution(b);
+		}
+	}
+
+	/**
+	 * A solution that is kept from one iteration to the next, until the command has given as many
+	 * solutions as the models parameter says, or has none left.
+	 */
+	@State(Scope.Thread)
+	public static class Enumeration {
+		MinA4Solution ans;
+		int taken;
+
+		@Setup(Level.Iteration)
+		public void setup(AlloyBenchmark b) throws Exception {
+			if(ans == null || taken >= b.models || !ans.satisfiable()){
+				ans = firstSolution(b);
+				taken = 1;
+			}
+			taken++;
+		}
+	}
+
+	/**
+	 * The first solution of the command, and the next of its consistent facts to augment it with.
+	 */
+	@State(Scope.Thread)
+	public static class Augmentation {
+		MinA4Solution ans;
+		String fact;
+		int next;
+
+		@Setup(Level.Iteration)
+		public void setup(AlloyBenchmark b) throws Exception {
+			ans = firstSolution(b);
+			Instance facts = ans.getConsistentFacts();
+			List<String> candidates = new ArrayList<String>();
+			for(Relation r : facts.relations())
+				for(Tuple t : facts.tuples(r))
+					// No dictionary: the raw tuple string, as in ExecutionTimeRecorder
+					candidates.add(r.toString() + t.toString());
+			if(candidates.isEmpty())
+				throw new IllegalStateException("The first solution has no consistent facts.");
+			fact = candidates.get(next++ % candidates.size());
+		}
+	}
+
+	@Benchmark
+	public MinA4Solution firstModel() throws Exception {
+		return execute();
+	}
+
+	@Benchmark
+	public MinA4Solution nextModel(Enumeration s) throws Exception {
+		return s.ans = s.ans.next();
+	}
+
+	@Benchmark
+	public Instance consistentFacts(FirstSolution s){
+		return s.ans.getConsistentFacts();
+	}
+
+	@Benchmark
+	public MinA4Solution augment(Augmentation s) throws Exception {
+		return s.ans.augment(s.fact, null);
+	}
+
+	@Benchmark
+	public Object isomorphic(FirstSolution s){
+		return IsomorphicSolutionBuilder.getIsomorphicSolutions(s.ans.getCurrentSolution(), s.ans.getSkolemBounds());
+	}
+
+	@Benchmark
+	public Object canonicalForm(FirstSolution s){
+		return new InstanceCanonicalizer(s.ans.getSkolemBounds()).canonicalForm(s.ans.getCurrentSolution().instance());
+	}
+}
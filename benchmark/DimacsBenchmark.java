@@ -0,0 +1,118 @@
+package benchmark;
+
+import java.io.File;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import minkodkod.MinSolution;
+import minkodkod.MinSolver;
+import minkodkod.engine.fol2sat.MinTranslation;
+import minkodkod.engine.fol2sat.MinTranslator;
+import minkodkod.engine.fol2sat.TrivialFormulaException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the minimal-model engine on a SATLib file read straight into the solver
+ * (MinSolver.solveAll(File)), without a formula; translation is the reading of the file.
+ * As in FormulaBenchmark, every operation is measured once per iteration on a new solver,
+ * except that nextModel goes on with the iterator of the previous one.
+ * The benchmarks are:
+ *  translate          MinTranslator.translate(File, ..)
+ *  firstModel         solving for the first minimal model, reading included
+ *  nextModel          the next minimal model, up to the models-th one of an iterator
+ *
+ * Example: java org.openjdk.jmh.Main DimacsBenchmark -p file=uf20-01.cnf -rf json -rff results.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class DimacsBenchmark {
+	/** The SATLib file; it must be given with -p file=... */
+	@Param("")
+	public String file;
+
+	/** The number of models that nextModel takes from an iterator before it starts over. */
+	@Param("10")
+	public int models;
+
+	/** The symmetry-breaking option of the solver. */
+	@Param("0")
+	public int symmetryBreaking;
+
+	@Setup(Level.Trial)
+	public void checkFile(){
+		if(file.length() == 0)
+			throw new IllegalArgumentException("No SATLib file specified (-p file=...).");
+	}
+
+	/**
+	 * A new solver.
+	 */
+	@State(Scope.Thread)
+	public static class Fresh {
+		MinSolver solver;
+
+		@Setup(Level.Iteration)
+		public void setup(DimacsBenchmark b){
+			solver = Targets.newSolver(b.symmetryBreaking);
+		}
+	}
+
+	/**
+	 * An iterator that is kept from one iteration to the next, until it has given as many minimal
+	 * models as the models parameter says, or has none left.
+	 */
+	@State(Scope.Thread)
+	public static class Enumeration {
+		Iterator<MinSolution> models;
+		int taken;
+
+		@Setup(Level.Iteration)
+		public void setup(DimacsBenchmark b) throws Exception {
+			if(models == null || taken >= b.models || !models.hasNext()){
+				models = Targets.newSolver(b.symmetryBreaking).solveAll(new File(b.file));
+				Targets.firstModel(models);
+				taken = 1;
+			}
+			taken++;
+		}
+	}
+
+	@Benchmark
+	public Object translate(Fresh s) throws Exception {
+		try{
+			MinTranslation translation = MinTranslator.translate(new File(file), s.solver.options());
+			translation.free();
+			return translation;
+		}
+		catch(TrivialFormulaException e){
+			// Read all the same.
+			return e;
+		}
+	}
+
+	@Benchmark
+	public MinSolution firstModel(Fresh s) throws Exception {
+		return s.solver.solveAll(new File(file)).next();
+	}
+
+	@Benchmark
+	public MinSolution nextModel(Enumeration s){
+		return s.models.next();
+	}
+}
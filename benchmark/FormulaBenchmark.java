@@ -0,0 +1,205 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import kodkod.ast.Relation;
+import kodkod.instance.Instance;
+import kodkod.instance.Tuple;
+import minalloy.InstanceCanonicalizer;
+import minalloy.IsomorphicSolutionBuilder;
+import minkodkod.MinSolution;
+import minkodkod.MinSolver;
+import minkodkod.engine.fol2sat.MinTranslation;
+import minkodkod.engine.fol2sat.MinTranslator;
+import minkodkod.engine.fol2sat.TrivialFormulaException;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks of the minimal-model engine on a formula of Main, or on a SATLib file loaded
+ * through ExampleLoader. Every measured operation works on a solver that no other operation
+ * has used (except for nextModel, which goes on with the iterator of the previous one), so each
+ * is measured once per iteration (Mode.SingleShotTime), and the solving that leads up to it is
+ * done by the setup of its state, untimed.
+ * The benchmarks are:
+ *  translate          MinTranslator.translate
+ *  firstModel         solving for the first minimal model, translation included
+ *  nextModel          the next minimal model, up to the models-th one of an iterator
+ *  consistentFacts    MinSolver.getConsistentFacts on the first model
+ *  augment            augmenting the first model with one of its consistent facts, in turn
+ *  isomorphic         IsomorphicSolutionBuilder.getIsomorphicSolutions on the first model
+ *  canonicalForm      InstanceCanonicalizer.canonicalForm on the first model
+ *
+ * Example: java org.openjdk.jmh.Main FormulaBenchmark -p formula=2 -p length=2,4,8 -rf json -rff results.json
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class FormulaBenchmark {
+	/** The formula of Main (only formulas 2 to 4 scale with length); ignored if file is set. */
+	@Param("2")
+	public int formula;
+
+	/** The length of the formula of Main. */
+	@Param("10")
+	public int length;
+
+	/** A SATLib file to load through ExampleLoader instead of a formula of Main. */
+	@Param("")
+	public String file;
+
+	/** The number of models that nextModel takes from an iterator before it starts over. */
+	@Param("10")
+	public int models;
+
+	/** The symmetry-breaking option of the solver. */
+	@Param("0")
+	public int symmetryBreaking;
+
+	private Targets.Target target;
+
+	@Setup(Level.Trial)
+	public void loadTarget(){
+		target = (file.length() == 0) ? Targets.formula(formula, length) : Targets.exampleFormula(file);
+	}
+
+	/**
+	 * A new solver.
+	 */
+	@State(Scope.Thread)
+	public static class Fresh {
+		MinSolver solver;
+
+		@Setup(Level.Iteration)
+		public void setup(FormulaBenchmark b){
+			solver = Targets.newSolver(b.symmetryBreaking);
+		}
+	}
+
+	/**
+	 * A new solver and an iterator that has given its first minimal model.
+	 */
+	@State(Scope.Thread)
+	public static class FirstModel {
+		MinSolver solver;
+		Iterator<MinSolution> models;
+		MinSolution model;
+
+		@Setup(Level.Iteration)
+		public void setup(FormulaBenchmark b){
+			solver = Targets.newSolver(b.symmetryBreaking);
+			models = solver.solveAll(b.target.formula, b.target.bounds);
+			model = Targets.firstModel(models);
+		}
+	}
+
+	/**
+	 * An iterator that is kept from one iteration to the next, until it has given as many minimal
+	 * models as the models parameter says, or has none left.
+	 */
+	@State(Scope.Thread)
+	public static class Enumeration {
+		Iterator<MinSolution> models;
+		int taken;
+
+		@Setup(Level.Iteration)
+		public void setup(FormulaBenchmark b){
+			if(models == null || taken >= b.models || !models.hasNext()){
+				models = Targets.newSolver(b.symmetryBreaking).solveAll(b.target.formula, b.target.bounds);
+				Targets.firstModel(models);
+				taken = 1;
+			}
+			taken++;
+		}
+	}
+
+	/**
+	 * The first minimal model of a new solver, and the next of its consistent facts to augment it with.
+	 */
+	@State(Scope.Thread)
+	public static class Augmentation {
+		MinSolver solver;
+		Iterator<MinSolution> models;
+		Instance fact;
+		int next;
+
+		@Setup(Level.Iteration)
+		public void setup(FormulaBenchmark b) throws Exception {
+			solver = Targets.newSolver(b.symmetryBreaking);
+			models = solver.solveAll(b.target.formula, b.target.bounds);
+			Targets.firstModel(models);
+			Instance facts = solver.getConsistentFacts(models);
+			List<Instance> candidates = new ArrayList<Instance>();
+			for(Relation r : facts.relations()){
+				for(Tuple t : facts.tuples(r)){
+					Instance candidate = new Instance(b.target.bounds.universe());
+					candidate.add(r, b.target.bounds.universe().factory().setOf(t));
+					candidates.add(candidate);
+				}
+			}
+			if(candidates.isEmpty())
+				throw new IllegalStateException("The first model has no consistent facts.");
+			fact = candidates.get(next++ % candidates.size());
+		}
+	}
+
+	@Benchmark
+	public Object translate(Fresh s){
+		try{
+			MinTranslation translation = MinTranslator.translate(target.formula, target.bounds, s.solver.options());
+			translation.free();
+			return translation;
+		}
+		catch(TrivialFormulaException e){
+			// Translated all the same.
+			return e;
+		}
+	}
+
+	@Benchmark
+	public MinSolution firstModel(Fresh s){
+		return s.solver.solveAll(target.formula, target.bounds).next();
+	}
+
+	@Benchmark
+	public MinSolution nextModel(Enumeration s){
+		return s.models.next();
+	}
+
+	@Benchmark
+	public Instance consistentFacts(FirstModel s) throws Exception {
+		return s.solver.getConsistentFacts(s.models);
+	}
+
+	@Benchmark
+	public MinSolution augment(Augmentation s) throws Exception {
+		return s.solver.augment(s.models, s.fact).next();
+	}
+
+	@Benchmark
+	public Object isomorphic(FirstModel s){
+		return IsomorphicSolutionBuilder.getIsomorphicSolutions(s.model, s.solver.getSkolemBounds());
+	}
+
+	@Benchmark
+	public Object canonicalForm(FirstModel s){
+		return new InstanceCanonicalizer(s.solver.getSkolemBounds()).canonicalForm(s.model.instance());
+	}
+}
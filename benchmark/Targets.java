@@ -0,0 +1,105 @@
+package benchmark;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Iterator;
+
+import kodkod.ast.Formula;
+import kodkod.instance.Bounds;
+import minkodkod.MinReporterToGatherSkolemBounds;
+import minkodkod.MinSATSolverFactory;
+import minkodkod.MinSolution;
+import minkodkod.MinSolver;
+
+/**
+ * The targets of the benchmarks, and the setup that the benchmarks share.
+ */
+final class Targets {
+
+	/**
+	 * A formula and its bounds.
+	 */
+	static final class Target {
+		final Formula formula;
+		final Bounds bounds;
+
+		Target(Formula formula, Bounds bounds){
+			this.formula = formula;
+			this.bounds = bounds;
+		}
+	}
+
+	private Targets(){}
+
+	/**
+	 * Returns Main.formula(which, length).
+	 * @throws IllegalArgumentException - Main has no such formula
+	 */
+	static Target formula(int which, int length){
+		return target("formula", new Class<?>[] { int.class, int.class }, which, length);
+	}
+
+	/**
+	 * Returns Main.exampleFormula(fileName), i.e., the SATLib file loaded through ExampleLoader.
+	 */
+	static Target exampleFormula(String fileName){
+		return target("exampleFormula", new Class<?>[] { String.class }, fileName);
+	}
+
+	/**
+	 * Calls the given method of Main and returns the formula and bounds of the FormulaStruct
+	 * it returns. Main is in the default package, which the benchmarks (in a package, as JMH
+	 * requires) can only reach by reflection.
+	 * @throws IllegalArgumentException - the method returns null
+	 */
+	private static Target target(String name, Class<?>[] types, Object... args){
+		try{
+			Method method = Class.forName("Main").getDeclaredMethod(name, types);
+			method.setAccessible(true);
+			Object fs = method.invoke(null, args);
+			if(fs == null)
+				throw new IllegalArgumentException("No " + name + " for " + Arrays.toString(args) + ".");
+			Method fmla = fs.getClass().getMethod("getFmla");
+			Method bounds = fs.getClass().getMethod("getBounds");
+			fmla.setAccessible(true);
+			bounds.setAccessible(true);
+			return new Target((Formula) fmla.invoke(fs), (Bounds) bounds.invoke(fs));
+		}
+		catch(InvocationTargetException e){
+			if(e.getCause() instanceof RuntimeException)
+				throw (RuntimeException) e.getCause();
+			throw new IllegalStateException(e.getCause());
+		}
+		catch(IllegalArgumentException e){
+			throw e;
+		}
+		catch(Exception e){
+			throw new IllegalStateException("Main." + name + " cannot be called.", e);
+		}
+	}
+
+	/**
+	 * Returns a new MinSolver set up as in Main.
+	 */
+	static MinSolver newSolver(int symmetryBreaking){
+		MinReporterToGatherSkolemBounds rep = new MinReporterToGatherSkolemBounds();
+		MinSolver solver = new MinSolver();
+		solver.options().setFlatten(true);
+		solver.options().setSymmetryBreaking(symmetryBreaking);
+		solver.options().setSolver(new MinSATSolverFactory(rep));
+		solver.options().setReporter(rep);
+		return solver;
+	}
+
+	/**
+	 * Returns the first minimal model of the given iterator.
+	 * @throws IllegalStateException - there is none, so the benchmark that needs it cannot run
+	 */
+	static MinSolution firstModel(Iterator<MinSolution> models){
+		MinSolution model = models.next();
+		if(!model.sat())
+			throw new IllegalStateException("The target is unsatisfiable.");
+		return model;
+	}
+}
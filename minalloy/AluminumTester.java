@@ -459,39 +459,43 @@ public final class AluminumTester {
 			results.add(new AluminumSolution(inputInstances.get(i), i));
 			dupeSolnMap.put(i, new HashSet<Integer>());
 		}
-				
+		
+		// Log the number of repeats UP TO KODKOD's SYMMETRY DETECTION: two inputs are isomorphic
+		// iff they have the same canonical form. 
+		InstanceCanonicalizer canonicalizer = new InstanceCanonicalizer(skolemBounds);
+		Map<InstanceCanonicalizer.Key, List<Integer>> isoClasses = new HashMap<InstanceCanonicalizer.Key, List<Integer>>();
+		for(int instanceIndex = 0; instanceIndex < inputInstances.size(); instanceIndex++)
+		{
+			InstanceCanonicalizer.Key key = canonicalizer.canonicalForm(inputInstances.get(instanceIndex).instance());
+			List<Integer> isoClass = isoClasses.get(key);
+			if(isoClass == null)
+			{
+				isoClass = new ArrayList<Integer>();
+				isoClasses.put(key, isoClass);
+			}
+			for(Integer otherIndex : isoClass)
+			{
+				// (Note that the number of duplicates is NOT half the number of entries)
+				dupeSolnMap.get(instanceIndex).add(otherIndex);
+				dupeSolnMap.get(otherIndex).add(instanceIndex);
+			}
+			isoClass.add(instanceIndex);
+		}
 		
  		for(int instanceIndex = 0; instanceIndex < inputInstances.size(); instanceIndex++)
  		{ 			
- 			// Build the solutions isomorphic to this one (UP TO KODKOD'S GREEDY DETECTION)
+ 			// Build the solutions isomorphic to this one (UP TO KODKOD'S GREEDY DETECTION);
+ 			// the first one is the input itself.
  			MinSolution thisInputInstance = inputInstances.get(instanceIndex);
- 			Set<MinSolution> isosForThisInstance = IsomorphicSolutionBuilder.getIsomorphicSolutions(thisInputInstance, skolemBounds);
- 			
- 			// Log the number of repeats UP TO KODKOD's SYMMETRY DETECTION. The naive way is:
- 			// For every input after this one, see if it's equal to something in the isos above.
- 			// (Suffices to check only those *after* since isomorphism is symmetric)
- 			for(int otherIndex = instanceIndex+1;otherIndex<inputInstances.size();otherIndex++ )
- 			{
- 				MinSolution otherInputInstance = inputInstances.get(otherIndex);
- 				// Is otherInputInstance ~=_{kodkod} thisInputInstance?
- 				for(MinSolution sol: isosForThisInstance)
- 				{
- 					if(SolutionComparator.compare(sol, otherInputInstance) == 0)
- 					{ 						 					
- 						// Don't break. Want to detect everything this dupe is iso for.
- 						// (Note that that means the number of duplicates is NOT half the number of entries)
- 						dupeSolnMap.get(instanceIndex).add(otherIndex);
- 						dupeSolnMap.get(otherIndex).add(instanceIndex);
- 					}
- 				}
- 			}
+ 			Set<MinSolution> isosForThisInstance = IsomorphicSolutionBuilder.getIsomorphicSolutions(thisInputInstance, skolemBounds, canonicalizer);
  			
  			// Add non-duplicates to the list: 			
- 			for(MinSolution sol: isosForThisInstance){ 				 				
- 				//Now, we should avoid duplicate entries. (This is not the best way of doing this but it is fine for now)
- 				if(SolutionComparator.compare(thisInputInstance, sol) != 0){
+ 			boolean first = true;
+ 			for(MinSolution sol: isosForThisInstance){
+ 				if(!first){
  					results.add(new AluminumSolution(sol, instanceIndex));
  				}
+ 				first = false;
  			} 			 			
 		} 		 		 		 		
  		
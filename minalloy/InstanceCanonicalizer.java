@@ -0,0 +1,393 @@
+package minalloy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+
+import minkodkod.engine.fol2sat.MinSymmetryDetectorDelegate;
+import kodkod.ast.Relation;
+import kodkod.instance.Bounds;
+import kodkod.instance.Instance;
+import kodkod.instance.Tuple;
+import kodkod.instance.TupleSet;
+import kodkod.util.ints.IntSet;
+
+/**
+ * Computes canonical forms of the instances of a Bounds object under the symmetries that Kodkod
+ * detects for it, i.e. the permutations of atoms within each symmetry class. Two instances are
+ * isomorphic (up to these symmetries) iff their canonical forms are equal, so isomorphic solutions
+ * can be found with a hash lookup instead of comparing every solution with every permutation of
+ * every other one.
+ *
+ * The canonical form of an instance is its least image (in the order of codes, see code(..)) under
+ * the permutations found by individualization and refinement: the atoms of every class are colored
+ * by the tuples they occur in, and the coloring is refined until it is stable; then, as long as two
+ * atoms share a color, every atom of the first such color is in turn given a color of its own, and
+ * the coloring refined again. Every discrete coloring orders the atoms of every class, i.e. it is a
+ * permutation. Atoms whose exchange maps the instance to itself (e.g. unused atoms) are only
+ * tried once, which keeps the search small for minimal models.
+ *
+ * The relations of an instance are those of the bounds; a relation that the instance does not
+ * map is taken to be its lower bound (see IsomorphicSolutionBuilder.padInstance(..)).
+ */
+public final class InstanceCanonicalizer {
+	/** The relations of the bounds, in the order of the codes. */
+	private final Relation[] relations;
+	/** The size of the universe. */
+	private final int usize;
+	/** classes[i] are the atoms of the i-th symmetry class with more than one atom, in increasing order. */
+	private final int[][] classes;
+	/** The initial color of every atom: the least atom of its class (itself if it is not in one). */
+	private final int[] initialColors;
+	/** The bounds. */
+	private final Bounds bounds;
+
+	/**
+	 * Constructs a canonicalizer for the instances of the given bounds.
+	 */
+	public InstanceCanonicalizer(Bounds bounds) {
+		this.bounds = bounds;
+		this.usize = bounds.universe().size();
+		this.relations = bounds.relations().toArray(new Relation[bounds.relations().size()]);
+
+		this.initialColors = new int[usize];
+		for(int i = 0; i < usize; i++)
+			initialColors[i] = i;
+
+		final Set<IntSet> partition = MinSymmetryDetectorDelegate.partition(bounds);
+		final List<int[]> nontrivial = new ArrayList<int[]>();
+		for(IntSet part : partition) {
+			if(part.size() < 2)
+				continue;
+			final int[] atoms = part.toArray();
+			Arrays.sort(atoms);
+			for(int atom : atoms)
+				initialColors[atom] = atoms[0];
+			nontrivial.add(atoms);
+		}
+		this.classes = nontrivial.toArray(new int[nontrivial.size()][]);
+	}
+
+	/**
+	 * Returns the symmetry classes of the bounds with more than one atom.
+	 * The arrays must not be modified.
+	 * @return the symmetry classes of the bounds with more than one atom.
+	 */
+	int[][] classes() {
+		return classes;
+	}
+
+	/**
+	 * Returns the canonical form of the given instance.
+	 * @requires instance.universe = this.bounds.universe
+	 * @return the canonical form of the given instance.
+	 */
+	public Key canonicalForm(Instance instance) {
+		final int[][] tuples = tuples(instance);
+		final Search search = new Search(tuples);
+		search.search(refine(tuples, initialColors.clone()));
+		return new Key(search.best);
+	}
+
+	/**
+	 * Returns the key of the given instance as it is, i.e. of its image under the identity.
+	 * Two instances have the same key iff they have the same tuples.
+	 * @requires instance.universe = this.bounds.universe
+	 * @return the key of the given instance.
+	 */
+	public Key key(Instance instance) {
+		return new Key(code(tuples(instance), null));
+	}
+
+	/**
+	 * Returns the tuples of the given instance: the i-th array holds the atoms of the tuples
+	 * of the i-th relation, one tuple after the other.
+	 */
+	int[][] tuples(Instance instance) {
+		final int[][] result = new int[relations.length][];
+		for(int r = 0; r < relations.length; r++) {
+			TupleSet set = instance.tuples(relations[r]);
+			if(set == null)
+				set = bounds.lowerBound(relations[r]);
+			final int arity = relations[r].arity();
+			final int[] atoms = new int[set.size() * arity];
+			int i = 0;
+			for(Tuple tuple : set)
+				for(int j = 0; j < arity; j++)
+					atoms[i++] = tuple.atomIndex(j);
+			result[r] = atoms;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the code of the image of the given tuples under the given permutation of atoms
+	 * (the identity if perm is null): for every relation, the number of its tuples followed by
+	 * their indices, in increasing order.
+	 */
+	int[] code(int[][] tuples, int[] perm) {
+		int length = 0;
+		for(int r = 0; r < relations.length; r++)
+			length += 1 + tuples[r].length / relations[r].arity();
+		final int[] code = new int[length];
+		int pos = 0;
+		for(int r = 0; r < relations.length; r++) {
+			final int arity = relations[r].arity();
+			final int[] atoms = tuples[r];
+			final int size = atoms.length / arity;
+			code[pos++] = size;
+			for(int t = 0; t < size; t++) {
+				int index = 0;
+				for(int j = 0; j < arity; j++) {
+					final int atom = atoms[t * arity + j];
+					index = index * usize + (perm == null ? atom : perm[atom]);
+				}
+				code[pos + t] = index;
+			}
+			Arrays.sort(code, pos, pos + size);
+			pos += size;
+		}
+		return code;
+	}
+
+	/**
+	 * Refines the given coloring until it is stable: two atoms keep the same color iff they had it,
+	 * and for every relation and position, they occur there in as many tuples with the same colors.
+	 * The colors are ranks, so they do not depend on the labels of the atoms, only on their colors.
+	 * @return colors
+	 */
+	private int[] refine(int[][] tuples, int[] colors) {
+		int numColors = rank(colors, null);
+		final long[][] signatures = new long[usize][];
+		final int[] sizes = new int[usize];
+		while(true) {
+			Arrays.fill(sizes, 0);
+			for(int r = 0; r < relations.length; r++) {
+				final int arity = relations[r].arity();
+				final int[] atoms = tuples[r];
+				for(int t = 0; t < atoms.length; t += arity) {
+					long tupleColor = r;
+					for(int j = 0; j < arity; j++)
+						tupleColor = tupleColor * 31 + colors[atoms[t + j]];
+					for(int j = 0; j < arity; j++) {
+						final int atom = atoms[t + j];
+						if(signatures[atom] == null)
+							signatures[atom] = new long[4];
+						else if(sizes[atom] == signatures[atom].length)
+							signatures[atom] = Arrays.copyOf(signatures[atom], sizes[atom] * 2);
+						signatures[atom][sizes[atom]++] = tupleColor * arity + j;
+					}
+				}
+			}
+			final long[][] sorted = new long[usize][];
+			for(int atom = 0; atom < usize; atom++) {
+				sorted[atom] = (sizes[atom] == 0) ? new long[0] : Arrays.copyOf(signatures[atom], sizes[atom]);
+				Arrays.sort(sorted[atom]);
+			}
+			final int refined = rank(colors, sorted);
+			if(refined == numColors)
+				return colors;
+			numColors = refined;
+		}
+	}
+
+	/**
+	 * Replaces the given colors with their ranks in the order of (color, signature),
+	 * where signatures are compared lexicographically; equal pairs get equal ranks.
+	 * @return the number of distinct ranks
+	 */
+	private static int rank(final int[] colors, final long[][] signatures) {
+		final Integer[] order = new Integer[colors.length];
+		for(int i = 0; i < order.length; i++)
+			order[i] = i;
+		final Comparator<Integer> byColor = new Comparator<Integer>() {
+			public int compare(Integer a, Integer b) {
+				if(colors[a] != colors[b])
+					return colors[a] < colors[b] ? -1 : 1;
+				if(signatures == null)
+					return 0;
+				final long[] sa = signatures[a], sb = signatures[b];
+				for(int i = 0; i < sa.length && i < sb.length; i++)
+					if(sa[i] != sb[i])
+						return sa[i] < sb[i] ? -1 : 1;
+				return sa.length - sb.length;
+			}
+		};
+		Arrays.sort(order, byColor);
+		final int[] ranks = new int[colors.length];
+		int rank = 0;
+		for(int i = 0; i < order.length; i++) {
+			if(i > 0 && byColor.compare(order[i - 1], order[i]) != 0)
+				rank++;
+			ranks[order[i]] = rank;
+		}
+		System.arraycopy(ranks, 0, colors, 0, colors.length);
+		return colors.length == 0 ? 0 : rank + 1;
+	}
+
+	/**
+	 * The search for the least code over the discrete colorings of an instance.
+	 */
+	private final class Search {
+		private final int[][] tuples;
+		/** The tuples of every relation as sorted tuple indices, to check for automorphisms. */
+		private final int[][] indices;
+		/** The least code found so far. */
+		int[] best = null;
+
+		Search(int[][] tuples) {
+			this.tuples = tuples;
+			this.indices = new int[relations.length][];
+			for(int r = 0; r < relations.length; r++) {
+				final int arity = relations[r].arity();
+				final int[] atoms = tuples[r];
+				final int[] sorted = new int[atoms.length / arity];
+				for(int t = 0; t < sorted.length; t++)
+					sorted[t] = index(atoms, t * arity, arity, -1, -1);
+				Arrays.sort(sorted);
+				indices[r] = sorted;
+			}
+		}
+
+		/**
+		 * Searches the discrete colorings below the given stable coloring.
+		 */
+		void search(int[] colors) {
+			// The first color (i.e. the least) shared by two atoms, if any.
+			final int[] cellSizes = new int[usize];
+			for(int atom = 0; atom < usize; atom++)
+				cellSizes[colors[atom]]++;
+			int cell = -1;
+			for(int color = 0; color < usize; color++) {
+				if(cellSizes[color] > 1) {
+					cell = color;
+					break;
+				}
+			}
+
+			if(cell < 0) {
+				final int[] code = code(tuples, permutation(colors));
+				if(best == null || compare(code, best) < 0)
+					best = code;
+				return;
+			}
+
+			final List<Integer> tried = new ArrayList<Integer>();
+			for(int atom = 0; atom < usize; atom++) {
+				if(colors[atom] != cell || isSwapOfTried(atom, tried))
+					continue;
+				tried.add(atom);
+				// Gives atom a color less than the other colors of its cell, and refines.
+				final int[] individualized = new int[usize];
+				for(int other = 0; other < usize; other++)
+					individualized[other] = 2 * colors[other] + 1;
+				individualized[atom]--;
+				search(refine(tuples, individualized));
+			}
+		}
+
+		/**
+		 * Returns true if exchanging the given atom with one of the tried ones maps the tuples to
+		 * themselves; then the colorings below the atom are images of those below the tried one.
+		 */
+		private boolean isSwapOfTried(int atom, List<Integer> tried) {
+			for(int other : tried)
+				if(isAutomorphism(atom, other))
+					return true;
+			return false;
+		}
+
+		/**
+		 * Returns true if exchanging a and b maps the tuples to themselves.
+		 */
+		private boolean isAutomorphism(int a, int b) {
+			for(int r = 0; r < relations.length; r++) {
+				final int arity = relations[r].arity();
+				final int[] atoms = tuples[r];
+				for(int t = 0; t < atoms.length; t += arity) {
+					boolean moved = false;
+					for(int j = 0; j < arity && !moved; j++)
+						moved = atoms[t + j] == a || atoms[t + j] == b;
+					if(moved && Arrays.binarySearch(indices[r], index(atoms, t, arity, a, b)) < 0)
+						return false;
+				}
+			}
+			return true;
+		}
+
+		/**
+		 * Returns the index of the tuple atoms[start..start+arity), with a and b exchanged.
+		 */
+		private int index(int[] atoms, int start, int arity, int a, int b) {
+			int index = 0;
+			for(int j = 0; j < arity; j++) {
+				int atom = atoms[start + j];
+				if(atom == a)
+					atom = b;
+				else if(atom == b)
+					atom = a;
+				index = index * usize + atom;
+			}
+			return index;
+		}
+
+		/**
+		 * Returns the permutation given by a discrete coloring: the atoms of every class go to
+		 * the atoms of the class in the order of their colors; the other atoms are not moved.
+		 */
+		private int[] permutation(int[] colors) {
+			final int[] perm = new int[usize];
+			for(int atom = 0; atom < usize; atom++)
+				perm[atom] = atom;
+			for(int[] atoms : classes) {
+				final int[] byColor = new int[atoms.length];
+				for(int i = 0; i < atoms.length; i++)
+					byColor[i] = colors[atoms[i]];
+				Arrays.sort(byColor);
+				for(int atom : atoms)
+					perm[atom] = atoms[Arrays.binarySearch(byColor, colors[atom])];
+			}
+			return perm;
+		}
+	}
+
+	/**
+	 * Compares two codes lexicographically.
+	 */
+	private static int compare(int[] a, int[] b) {
+		for(int i = 0; i < a.length && i < b.length; i++)
+			if(a[i] != b[i])
+				return a[i] < b[i] ? -1 : 1;
+		return a.length - b.length;
+	}
+
+	/**
+	 * A code of an instance, to be used as a hash key.
+	 */
+	public static final class Key {
+		private final int[] code;
+		private final int hash;
+
+		Key(int[] code) {
+			this.code = code;
+			this.hash = Arrays.hashCode(code);
+		}
+
+		public int hashCode() {
+			return hash;
+		}
+
+		public boolean equals(Object o) {
+			if(o == this) return true;
+			if(!(o instanceof Key)) return false;
+			final Key other = (Key) o;
+			return hash == other.hash && Arrays.equals(code, other.code);
+		}
+
+		public String toString() {
+			return Arrays.toString(code);
+		}
+	}
+}
@@ -1,15 +1,13 @@
 package minalloy;
 
 import java.util.ArrayList;
-import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
-import java.util.TreeSet;
 
 import minkodkod.MinSolution;
 import minkodkod.MinSolutionFactory;
-import minkodkod.engine.fol2sat.MinSymmetryDetectorDelegate;
 import kodkod.ast.Relation;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
@@ -18,86 +16,52 @@ import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
 import kodkod.instance.Universe;
 import kodkod.util.ints.IntIterator;
-import kodkod.util.ints.IntSet;
 
 public class IsomorphicSolutionBuilder {
-	private static class Permutations{
-		/** keeps the index of atoms in this partition in the universe. */
-		final int[] atoms;
-		/** stores the permutations of the atoms in this partition. */
-		final int[][] permutations;
-		
-		Permutations(IntSet intSet){
-			atoms = new int[intSet.size()];
-			IntIterator iterator = intSet.iterator();
-			
-			int counter = 0;
-			while(iterator.hasNext()) {atoms[counter++] = iterator.next();}
-
-			permutations = new int[factorial(atoms.length)][];
-			
-			permutations[0] = atoms.clone();
-			int[] prev = atoms.clone();
-			
-			counter = 1;
-			while(true){
-				if(nextPermutation(prev) == false) break;
-				permutations[counter++] = prev.clone();
-			}
-		}
-		
-		
-		/**
-		 * A helper function to compute the factorial function.
-		 */
-		public static int factorial(int input){
-			int result = 1;
-			for(int i = 2; i <= input; i++) {result = result * i;}
-			return result;
-		}
-		
-		/**
-		 * Builds the next lexicographically permutation of a given intput. 
-		 * It returns false if the input is the last lexicographical element.  
-		 */
-	    public static boolean nextPermutation(int[] p) {
-	        int a = p.length - 2;
-	        while (a >= 0 && p[a] >= p[a + 1]) {
-	            a--;
-	        }
-	        if (a == -1) {
-	            return false;
-	        }
-	        int b = p.length - 1;
-	        while (p[b] <= p[a]) {
-	            b--;
-	        }
-	        int t = p[a];
-	        p[a] = p[b];
-	        p[b] = t;
-	        for (int i = a + 1, j = p.length - 1; i < j; i++, j--) {
-	            t = p[i];
-	            p[i] = p[j];
-	            p[j] = t;
-	        }
-	        return true;
-	    }
-	}
-
 	/**
 	 * Builds all the isomorphic solutions for a given set of MinSolution  and a given Bounds
 	 * and returns them as a set of MinSolution. 
 	 */
 	public static Set<MinSolution> getIsomorphicSolutions(MinSolution input, Bounds skolemBounds){
-		Set<MinSolution> results = new HashSet<MinSolution>();		
-		 				
-		int[][] solutionPermutations = getSolutionPermutations(skolemBounds); //get all of the possible permutations										
+		return getIsomorphicSolutions(input, skolemBounds, new InstanceCanonicalizer(skolemBounds));
+	}
+	
+	/**
+	 * Builds all the isomorphic solutions for a given MinSolution, with a canonicalizer for the given
+	 * Bounds, and returns them as a set of MinSolution, the given solution first. Every solution is 
+	 * built once: the images of the solution are found by exchanging neighboring atoms of a symmetry
+	 * class, as long as this gives new images, rather than by applying every permutation of the classes.
+	 */
+	public static Set<MinSolution> getIsomorphicSolutions(MinSolution input, Bounds skolemBounds, InstanceCanonicalizer canonicalizer){
+		Set<MinSolution> results = new LinkedHashSet<MinSolution>();
 		
 		Universe theUniverse = input.instance().universe();
-		final TupleFactory factory = theUniverse.factory();						
+		final TupleFactory factory = theUniverse.factory();
+		
+		// The permutations giving the distinct images of the input, in the order they were found:
+		final int[][] tuples = canonicalizer.tuples(input.instance());
+		final List<int[]> orbit = new ArrayList<int[]>();
+		final Set<InstanceCanonicalizer.Key> images = new HashSet<InstanceCanonicalizer.Key>();
+		final int[] identity = new int[theUniverse.size()];
+		for(int i = 0; i < identity.length; i++) {identity[i] = i;}
+		orbit.add(identity);
+		images.add(new InstanceCanonicalizer.Key(canonicalizer.code(tuples, identity)));
+		for(int next = 0; next < orbit.size(); next++){
+			for(int[] atoms: canonicalizer.classes()){
+				for(int j = 0; j + 1 < atoms.length; j++){
+					final int[] perm = orbit.get(next).clone();
+					for(int i = 0; i < perm.length; i++){
+						if(perm[i] == atoms[j]) perm[i] = atoms[j + 1];
+						else if(perm[i] == atoms[j + 1]) perm[i] = atoms[j];
+					}
+					if(images.add(new InstanceCanonicalizer.Key(canonicalizer.code(tuples, perm))))
+						orbit.add(perm);
+				}
+			}
+		}
 		
 		//loop through all of the permutations:
-		for(int i = 0; i < solutionPermutations.length; i++){
+		for(int[] perm: orbit){
 			Instance instance = new Instance(theUniverse); //The new isomorphic instance
 
 			// Insert lower-bounds
@@ -122,7 +86,7 @@ public class IsomorphicSolutionBuilder {
 					List<Object> atoms = new ArrayList<Object>();
 					for(int j = 0; j < tuple.arity(); j++){
 						int atomIndex = tuple.atomIndex(j);
-						int newAtomIndex = solutionPermutations[i][atomIndex];
+						int newAtomIndex = perm[atomIndex];
 						atoms.add(skolemBounds.universe().atom(newAtomIndex));
 					}
 
@@ -136,17 +100,7 @@ public class IsomorphicSolutionBuilder {
 			results.add(solution);
 		}
 		
-		//Removing duplicate entries (if a solution uses a subset of atoms in the universe, we may end up building duplicate isomorphic solutions for it):
-		Set<MinSolution> noDuplicates = new TreeSet<MinSolution>(new Comparator<MinSolution>() {
-	        @Override
-	        public int compare(MinSolution sol1, MinSolution sol2) {
-	            return SolutionComparator.compare(sol1, sol2);
-	        }
-	    });
-	    
-		noDuplicates.addAll(results);
-		
-		return noDuplicates;
+		return results;
 	}
 	
 	/**
@@ -169,52 +123,4 @@ public class IsomorphicSolutionBuilder {
 		}
 		return instance;
 	}
-	
-	/**
-	 * Builds all the permutations for producing isomorphic solutions and returns them
-	 * as an array of integer arrays. 
-	 */
-	private static int[][] getSolutionPermutations(Bounds bounds){
-		//Get the permutations of the partitions:
-		Set<Permutations> symmetryPermutations = getSymmetryPermutations(bounds);
-		
-		//Building the number of all the possible permutations:
-		int totalSolutionPermutations = 1;
-		for(Permutations perm: symmetryPermutations){totalSolutionPermutations *= perm.permutations.length;}
-		
-		//Initializing the result (size = # of permutations * size of the universe)
-		int[][] result = new int[totalSolutionPermutations][bounds.universe().size()];
-		
-		//Fill the result as the product of permutations of the partitions:
-		int offset = 1;
-		for(Permutations perm: symmetryPermutations){
-			for(int i = 0; i < result.length; i++){
-				for(int j = 0; j < perm.atoms.length; j++){
-					result[i][perm.atoms[j]] = perm.permutations[(i/offset) % perm.permutations.length][j]; 
-				}
-			}
-			
-			offset = offset * Permutations.factorial(perm.atoms.length);
-		}
-		
-		return result;
-	}
-	
-	/**
-	 * Builds a set of Permutations corresponding to all the permutations within different
-	 * symmetry classes. 
-	 */
-	private static Set<Permutations> getSymmetryPermutations(Bounds bounds){
-		Set<Permutations> result = new HashSet<Permutations>();
-		
-		//Get the symmetry partitions from Kodkod:
-		Set<IntSet> symmetries = MinSymmetryDetectorDelegate.partition(bounds);			
-		
-		//System.out.println("  Detected symmetries: "+symmetries);
-		
-		//Create a data structure containing the permutations of atoms in each partition:
-		for(IntSet set: symmetries){result.add(new Permutations(set));}
-		
-		return result;
-	}
 }
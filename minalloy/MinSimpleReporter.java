@@ -25,10 +25,13 @@ import java.io.PrintWriter;
 import java.io.Serializable;
 import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import javax.swing.JTextField;
 import javax.swing.border.LineBorder;
@@ -55,6 +58,8 @@ import edu.mit.csail.sdg.alloy4compiler.ast.Sig;
 import edu.mit.csail.sdg.alloy4compiler.ast.Module;
 import edu.mit.csail.sdg.alloy4compiler.parser.CompUtil;
 import minalloy.minalloyviz.MinVizGUI;
+import minkodkod.MinTimeoutException;
+import kodkod.engine.AbortedException;
 import minalloy.translator.MinA4Options;
 import minalloy.translator.MinA4Solution;
 import minalloy.translator.MinA4SolutionReader;
@@ -269,7 +274,7 @@ final class MinSimpleReporter extends A4Reporter {
                 return;
             }
             latestKodkods.clear();
-            latestKodkods.add(sol.toString());
+            latestKodkods.add(ModelFingerprintSet.fingerprint(sol));
 
             latestKodkod=sol;
             latestKodkodXML=filename;
@@ -350,8 +355,8 @@ final class MinSimpleReporter extends A4Reporter {
 
     //========== These fields may be altered as each successful command generates a Kodkod or Metamodel instance
 
-    /** The set of Strings already enumerated for this current solution. */
-    private static final Set<String> latestKodkods=new LinkedHashSet<String>();
+    /** The fingerprints of the latest solutions enumerated for the current command (at most 65536 of them); this field must be synchronized. */
+    private static final ModelFingerprintSet latestKodkods=new ModelFingerprintSet(1<<16);
 
     /** The A4Solution corresponding to the latest solution generated by Kodkod; this field must be synchronized. */
     private static MinA4Solution latestKodkod=null;
@@ -368,6 +373,60 @@ final class MinSimpleReporter extends A4Reporter {
     /** The XML filename corresponding to the latest metamodel generated by TranslateAlloyToMetamodel; this field must be synchronized. */
     private static String latestMetamodelXML=null;
 
+    /** The thread that computes instances ahead of latestKodkod (see MinA4Solution.prefetch); null until it is first needed. */
+    private static ExecutorService prefetcher=null;
+
+    /** The pending or running prefetch ahead of latestKodkod, if any; this field must be synchronized. */
+    private static Future<?> latestPrefetch=null;
+
+    /** The solution that latestPrefetch computes the instances after; this field must be synchronized. */
+    private static MinA4Solution latestPrefetched=null;
+
+    /** How many instances to compute ahead of latestKodkod, as set by the latest command; this field must be synchronized. */
+    private static int prefetchDepth=1;
+
+    /** Whether to compute the consistent facts of the instances computed ahead, as set by the latest command; this field must be synchronized. */
+    private static boolean prefetchConsistentFacts=false;
+
+    /** Starts computing the instances after latestKodkod in the background, while the user looks at it. */
+    private static synchronized void startPrefetch() {
+        final MinA4Solution sol=latestKodkod;
+        if (sol==null || !sol.satisfiable() || !sol.isIncremental() || prefetchDepth<=0) return;
+        if (prefetcher==null) prefetcher=Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t=new Thread(r, "Aluminum prefetch");
+                t.setDaemon(true);
+                return t;
+            }
+        });
+        final int depth=prefetchDepth;
+        final boolean consistentFacts=prefetchConsistentFacts;
+        latestPrefetch=prefetcher.submit(new Runnable() {
+            public void run() {
+                // A SAT call that was stopped or timed out leaves the rest to next(), which computes them again.
+                // Anything else is logged here; next() computes the instance again and reports the problem too.
+                try { sol.prefetch(depth, consistentFacts); }
+                catch(MinTimeoutException ex) { }
+                catch(AbortedException ex) { }
+                catch(Err ex) { ex.printStackTrace(); }
+                catch(RuntimeException ex) { ex.printStackTrace(); }
+                catch(Error ex) { ex.printStackTrace(); throw ex; }
+            }
+        });
+        latestPrefetched=sol;
+    }
+
+    /** Stops the prefetch ahead of latestKodkod, interrupting its SAT call, and waits for it to end; the instances it has computed
+     * are kept, and the one it was computing is computed again when needed. Every task calls this before it uses latestKodkod. */
+    private static synchronized void stopPrefetch() {
+        if (latestPrefetch!=null) {
+            latestPrefetch.cancel(true);
+            latestPrefetched.stopPrefetch();
+            latestPrefetch=null;
+            latestPrefetched=null;
+        }
+    }
+
     /** Constructor is private. */
     private MinSimpleReporter(WorkerCallback cb, boolean recordKodkod) { this.cb=cb; this.recordKodkod=recordKodkod; }
 
@@ -412,6 +471,7 @@ final class MinSimpleReporter extends A4Reporter {
             if (!sol.isIncremental())
                 {cb("pop", "Error: This solution was not generated by an incremental SAT solver.\n" +
                 "Currently only MiniSat and SAT4J are supported."); return;}
+            stopPrefetch();
             int tries=0;
             while(true) {
                 sol=sol.next();                
@@ -431,15 +491,16 @@ final class MinSimpleReporter extends A4Reporter {
                 	return;
             	}
                 
-                String toString = sol.toString();
+                long fingerprint = ModelFingerprintSet.fingerprint(sol);
+                long duplicates;
                 synchronized(MinSimpleReporter.class) {
-                	//TODO what should we do with this code:
-                	//JOptionPane.showMessageDialog(null, toString);
-                	
-                    if (!latestKodkods.add(toString)) if (tries<100) { tries++; continue; }
+                    if (!latestKodkods.add(fingerprint)) if (tries<100) { tries++; continue; }
                     // The counter is needed to avoid a Kodkod bug where sometimes we might repeat the same solution infinitely number of times; this at least allows the user to keep going                    
                     writeXML(null, mod, filename, sol, latestKodkodSRC); latestKodkod=sol;
+                    duplicates=latestKodkods.duplicates();
                 }
+                if (tries>0) cb("S2", "Skipped "+tries+" duplicate instance(s) ("+duplicates+" since Aluminum started).\n");
+                startPrefetch();
                 cb("declare", filename);
                 return;
             }
@@ -497,6 +558,7 @@ final class MinSimpleReporter extends A4Reporter {
             //int tries=0;
             while(true) {
             	try{
+            		stopPrefetch();
             		sol=sol.augment(inputFact, dictionary);
             	}
             	catch(Exception e){
@@ -511,16 +573,17 @@ final class MinSimpleReporter extends A4Reporter {
             	{cb("pop", "There are no more minimal instances.\n\n" +
                    "Note: due to symmetry breaking and other optimizations,\n" +
                    "some equivalent minimal solutions may have been omitted."); return;}
-                String toString = sol.toString();
+                long fingerprint = ModelFingerprintSet.fingerprint(sol);
                 
                 synchronized(MinSimpleReporter.class) {
                     //TODO Ideally, we may have a stack for any iteration and keep the tryings
                     //As we explore and backtrack, we may see duplicate solutions
-                	latestKodkods.add(toString);
-                    //if (!latestKodkods.add(toString)) {if (tries<100) { tries++; continue; }}
+                	latestKodkods.add(fingerprint);
+                    //if (!latestKodkods.add(fingerprint)) {if (tries<100) { tries++; continue; }}
                     // The counter is needed to avoid a Kodkod bug where sometimes we might repeat the same solution infinitely number of times; this at least allows the user to keep going
                     writeXML(null, mod, filename, sol, latestKodkodSRC); latestKodkod=sol;
                 }
+                startPrefetch();
                 cb("declare", filename);
                 return;
             }
@@ -552,22 +615,24 @@ final class MinSimpleReporter extends A4Reporter {
             
             // We want to backtrack no matter what, so long as there is something to backtrack to. 
             
+           	stopPrefetch();
            	sol=sol.backtrack();
            	if(sol == null){
            		cb("pop", "There is nothing to backtrack!");
            		return;
            	}
             	
-            String toString = sol.toString();
+            long fingerprint = ModelFingerprintSet.fingerprint(sol);
                 
             synchronized(MinSimpleReporter.class) {
             	//TODO Ideally, we may have a stack for any iteration and keep the tryings
             	//As we explore and backtrack, we may see duplicate solutions
-            	latestKodkods.add(toString);
-            	//if (!latestKodkods.add(toString)) {cb("S2", "banana\n"); if (tries<100) { tries++; cb("S2", "orange\n");continue; }}
+            	latestKodkods.add(fingerprint);
+            	//if (!latestKodkods.add(fingerprint)) {cb("S2", "banana\n"); if (tries<100) { tries++; cb("S2", "orange\n");continue; }}
             	// The counter is needed to avoid a Kodkod bug where sometimes we might repeat the same solution infinitely number of times; this at least allows the user to keep going
             	writeXML(null, mod, filename, sol, latestKodkodSRC); latestKodkod=sol;
             }
+            startPrefetch();
             cb("declare", filename);
             return;            
         }
@@ -608,7 +673,9 @@ final class MinSimpleReporter extends A4Reporter {
                 {cb("pop", "Error: This solution was not generated by an incremental SAT solver.\n" +
                 "Currently only MiniSat and SAT4J are supported."); return;}
             
+            stopPrefetch();
             String results = sol.listConsistentFacts(dictionary);
+            startPrefetch();
             if(results == null || results.length() == 0)
             	results = "No consistent facts found!";
             
@@ -636,6 +703,8 @@ final class MinSimpleReporter extends A4Reporter {
         public SimpleTask1() { }
         public void cb(WorkerCallback out, Object... objs) throws IOException { out.callback(objs); }
         public void run(WorkerCallback out) throws Exception {
+            stopPrefetch();
+            synchronized(MinSimpleReporter.class) { prefetchDepth=options.prefetchDepth; prefetchConsistentFacts=options.prefetchConsistentFacts; }
             cb(out, "S2", "Starting the solver...\n\n");
             final MinSimpleReporter rep = new MinSimpleReporter(out, options.recordKodkod);
             final Module world = CompUtil.parseEverything_fromFile(rep, map, options.originalFilename, resolutionMode);
@@ -698,6 +767,7 @@ final class MinSimpleReporter extends A4Reporter {
             }
             if (rep.warn>1) rep.cb("bold", "Note: There were "+rep.warn+" compilation warnings. Please scroll up to see them.\n");
             if (rep.warn==1) rep.cb("bold", "Note: There was 1 compilation warning. Please scroll up to see it.\n");
+            startPrefetch();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,157 @@
+package minalloy;
+
+import java.util.Arrays;
+
+import minalloy.translator.MinA4Solution;
+import minkodkod.MinSolution;
+
+/**
+ * A bounded set of 64-bit fingerprints of minimal solutions, used to recognize solutions that
+ * were already shown. The fingerprint of a solution is a hash of the true primary variables of its
+ * propositional model, so solutions are told apart without rendering their instances as text.
+ * When the set is full, adding a fingerprint evicts the oldest one.
+ *
+ * The fingerprints are kept in an open-addressing table of longs, with linear probing, and in a
+ * ring buffer in the order they were added, to find the oldest one. Not thread-safe.
+ */
+final class ModelFingerprintSet {
+	/** The value of the empty slots of the table; no fingerprint is 0. */
+	private static final long EMPTY = 0L;
+
+	/** The table: a power of 2 at least twice as large as the ring, so that probes stay short. */
+	private final long[] table;
+	/** The fingerprints in the order they were added; ring[(oldest + i) % ring.length] is the i-th oldest. */
+	private final long[] ring;
+	private int oldest = 0, size = 0;
+
+	/** The number of calls to add(..) that found the fingerprint, and the number of evicted fingerprints. */
+	private long duplicates = 0, evictions = 0;
+
+	/**
+	 * Constructs an empty set that holds up to the given number of fingerprints.
+	 * @throws IllegalArgumentException - capacity < 1
+	 */
+	ModelFingerprintSet(int capacity) {
+		if (capacity < 1)
+			throw new IllegalArgumentException("capacity < 1: " + capacity);
+		int tableSize = 2;
+		while (tableSize < 2 * capacity)
+			tableSize <<= 1;
+		this.table = new long[tableSize];
+		this.ring = new long[capacity];
+	}
+
+	/**
+	 * Returns the fingerprint of the given solution: a hash of the true primary variables of its
+	 * propositional model, or of its text (toString) if it has no model, e.g. if it is trivial.
+	 * @return the fingerprint of the given solution, which is not 0.
+	 */
+	static long fingerprint(MinA4Solution sol) {
+		final MinSolution solution = sol.getCurrentSolution();
+		final int[] model = (solution == null) ? null : solution.getPropositionalModel();
+		long hash = 0xcbf29ce484222325L;
+		if (model == null) {
+			final String text = sol.toString();
+			for (int i = 0; i < text.length(); i++)
+				hash = (hash ^ text.charAt(i)) * 0x100000001b3L;
+		} else {
+			final int primary = Math.min(model.length, solution.stats().primaryVariables());
+			for (int i = 0; i < primary; i++)
+				if (model[i] > 0)
+					hash = (hash ^ (i + 1)) * 0x100000001b3L;
+			hash = (hash ^ primary) * 0x100000001b3L;
+		}
+		// Spreads the bits (the finalizer of MurmurHash3), since the table uses the low bits.
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		hash *= 0xc4ceb9fe1a85ec53L;
+		hash ^= hash >>> 33;
+		return hash == EMPTY ? 1L : hash;
+	}
+
+	/**
+	 * Adds the given fingerprint to this set, evicting the oldest one if the set is full.
+	 * @requires fingerprint != 0
+	 * @return true if the fingerprint was not in this set.
+	 */
+	boolean add(long fingerprint) {
+		int slot = slot(fingerprint);
+		if (table[slot] == fingerprint) {
+			duplicates++;
+			return false;
+		}
+		if (size == ring.length) {
+			remove(ring[oldest]);
+			oldest = (oldest + 1) % ring.length;
+			size--;
+			evictions++;
+			slot = slot(fingerprint);
+		}
+		table[slot] = fingerprint;
+		ring[(oldest + size) % ring.length] = fingerprint;
+		size++;
+		return true;
+	}
+
+	/**
+	 * Removes every fingerprint from this set; the statistics are kept.
+	 */
+	void clear() {
+		Arrays.fill(table, EMPTY);
+		oldest = size = 0;
+	}
+
+	/**
+	 * Returns the number of fingerprints in this set.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of duplicates that add(..) found since this set was created.
+	 */
+	long duplicates() {
+		return duplicates;
+	}
+
+	/**
+	 * Returns the number of fingerprints evicted to make room for new ones since this set was created.
+	 */
+	long evictions() {
+		return evictions;
+	}
+
+	/**
+	 * Returns the slot of the table that holds the given fingerprint, or the empty slot where it would go.
+	 */
+	private int slot(long fingerprint) {
+		final int mask = table.length - 1;
+		int slot = (int) fingerprint & mask;
+		while (table[slot] != EMPTY && table[slot] != fingerprint)
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	/**
+	 * Removes the given fingerprint from the table, moving back the fingerprints after it
+	 * that would no longer be found (backward-shift deletion).
+	 * @requires the fingerprint is in the table
+	 */
+	private void remove(long fingerprint) {
+		final int mask = table.length - 1;
+		int hole = slot(fingerprint);
+		int next = (hole + 1) & mask;
+		while (table[next] != EMPTY) {
+			final int home = (int) table[next] & mask;
+			// Moves table[next] into the hole unless its home slot is in (hole, next].
+			if (((next - home) & mask) >= ((next - hole) & mask)) {
+				table[hole] = table[next];
+				hole = next;
+			}
+			next = (next + 1) & mask;
+		}
+		table[hole] = EMPTY;
+	}
+}
@@ -187,6 +187,17 @@ public final class MinA4Options implements Serializable {
     /** This option constrols how deep we unroll loops and unroll recursive predicate/function/macros (negative means it's disallowed) */
     public int unrolls = (-1);
 
+    /** This option specifies how many minimal instances the GUI computes in the background, ahead of the one being shown
+     * (0 means none: each instance is only computed when "Next" is clicked).
+     * <p> Default value is 1.
+     */
+    public int prefetchDepth = 1;
+
+    /** This option specifies whether the GUI also computes the consistent facts of the instances it computes ahead.
+     * <p> Default value is false.
+     */
+    public boolean prefetchConsistentFacts = false;
+
     /** This method makes a copy of this Options object. */
     public MinA4Options dup() {
         MinA4Options x = new MinA4Options();
@@ -200,6 +211,8 @@ public final class MinA4Options implements Serializable {
         x.originalFilename = originalFilename;
         x.recordKodkod = recordKodkod;
         x.logMinimizationHistory = logMinimizationHistory;
+        x.prefetchDepth = prefetchDepth;
+        x.prefetchConsistentFacts = prefetchConsistentFacts;
         return x;
     }
 }
\ No newline at end of file
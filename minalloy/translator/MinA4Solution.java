@@ -31,6 +31,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -53,9 +54,11 @@ import kodkod.engine.CapacityExceededException;
 import kodkod.engine.Evaluator;
 import minkodkod.ExplorationException;
 import minkodkod.MinReporterToGatherSkolemBounds;
+import minkodkod.MinSATSolver;
 import minkodkod.MinSATSolverFactory;
 import minkodkod.MinSolution;
 import minkodkod.MinSolver;
+import minkodkod.engine.fol2sat.MinTranslation;
 import minkodkod.engine.fol2sat.MinTranslator;
 import kodkod.engine.config.Options;
 import kodkod.instance.Bounds;
@@ -341,6 +344,8 @@ public final class MinA4Solution {
         	inst = currentSolution.instance();
         	this.currentSolution = currentSolution;
         }
+        // The solution may come from a prefetch that was given back (see cancelPrefetch()).
+        makeCurrent(old.kEnumerator);
         
         unrolls = old.unrolls;
         originalOptions = old.originalOptions;
@@ -742,28 +747,31 @@ public final class MinA4Solution {
 
     //===================================================================================================//
 
-    /** Helper class that wraps an iterator up where it will pre-fetch the first element (note: it will not prefetch subsequent elements). */
+    /** Helper class that wraps an iterator up where it will pre-fetch the first element (note: it will not prefetch subsequent elements),
+     * and where elements can be pushed back to be returned again. */
     private static final class Peeker<T> implements Iterator<T> {
         /** The encapsulated iterator. */
         private Iterator<T> iterator;
-        /** True iff we have captured the first element. */
-        private boolean hasFirst;
-        /** If hasFirst is true, then this is the captured first element. */
-        private T first;
+        /** The captured first element and the pushed-back elements, in the order next() will return them. */
+        private final LinkedList<T> ahead = new LinkedList<T>();
         /** Constructrs a Peeker object. */
         private Peeker(Iterator<T> it) {
             iterator = it;
-            if (it.hasNext()) { hasFirst=true; first=it.next(); }
+            if (it.hasNext()) ahead.add(it.next());
         }
         /** {@inheritDoc} */
         public boolean hasNext() {
-            return hasFirst || iterator.hasNext();
+            return !ahead.isEmpty() || iterator.hasNext();
         }
         /** {@inheritDoc} */
         public T next() {
-            if (hasFirst) { hasFirst=false; T ans=first; first=null; return ans; } 
+            if (!ahead.isEmpty()) return ahead.removeFirst();
             else return iterator.next();
         }
+        /** Puts back an element returned by next(), so that next() returns it again before anything else. */
+        private void pushBack(T element) {
+            ahead.addFirst(element);
+        }
         /** {@inheritDoc} */
         public void remove() { throw new UnsupportedOperationException(); }
     }
@@ -1010,8 +1018,8 @@ public final class MinA4Solution {
     }
     
     /** Augments a model with some new facts; if cmd==null, we will simply use the lowerbound of each relation as its value. */
-    public MinA4Solution augment(String inputFact, Map<String, String> dictionary) throws Err, ExplorationException {
-        Formula fgoal = Formula.and(formulas);
+    public synchronized MinA4Solution augment(String inputFact, Map<String, String> dictionary) throws Err, ExplorationException {
+        cancelPrefetch();
         
         Instance inst = solver.parseString(inputFact, ((Peeker<MinSolution>)kEnumerator).iterator, dictionary, atom2name);
         
@@ -1020,7 +1028,7 @@ public final class MinA4Solution {
         	throw new ExplorationException("The input fact is not valid!");       
                 
         // Get an augmented iterator
-        Iterator<MinSolution> augmentedIterator = solver.augment(fgoal, ((Peeker<MinSolution>)kEnumerator).iterator, inst);                       
+        Iterator<MinSolution> augmentedIterator = solver.augment(((Peeker<MinSolution>)kEnumerator).iterator, inst);                       
         
         // Push the current solution and iterator onto the stack, so we can backtrack.
         solutionStack.push(new SolutionStackElement(kEnumerator, currentSolution));
@@ -1041,12 +1049,14 @@ public final class MinA4Solution {
     }
 
     /** Returns a list of facts consistent to the current loaded solution. */
-    public String listConsistentFacts(Map<String, String> dictionary) {
+    public synchronized String listConsistentFacts(Map<String, String> dictionary) {
+    	cancelPrefetch();
     	return solver.getCFList(((Peeker<MinSolution>)kEnumerator).iterator, dictionary, atom2name);
     }  
 
     /** Returns an instance containing the consistent facts. */
-    public Instance getConsistentFacts(){
+    public synchronized Instance getConsistentFacts(){
+    	cancelPrefetch();
     	try {
 			return solver.getConsistentFacts(((Peeker<MinSolution>)kEnumerator).iterator);
 		} catch (TimeoutException e) {
@@ -1059,12 +1069,18 @@ public final class MinA4Solution {
     }  
     
     /** Performs one level of backtracking to the current state in the exploration. */
-    public MinA4Solution backtrack() throws Err, IOException {
+    public synchronized MinA4Solution backtrack() throws Err, IOException {
         if (!solved) throw new ErrorAPI("This solution is not yet solved, so next() is not allowed.");
+        cancelPrefetch();
         if(solutionStack.size() == 0)
         	return null;
     	SolutionStackElement element = solutionStack.pop();
+    	// The augmented iterator is dropped for good, so it releases its clauses in the solver.
+    	// (An augmentation of a trivial formula returns its parent, which is still in use.)
+    	Iterator<MinSolution> dropped = ((Peeker<MinSolution>)kEnumerator).iterator;
     	kEnumerator = element.kEnumerator;
+    	if (dropped != ((Peeker<MinSolution>)kEnumerator).iterator)
+    	    ((MinSolver.MinSolutionIterator)dropped).close();
     	MinSolution sol = element.currentSolution;
         //if (eval==null) return this;
         if (nextCache==null) nextCache=new MinA4Solution(this, sol);
@@ -1114,13 +1130,101 @@ public final class MinA4Solution {
     /** If this solution is UNSAT, return itself; else return the next solution (which could be SAT or UNSAT).
      * @throws ErrorAPI if the solver was not an incremental solver
      */
-    public MinA4Solution next() throws Err {
+    public synchronized MinA4Solution next() throws Err {
         if (!solved) throw new ErrorAPI("This solution is not yet solved, so next() is not allowed.");
         if (eval==null) return this;
-        if (nextCache==null) nextCache=new MinA4Solution(this);
+        if (nextCache==null) nextCache=(prefetched!=null) ? prefetched : new MinA4Solution(this);
+        prefetched = null;
         return nextCache;
     }
 
+    /** If nonnull, the solution after this one, computed ahead of time by prefetch() but not returned by next() yet. */
+    private MinA4Solution prefetched = null;
+
+    /** Guards prefetching and prefetchSolver. */
+    private final Object prefetchLock = new Object();
+
+    /** True while prefetch() runs on this solution; guarded by prefetchLock. */
+    private boolean prefetching = false;
+
+    /** The SAT solver that the running prefetch() solves with, or null if there is none; guarded by prefetchLock. */
+    private MinSATSolver prefetchSolver = null;
+
+    /** Computes up to depth solutions after this one ahead of time, so that next() (and next() on the solutions it returns) 
+     * can return them without solving; if consistentFacts is true, their consistent facts are computed too, and kept with them.
+     * Only the solution whose successor is being computed is locked, so a call on any other solution does not wait.
+     * Stops early if the current thread is interrupted, or when stopPrefetch() interrupts the SAT call in progress;
+     * the solution being computed is then dropped, and next() computes it again.
+     * @throws ErrorAPI if the solver was not an incremental solver
+     */
+    public void prefetch(int depth, boolean consistentFacts) throws Err {
+        final MinSATSolver cnf;
+        synchronized(this) {
+            if (!solved) throw new ErrorAPI("This solution is not yet solved, so prefetch() is not allowed.");
+            if (eval==null || kEnumerator==null) return;
+            MinTranslation translation = ((MinSolver.MinSolutionIterator)((Peeker<MinSolution>)kEnumerator).iterator).getTranslation();
+            cnf = (translation==null) ? null : translation.cnf();
+        }
+        synchronized(prefetchLock) {
+            if (Thread.currentThread().isInterrupted()) return;
+            prefetching = true;
+            prefetchSolver = cnf;
+        }
+        try {
+            MinA4Solution sol = this;
+            for(int i=0; i<depth && !Thread.currentThread().isInterrupted(); i++) {
+                final MinA4Solution after;
+                synchronized(sol) {
+                    if (sol.eval==null || sol.kEnumerator==null || sol.nextCache!=null) return;
+                    if (sol.prefetched==null) {
+                        sol.prefetched = new MinA4Solution(sol);
+                        // The iterator refers to the new solution now, so this computes (and caches) its facts.
+                        if (consistentFacts && sol.prefetched.satisfiable()) sol.prefetched.getConsistentFacts();
+                    }
+                    after = sol.prefetched;
+                }
+                sol = after;
+            }
+        } finally {
+            synchronized(prefetchLock) {
+                prefetching = false;
+                prefetchSolver = null;
+                if (cnf!=null) cnf.clearInterrupt();
+                prefetchLock.notifyAll();
+            }
+        }
+    }
+
+    /** Stops the prefetch() running on this solution, if any, interrupting its SAT call, and waits until it has returned.
+     * The solutions it has computed are kept. */
+    public void stopPrefetch() {
+        boolean interrupted = false;
+        synchronized(prefetchLock) {
+            if (prefetchSolver!=null) prefetchSolver.interrupt();
+            while(prefetching) {
+                try { prefetchLock.wait(); } catch(InterruptedException ex) { interrupted = true; }
+            }
+        }
+        if (interrupted) Thread.currentThread().interrupt();
+    }
+
+    /** Gives the solutions computed ahead of this one by prefetch() back to the iterator, so that augmentation and consistent facts 
+     * refer to this solution again; next() still returns them without solving. */
+    public synchronized void cancelPrefetch() {
+        if (prefetched!=null) {
+            prefetched.cancelPrefetch();
+            ((Peeker<MinSolution>)kEnumerator).pushBack(prefetched.currentSolution);
+            prefetched = null;
+        }
+        makeCurrent(kEnumerator);
+    }
+
+    /** Makes this.currentSolution the solution that the iterator of the given enumerator refers to. */
+    private void makeCurrent(Iterator<MinSolution> enumerator) {
+        if (currentSolution!=null && enumerator instanceof Peeker)
+            ((MinSolver.MinSolutionIterator)((Peeker<MinSolution>)enumerator).iterator).setCurrentSolution(currentSolution);
+    }
+
     /** Returns true if this solution was generated by an incremental SAT solver. */
     public boolean isIncremental() { return kEnumerator!=null; }
 
@@ -45,7 +45,7 @@ public final class AbortedException extends RuntimeException {
 	/**
 	 * Constructs an aborted exception with the given cause.
 	 */
-	AbortedException(Throwable cause) {
+	public AbortedException(Throwable cause) {
 		super(cause); 
 	}
 
@@ -0,0 +1,133 @@
+package minkodkod;
+
+import java.util.Arrays;
+
+/**
+ * A duplicate-free store of cone-restriction clauses. Every clause is kept as a sorted
+ * int[] of literals, and is found again through a 64-bit hash of its literals, so storing
+ * and checking the negated positive diagram of a model needs neither boxed integers nor a
+ * Set per clause.
+ *
+ * @specfield clauses: seq int[] // the stored clauses, in the order they were added
+ */
+final class ConeRestrictionClauses {
+	/** The stored clauses, in the order they were added. */
+	private int[][] clauses = new int[16][];
+	/** hashes[i] is the hash of clauses[i]. */
+	private long[] hashes = new long[16];
+	private int size = 0;
+
+	/**
+	 * Open-addressing hash table over the stored clauses: slots[j] is the index of
+	 * a clause plus one, or 0 if the slot is free. Its length is a power of 2.
+	 */
+	private int[] slots = new int[32];
+
+	/**
+	 * Returns the number of clauses in this store.
+	 * @return #this.clauses
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the i-th clause of this store. The returned array must not be modified.
+	 * @requires 0 <= i < this.size()
+	 * @return this.clauses[i]
+	 */
+	int[] get(int i) {
+		return clauses[i];
+	}
+
+	/**
+	 * Returns true if the first length literals of lits are a clause of this store.
+	 * @requires lits[0..length) is sorted in ascending order and has no duplicates
+	 * @return some i: [0..this.size()) | this.clauses[i] = lits[0..length)
+	 */
+	boolean contains(int[] lits, int length) {
+		return indexOf(lits, length, hash(lits, length)) >= 0;
+	}
+
+	/**
+	 * Adds the given clause to this store. The store keeps the array itself,
+	 * so the caller must not modify it afterwards.
+	 * @requires clause is sorted in ascending order and has no duplicates
+	 * @requires !this.contains(clause, clause.length)
+	 * @effects this.clauses' = this.clauses + clause
+	 */
+	void add(int[] clause) {
+		if(size == clauses.length) {
+			clauses = Arrays.copyOf(clauses, size * 2);
+			hashes = Arrays.copyOf(hashes, size * 2);
+		}
+		clauses[size] = clause;
+		hashes[size] = hash(clause, clause.length);
+		size++;
+
+		// Keep the table at most half full.
+		if(2 * size > slots.length)
+			rehash(slots.length * 2);
+		else
+			insert(size - 1);
+	}
+
+	/**
+	 * Returns the index of the clause lits[0..length) with the given hash, or -1.
+	 */
+	private int indexOf(int[] lits, int length, long hash) {
+		final int mask = slots.length - 1;
+		for(int j = slot(hash, mask); slots[j] != 0; j = (j + 1) & mask) {
+			final int i = slots[j] - 1;
+			if(hashes[i] == hash && sameLiterals(clauses[i], lits, length))
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Puts the i-th clause in the first free slot for its hash.
+	 */
+	private void insert(int i) {
+		final int mask = slots.length - 1;
+		int j = slot(hashes[i], mask);
+		while(slots[j] != 0)
+			j = (j + 1) & mask;
+		slots[j] = i + 1;
+	}
+
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		for(int i = 0; i < size; i++)
+			insert(i);
+	}
+
+	private static int slot(long hash, int mask) {
+		return (int)(hash ^ (hash >>> 32)) & mask;
+	}
+
+	private static boolean sameLiterals(int[] clause, int[] lits, int length) {
+		if(clause.length != length)
+			return false;
+		for(int k = 0; k < length; k++)
+			if(clause[k] != lits[k])
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns a 64-bit hash of lits[0..length), mixing every literal with a
+	 * multiplicative step and the result with the finalizer of MurmurHash3.
+	 */
+	private static long hash(int[] lits, int length) {
+		long h = length;
+		for(int k = 0; k < length; k++)
+			h = (h + lits[k]) * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB93FE1A85EC9L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,132 @@
+package minkodkod;
+
+import java.util.ArrayDeque;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.Set;
+
+/**
+ * What is known about the consistent facts of the models of one translation, shared by
+ * every consistent-fact search on it. A fact f is consistent for a model M iff the formula
+ * has a model that contains both the positive diagram of M and f, so:
+ * <ul>
+ * <li> every fact of a model seen before that contains the positive diagram of M is consistent
+ * for M, without asking the solver; and
+ * <li> a nogood (core, facts) learned from a failed-assumption core, meaning that the formula
+ * has no model with all of core and any of facts, rules out all of facts at once for every M
+ * whose positive diagram contains core.
+ * </ul>
+ * Both are kept in bounded FIFO pools, so the engine never holds more than MAX_MODELS models
+ * and MAX_NOGOODS nogoods. The methods are synchronized, since the parallel search reports
+ * from several threads.
+ *
+ * @specfield models: seq BitSet // primary projections of models of the formula
+ * @specfield nogoods: seq BitSet -> int[] // cores and the facts they rule out
+ */
+final class ConsistentFactEngine {
+	static final int MAX_MODELS = 1024;
+	static final int MAX_NOGOODS = 256;
+
+	private final int numPrimaryVariables;
+	private final Deque<BitSet> models = new ArrayDeque<BitSet>();
+	private final Deque<BitSet> nogoodCores = new ArrayDeque<BitSet>();
+	private final Deque<int[]> nogoodFacts = new ArrayDeque<int[]>();
+
+	/**
+	 * Constructs an empty engine for a translation with the given number of primary variables.
+	 */
+	ConsistentFactEngine(int numPrimaryVariables) {
+		this.numPrimaryVariables = numPrimaryVariables;
+	}
+
+	/**
+	 * Returns the set of primary variables that are true in the given propositional model.
+	 * @requires model.length >= this.numPrimaryVariables
+	 */
+	BitSet positiveDiagram(int[] model) {
+		final BitSet result = new BitSet(numPrimaryVariables + 1);
+		for(int i = 1; i <= numPrimaryVariables; i++)
+			if(model[i - 1] > 0)
+				result.set(i);
+		return result;
+	}
+
+	/**
+	 * Records the primary projection of the last model of the given solver.
+	 * @requires the last call to solver.solve(..) returned true
+	 * @effects this.models' = this.models + positive diagram of the model, dropping the
+	 * oldest model if there are more than MAX_MODELS
+	 */
+	synchronized void addModel(MinSATSolver solver) {
+		final BitSet model = new BitSet(numPrimaryVariables + 1);
+		for(int i = 1; i <= numPrimaryVariables; i++)
+			if(solver.valueOf(i))
+				model.set(i);
+		if(models.size() == MAX_MODELS)
+			models.removeFirst();
+		models.addLast(model);
+	}
+
+	/**
+	 * Records that the formula has no model with all of core and any of facts.
+	 * @effects this.nogoods' = this.nogoods + core -> facts, dropping the oldest
+	 * nogood if there are more than MAX_NOGOODS
+	 */
+	synchronized void addNogood(BitSet core, Collection<Integer> facts) {
+		final int[] array = new int[facts.size()];
+		int i = 0;
+		for(Integer fact : facts)
+			array[i++] = fact;
+		if(nogoodCores.size() == MAX_NOGOODS) {
+			nogoodCores.removeFirst();
+			nogoodFacts.removeFirst();
+		}
+		nogoodCores.addLast(core);
+		nogoodFacts.addLast(array);
+	}
+
+	/**
+	 * Moves every fact of wantToAdd that is true in a recorded model containing preserved
+	 * to found, and removes every fact ruled out for preserved by a recorded nogood.
+	 * @effects wantToAdd' = wantToAdd - found'.elements - {f | some n: this.nogoods | n.core in preserved && f in n.facts}
+	 * @effects found' = found + {f: wantToAdd | some m: this.models | preserved in m && f in m}
+	 */
+	synchronized void prune(BitSet preserved, Set<Integer> wantToAdd, Set<Integer> found) {
+		for(BitSet model : models) {
+			if(wantToAdd.isEmpty())
+				return;
+			if(!contains(model, preserved))
+				continue;
+			for(Iterator<Integer> it = wantToAdd.iterator(); it.hasNext(); ) {
+				final Integer fact = it.next();
+				if(model.get(fact)) {
+					found.add(fact);
+					it.remove();
+				}
+			}
+		}
+
+		final Iterator<int[]> facts = nogoodFacts.iterator();
+		for(BitSet core : nogoodCores) {
+			final int[] ruledOut = facts.next();
+			if(wantToAdd.isEmpty())
+				return;
+			if(!contains(preserved, core))
+				continue;
+			for(int fact : ruledOut)
+				wantToAdd.remove(fact);
+		}
+	}
+
+	/**
+	 * Returns true if every element of subset is in superset.
+	 */
+	private static boolean contains(BitSet superset, BitSet subset) {
+		for(int i = subset.nextSetBit(0); i >= 0; i = subset.nextSetBit(i + 1))
+			if(!superset.get(i))
+				return false;
+		return true;
+	}
+}
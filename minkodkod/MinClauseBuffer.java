@@ -0,0 +1,198 @@
+package minkodkod;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+/**
+ * A growable sequence of clauses, kept as one array of literals (the arena) and one array of
+ * the offsets where the clauses end. MinBool2CNFTranslator fills a buffer with the CNF of a circuit,
+ * which MinSATSolver.addClauses(..) then gives to SAT4J at once; the solver also keeps the clauses
+ * of its formula in a buffer. Adding a clause copies its literals, so the caller can reuse its array.
+ *
+ * @specfield clauses: seq int[]
+ */
+public final class MinClauseBuffer {
+	/** The literals of the clauses, one clause after the other; lits[0..length) are used. */
+	private int[] lits;
+	/** The i-th clause is lits[ends[i-1]..ends[i]), with ends[-1] = 0; ends[0..size) are used. */
+	private int[] ends;
+	private int length = 0, size = 0;
+
+	/**
+	 * Constructs an empty buffer.
+	 * @effects no this.clauses'
+	 */
+	public MinClauseBuffer() {
+		this.lits = new int[1024];
+		this.ends = new int[256];
+	}
+
+	/**
+	 * Returns the number of clauses in this buffer.
+	 * @return #this.clauses
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of literals in the clauses of this buffer.
+	 * @return sum i: this.clauses.inds | #this.clauses[i]
+	 */
+	public int literals() {
+		return length;
+	}
+
+	/**
+	 * Returns the offset of the first literal of the given clause in this.arena().
+	 * @requires 0 <= clause < this.size()
+	 */
+	public int start(int clause) {
+		return (clause == 0) ? 0 : ends[clause - 1];
+	}
+
+	/**
+	 * Returns the offset after the last literal of the given clause in this.arena().
+	 * @requires 0 <= clause < this.size()
+	 */
+	public int end(int clause) {
+		return ends[clause];
+	}
+
+	/**
+	 * Returns the literal at the given offset of the arena.
+	 * @requires 0 <= offset < this.literals()
+	 */
+	public int literal(int offset) {
+		return lits[offset];
+	}
+
+	/**
+	 * Returns the arena of this buffer: the literals of the clauses, one clause after the other,
+	 * from start(0) to end(size()-1). The array is not copied, and is only valid until the next
+	 * clause is added; it must not be modified.
+	 * @return the literals of this.clauses, in an array that may be longer than this.literals()
+	 */
+	int[] arena() {
+		return lits;
+	}
+
+	/**
+	 * Adds the unit clause of the given literal to this buffer.
+	 * @effects this.clauses' = this.clauses.add({0->lit})
+	 */
+	public void add(int lit) {
+		ensure(1);
+		lits[length++] = lit;
+		end();
+	}
+
+	/**
+	 * Adds the binary clause of the given literals to this buffer.
+	 * @effects this.clauses' = this.clauses.add({0->lit0, 1->lit1})
+	 */
+	public void add(int lit0, int lit1) {
+		ensure(2);
+		lits[length++] = lit0;
+		lits[length++] = lit1;
+		end();
+	}
+
+	/**
+	 * Adds the ternary clause of the given literals to this buffer.
+	 * @effects this.clauses' = this.clauses.add({0->lit0, 1->lit1, 2->lit2})
+	 */
+	public void add(int lit0, int lit1, int lit2) {
+		ensure(3);
+		lits[length++] = lit0;
+		lits[length++] = lit1;
+		lits[length++] = lit2;
+		end();
+	}
+
+	/**
+	 * Adds the clause of the given literals to this buffer.
+	 * @effects this.clauses' = this.clauses.add(clause)
+	 */
+	public void add(int[] clause) {
+		add(clause, 0, clause.length);
+	}
+
+	/**
+	 * Adds the clause of the literals clause[from..to) to this buffer.
+	 * @requires 0 <= from <= to <= clause.length
+	 * @effects this.clauses' = this.clauses.add(clause[from..to))
+	 */
+	public void add(int[] clause, int from, int to) {
+		ensure(to - from);
+		System.arraycopy(clause, from, lits, length, to - from);
+		length += to - from;
+		end();
+	}
+
+	/**
+	 * Adds the clauses of the given buffer to this one, in their order.
+	 * @effects this.clauses' = this.clauses.append(other.clauses)
+	 */
+	public void addAll(MinClauseBuffer other) {
+		ensure(other.length);
+		System.arraycopy(other.lits, 0, lits, length, other.length);
+		if (ends.length < size + other.size)
+			ends = Arrays.copyOf(ends, StrictMath.max(2 * ends.length, size + other.size));
+		for (int i = 0; i < other.size; i++)
+			ends[size + i] = length + other.ends[i];
+		length += other.length;
+		size += other.size;
+	}
+
+	/**
+	 * Returns the clauses of this buffer as consecutive runs of a clause length followed by
+	 * that many literals.
+	 * @return the clauses of this buffer, encoded as runs of a length and literals
+	 */
+	public int[] toArray() {
+		final int[] result = new int[size + length];
+		for (int i = 0, k = 0; i < size; i++) {
+			final int start = start(i), end = ends[i];
+			result[k++] = end - start;
+			System.arraycopy(lits, start, result, k, end - start);
+			k += end - start;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the clauses of this buffer to the given writer in DIMACS format, with a problem line
+	 * for the given number of variables. The writer is not flushed or closed.
+	 * @requires all lit: this.clauses[int][int] | |lit| <= numVariables
+	 * @throws IOException - the writer throws it
+	 */
+	public void writeDimacs(Writer out, int numVariables) throws IOException {
+		out.write("p cnf " + numVariables + " " + size + "\n");
+		final StringBuilder line = new StringBuilder();
+		for (int i = 0; i < size; i++) {
+			line.setLength(0);
+			for (int j = start(i); j < ends[i]; j++)
+				line.append(lits[j]).append(' ');
+			out.write(line.append("0\n").toString());
+		}
+	}
+
+	/**
+	 * Makes room for the given number of literals.
+	 */
+	private void ensure(int more) {
+		if (lits.length < length + more)
+			lits = Arrays.copyOf(lits, StrictMath.max(2 * lits.length, length + more));
+	}
+
+	/**
+	 * Ends the clause being added.
+	 */
+	private void end() {
+		if (size == ends.length)
+			ends = Arrays.copyOf(ends, 2 * size);
+		ends[size++] = length;
+	}
+}
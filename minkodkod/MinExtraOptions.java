@@ -1,12 +1,52 @@
 package minkodkod;
 
+import java.io.File;
+
 /**
- * This class is designed to store other execution options that Aluminum would use independently. 
+ * This class is designed to store other execution options that Aluminum would use independently.
  */
 public class MinExtraOptions {
+	/**
+	 * The algorithms that MinSolutionIterator can use to shrink a model to a minimal one.
+	 */
+	public static enum MinimizationStrategy {
+		/**
+		 * Repeatedly ask the SAT solver for a model that loses at least one positive fact of
+		 * the current model. May need up to k+1 SAT calls for a model with k removable facts.
+		 */
+		LOSE_SOMETHING_POSITIVE,
+		/**
+		 * Try to drop whole blocks of positive facts at once, splitting a block that cannot be
+		 * dropped in halves, down to single facts (in the style of QuickXplain). Needs far fewer
+		 * SAT calls when most of the facts of the first model can be removed together.
+		 */
+		DIVIDE_AND_CONQUER
+	}
+
 	//Log the number of elements, attributes and relations that are being reduced by minimization:
 	private boolean logMinimizationHistory = false;
-	
+
+	//Guard the minimization clauses with an activation literal instead of removing them from the solver:
+	private boolean minimizeWithActivationLiterals = false;
+
+	//The number of solvers that compute consistent facts in parallel (1 means sequentially, on the shared solver):
+	private int consistentFactsThreads = 1;
+
+	//The number of threads that translate the top-level conjuncts of a formula (1 means sequentially):
+	private int translationThreads = 1;
+
+	//The maximum total cost of the translations kept by a cache of the translation to circuits (Long.MAX_VALUE means no bound):
+	private long circuitCacheBudget = Long.MAX_VALUE;
+
+	//The directory of the on-disk translation cache (null means no cache):
+	private File translationCacheDirectory = null;
+
+	//Gets the statistics of every solution (null means none):
+	private MinStatisticsListener statisticsListener = null;
+
+	//The algorithm used to minimize models:
+	private MinimizationStrategy minimizationStrategy = MinimizationStrategy.LOSE_SOMETHING_POSITIVE;
+
 	public void setLogMinimizationHistory(boolean logMinimizationHistory){
 		this.logMinimizationHistory = logMinimizationHistory;
 	}
@@ -14,4 +54,115 @@ public class MinExtraOptions {
 	public boolean logMinimizationHistory(){
 		return this.logMinimizationHistory;
 	}
+
+	/**
+	 * If set, every "lose something positive" clause produced while minimizing a model is
+	 * guarded by an activation literal of the iterator that is passed to the SAT solver as an
+	 * assumption, instead of being added and later removed from the solver. So the solver never
+	 * has to physically remove a clause (and rebuild its watch lists) during minimization.
+	 * Only affects the LOSE_SOMETHING_POSITIVE strategy.
+	 */
+	public void setMinimizeWithActivationLiterals(boolean minimizeWithActivationLiterals){
+		this.minimizeWithActivationLiterals = minimizeWithActivationLiterals;
+	}
+
+	public boolean minimizeWithActivationLiterals(){
+		return this.minimizeWithActivationLiterals;
+	}
+
+	/**
+	 * Sets the number of threads that compute the consistent facts of a model. If greater than 1,
+	 * the candidate facts are partitioned among that many copies of the formula's solver 
+	 * (made once per translation), which search on a thread pool of the MinSolver. The result is
+	 * the same as the sequential search on the shared solver, which is used if the number is 1.
+	 * @throws IllegalArgumentException - consistentFactsThreads < 1
+	 */
+	public void setConsistentFactsThreads(int consistentFactsThreads){
+		if(consistentFactsThreads < 1)
+			throw new IllegalArgumentException("consistentFactsThreads < 1: " + consistentFactsThreads);
+		this.consistentFactsThreads = consistentFactsThreads;
+	}
+
+	public int consistentFactsThreads(){
+		return this.consistentFactsThreads;
+	}
+
+	/**
+	 * Sets the number of threads that translate a formula to a boolean circuit. If greater than 1,
+	 * the top-level conjuncts of the formula (e.g., the facts of an Alloy spec) are translated
+	 * concurrently, every thread over its own boolean factory, and their circuits are then merged
+	 * into one factory (see MinConjunctTranslator). The CNF may differ from the sequential one, which 
+	 * is used if the number is 1, but it has the same models over the primary variables. 
+	 * Translations that are logged are always sequential.
+	 * @throws IllegalArgumentException - translationThreads < 1
+	 */
+	public void setTranslationThreads(int translationThreads){
+		if(translationThreads < 1)
+			throw new IllegalArgumentException("translationThreads < 1: " + translationThreads);
+		this.translationThreads = translationThreads;
+	}
+
+	public int translationThreads(){
+		return this.translationThreads;
+	}
+
+	/**
+	 * Sets the budget of the caches that keep the translations of shared subformulas and 
+	 * subexpressions while a formula is translated to a boolean circuit (see FOL2BoolCache).
+	 * The cost of a translation is the number of non-FALSE entries of its matrix, the number of
+	 * bits of an integer, or 1 for a formula. When a cache would keep translations of a total 
+	 * cost above the budget, it throws out the least recently used ones, which are translated 
+	 * again if they are needed. A smaller budget trades translation time for memory; the 
+	 * default, Long.MAX_VALUE, keeps every translation.
+	 * @throws IllegalArgumentException - circuitCacheBudget < 0
+	 */
+	public void setCircuitCacheBudget(long circuitCacheBudget){
+		if(circuitCacheBudget < 0)
+			throw new IllegalArgumentException("circuitCacheBudget < 0: " + circuitCacheBudget);
+		this.circuitCacheBudget = circuitCacheBudget;
+	}
+
+	public long circuitCacheBudget(){
+		return this.circuitCacheBudget;
+	}
+
+	/**
+	 * Sets the algorithm used to minimize models.
+	 * @throws NullPointerException - minimizationStrategy = null
+	 */
+	public void setMinimizationStrategy(MinimizationStrategy minimizationStrategy){
+		if(minimizationStrategy == null)
+			throw new NullPointerException();
+		this.minimizationStrategy = minimizationStrategy;
+	}
+
+	public MinimizationStrategy minimizationStrategy(){
+		return this.minimizationStrategy;
+	}
+
+	/**
+	 * Sets the directory in which translations are cached, or null (the default) for no cache.
+	 * A translation is stored there, keyed by a hash of the formula, the bounds and the translation
+	 * options, and is read back instead of translating the same formula again, e.g. in a later run.
+	 * The directory is created when the first translation is stored.
+	 */
+	public void setTranslationCacheDirectory(File translationCacheDirectory){
+		this.translationCacheDirectory = translationCacheDirectory;
+	}
+
+	public File translationCacheDirectory(){
+		return this.translationCacheDirectory;
+	}
+
+	/**
+	 * Sets the listener that gets every solution of the iterators, with the statistics of the phases
+	 * that produced it (see MinPhaseStatistics), or null (the default) for none.
+	 */
+	public void setStatisticsListener(MinStatisticsListener statisticsListener){
+		this.statisticsListener = statisticsListener;
+	}
+
+	public MinStatisticsListener statisticsListener(){
+		return this.statisticsListener;
+	}
 }
@@ -0,0 +1,288 @@
+package minkodkod;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Emits Java Flight Recorder events for the phases of translation (skolemization, bounds optimization,
+ * translation to a circuit, SBP generation, flattening, translation to CNF), for every SAT call (tagged
+ * with its purpose), and for every call to MinSolutionIterator.next(). They are in the "Aluminum"
+ * category of a recording, so profiles show what the SAT solver was working on.
+ *
+ * Since this code targets Java 6, the event types are not classes extending jdk.jfr.Event: they are
+ * defined through jdk.jfr.EventFactory, and used by reflection. On a JVM without JFR (before Java 9, 
+ * or without the jdk.jfr module), every event is a no-op. The types are only defined once the flight
+ * recorder of the JVM is initialized, i.e. once a recording was created (with -XX:StartFlightRecording,
+ * jcmd or JMC); before that, an event costs a reflective call to FlightRecorder.isInitialized(), and
+ * afterwards, a reflective isEnabled() check if no recording enables its type. Loading this class only 
+ * loads jdk.jfr.FlightRecorder.
+ */
+public final class MinFlightRecorder {
+
+	/**
+	 * The purposes of SAT calls.
+	 */
+	public static enum Purpose {
+		/** Finding a model of an iterator that is not augmented, or that there is none. */
+		FIND,
+		/** Looking for a smaller model while minimizing. */
+		MINIMIZE,
+		/** Checking whether a fact is consistent with a minimal model. */
+		CONSISTENT_FACT,
+		/** Finding a model of an augmented iterator, or that there is none. */
+		AUGMENT
+	}
+
+	/** jdk.jfr.FlightRecorder.isInitialized(), or null if JFR is not available. */
+	private static final Method IS_INITIALIZED = isInitializedMethod();
+
+	/** The event types, once defined by types(); null before. */
+	private static volatile EventTypes types = null;
+	/** Set if defining the event types failed: there are no events then. Guarded by MinFlightRecorder.class. */
+	private static boolean failed = false;
+
+	private MinFlightRecorder() {}
+
+	private static Method isInitializedMethod() {
+		try {
+			return Class.forName("jdk.jfr.FlightRecorder").getMethod("isInitialized");
+		} catch (Throwable t) {
+			// No JFR (ClassNotFoundException, or the jdk.jfr module is missing): no events.
+			return null;
+		}
+	}
+
+	/**
+	 * Returns true if this JVM has JFR, i.e., if events are emitted while a recording enables them.
+	 * @return true if this JVM has JFR.
+	 */
+	public static boolean available() {
+		return IS_INITIALIZED != null;
+	}
+
+	/**
+	 * Returns the event types, defining them the first time that the flight recorder of this JVM
+	 * is found to be initialized (i.e., a recording was created, at startup or later); returns null
+	 * until then, or if JFR is not available. Defining them loads much of jdk.jfr, which takes a 
+	 * few hundred milliseconds, so a JVM that never records does not pay for it.
+	 */
+	private static EventTypes types() {
+		final EventTypes result = types;
+		if (result != null || IS_INITIALIZED == null)
+			return result;
+		if (!Boolean.TRUE.equals(EventType.invoke(IS_INITIALIZED, null)))
+			return null;
+		synchronized (MinFlightRecorder.class) {
+			if (types == null && !failed) {
+				try {
+					types = new EventTypes();
+				} catch (Throwable t) {
+					// Any error while defining the types: no events.
+					failed = true;
+				}
+			}
+			return types;
+		}
+	}
+
+	/**
+	 * Starts an event for the given phase of translation. The phases are named after the methods of
+	 * MinTranslator: "skolemize", "optimizeBounds", "toBoolean", "generateSBP", "flatten", "toCNF" 
+	 * (generating the clauses) and "loadCNF" (giving them to the solver), and "dimacs" for reading a 
+	 * CNF with MinTranslator.translate(File, Options).
+	 * @return the started event, to be ended with Event.translated(..)
+	 */
+	public static Event translation(String phase) {
+		final EventTypes types = types();
+		final Event event = Event.begin((types == null) ? null : types.translation);
+		event.set(0, phase);
+		return event;
+	}
+
+	/**
+	 * Starts an event for a SAT call with the given purpose.
+	 * @return the started event, to be ended with Event.solved(..)
+	 */
+	public static Event solve(Purpose purpose) {
+		final EventTypes types = types();
+		final Event event = Event.begin((types == null) ? null : types.solve);
+		event.set(0, purpose.name());
+		return event;
+	}
+
+	/**
+	 * Starts an event for a call to MinSolutionIterator.next().
+	 * @return the started event, to be ended with Event.next(..)
+	 */
+	public static Event next() {
+		final EventTypes types = types();
+		return Event.begin((types == null) ? null : types.next);
+	}
+
+	/**
+	 * An event in progress. Events whose type is not enabled do nothing.
+	 */
+	public static final class Event {
+		private static final Event DISABLED = new Event(null, null);
+
+		private final EventType type;
+		private final Object event;
+
+		private Event(EventType type, Object event) {
+			this.type = type;
+			this.event = event;
+		}
+
+		/**
+		 * Returns a started event of the given type, or DISABLED if it is not enabled.
+		 */
+		static Event begin(EventType type) {
+			if (type == null || !type.enabled())
+				return DISABLED;
+			final Object event = type.newEvent();
+			if (event == null)
+				return DISABLED;
+			EventType.invoke(type.begin, event);
+			return new Event(type, event);
+		}
+
+		void set(int field, Object value) {
+			if (event != null)
+				EventType.invoke(type.set, event, field, value);
+		}
+
+		private void commit() {
+			if (event != null)
+				EventType.invoke(type.commit, event);
+		}
+
+		/**
+		 * Ends this translation event, with the sizes known after its phase (0 if not known).
+		 */
+		public void translated(int primaryVariables, int variables, int clauses) {
+			if (event == null) return;
+			set(1, primaryVariables);
+			set(2, variables);
+			set(3, clauses);
+			commit();
+		}
+
+		/**
+		 * Ends this SAT call event, with the size of the problem and the outcome of the call.
+		 */
+		public void solved(int primaryVariables, int variables, int clauses, int assumptions, boolean satisfiable) {
+			if (event == null) return;
+			set(1, primaryVariables);
+			set(2, variables);
+			set(3, clauses);
+			set(4, assumptions);
+			set(5, satisfiable);
+			commit();
+		}
+
+		/**
+		 * Ends this next() event, with the statistics of the solution.
+		 */
+		public void next(MinStatistics stats, boolean satisfiable) {
+			if (event == null) return;
+			set(0, stats.primaryVariables());
+			set(1, stats.variables());
+			set(2, stats.clauses());
+			set(3, stats.satInvocations());
+			set(4, satisfiable);
+			commit();
+		}
+	}
+
+	/**
+	 * The three event types, defined together.
+	 */
+	private static final class EventTypes {
+		final EventType translation, solve, next;
+
+		/**
+		 * Defines and registers the event types.
+		 * @throws Exception - JFR is not available
+		 */
+		EventTypes() throws Exception {
+			translation = new EventType("aluminum.Translation", "Translation Phase",
+					"A phase of the translation of a formula to CNF",
+					new Class<?>[] { String.class, int.class, int.class, int.class },
+					new String[] { "phase", "primaryVariables", "variables", "clauses" });
+			solve = new EventType("aluminum.Solve", "SAT Call",
+					"A call to the SAT solver",
+					new Class<?>[] { String.class, int.class, int.class, int.class, int.class, boolean.class },
+					new String[] { "purpose", "primaryVariables", "variables", "clauses", "assumptions", "satisfiable" });
+			next = new EventType("aluminum.Next", "Next Minimal Solution",
+					"A call to MinSolutionIterator.next()",
+					new Class<?>[] { int.class, int.class, int.class, int.class, boolean.class },
+					new String[] { "primaryVariables", "variables", "clauses", "satInvocations", "satisfiable" });
+		}
+	}
+
+	/**
+	 * An event type defined through jdk.jfr.EventFactory, with the methods used on its events.
+	 */
+	private static final class EventType {
+		private final Object factory, eventType;
+		private final Method newEvent, isEnabled;
+		final Method begin, set, commit;
+
+		/**
+		 * Defines and registers an event type with the given name, label, description and fields.
+		 * @throws Exception - JFR is not available
+		 */
+		EventType(String name, String label, String description, Class<?>[] fieldTypes, String[] fieldNames)
+				throws Exception {
+			final Class<?> annotationElement = Class.forName("jdk.jfr.AnnotationElement");
+			final Constructor<?> newAnnotation = annotationElement.getConstructor(Class.class, Object.class);
+			final List<Object> annotations = new ArrayList<Object>();
+			annotations.add(newAnnotation.newInstance(Class.forName("jdk.jfr.Name"), name));
+			annotations.add(newAnnotation.newInstance(Class.forName("jdk.jfr.Label"), label));
+			annotations.add(newAnnotation.newInstance(Class.forName("jdk.jfr.Description"), description));
+			annotations.add(newAnnotation.newInstance(Class.forName("jdk.jfr.Category"), new String[] { "Aluminum" }));
+
+			final Constructor<?> newField = Class.forName("jdk.jfr.ValueDescriptor").getConstructor(Class.class, String.class);
+			final List<Object> fields = new ArrayList<Object>();
+			for (int i = 0; i < fieldTypes.length; i++)
+				fields.add(newField.newInstance(fieldTypes[i], fieldNames[i]));
+
+			final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory");
+			this.factory = eventFactory.getMethod("create", List.class, List.class).invoke(null, annotations, fields);
+			this.eventType = eventFactory.getMethod("getEventType").invoke(factory);
+			this.newEvent = eventFactory.getMethod("newEvent");
+			this.isEnabled = eventType.getClass().getMethod("isEnabled");
+
+			final Class<?> event = Class.forName("jdk.jfr.Event");
+			this.begin = event.getMethod("begin");
+			this.set = event.getMethod("set", int.class, Object.class);
+			this.commit = event.getMethod("commit");
+
+			// Registered so that the running recordings know the type before its first event.
+			eventFactory.getMethod("register").invoke(factory);
+		}
+
+		boolean enabled() {
+			final Object enabled = invoke(isEnabled, eventType);
+			return Boolean.TRUE.equals(enabled);
+		}
+
+		Object newEvent() {
+			return invoke(newEvent, factory);
+		}
+
+		/**
+		 * Calls the given method, and returns its result, or null if it failed:
+		 * a failing event must not fail what it records.
+		 */
+		static Object invoke(Method method, Object target, Object... args) {
+			try {
+				return method.invoke(target, args);
+			} catch (Exception e) {
+				return null;
+			}
+		}
+	}
+}
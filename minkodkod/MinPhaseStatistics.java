@@ -0,0 +1,164 @@
+package minkodkod;
+
+/**
+ * The statistics of the phases of the work that a MinSolutionIterator did to produce a solution,
+ * since it produced the previous one: finding a model, minimizing it, forbidding its cone,
+ * and building its instance, as well as claiming the shared SAT solver (including the claims of
+ * getConsistentFacts on the iterator). Times are in nanoseconds.
+ *
+ * The SBP toggles and the learned clauses are those of the SAT solver, which the iterators of
+ * a MinSolver share; they include the work of other iterators of the same solver, if any,
+ * since the previous solution.
+ * @see MinStatistics#phases()
+ */
+public final class MinPhaseStatistics {
+	private final long findTime, minimizeTime, claimTime, materializationTime;
+	private final int minimizationRounds, coneRestrictions, permutedConeRestrictions;
+	private final long sbpToggles, learnedClauses;
+
+	private MinPhaseStatistics(Recorder recorder, long sbpToggles, long learnedClauses) {
+		this.findTime = recorder.findTime;
+		this.minimizeTime = recorder.minimizeTime;
+		this.claimTime = recorder.claimTime;
+		this.materializationTime = recorder.materializationTime;
+		this.minimizationRounds = recorder.minimizationRounds;
+		this.coneRestrictions = recorder.coneRestrictions;
+		this.permutedConeRestrictions = recorder.permutedConeRestrictions;
+		this.sbpToggles = sbpToggles;
+		this.learnedClauses = learnedClauses;
+	}
+
+	/**
+	 * Returns the time spent in the SAT calls that found a (not necessarily minimal) model,
+	 * or that found there is none.
+	 * @return the time spent finding a model, in nanoseconds.
+	 */
+	public long findTime() {
+		return findTime;
+	}
+
+	/**
+	 * Returns the time spent minimizing the model that was found.
+	 * @return the time spent minimizing, in nanoseconds.
+	 */
+	public long minimizeTime() {
+		return minimizeTime;
+	}
+
+	/**
+	 * Returns the number of SAT calls made by minimization.
+	 * @return the number of SAT calls made by minimization.
+	 */
+	public int minimizationRounds() {
+		return minimizationRounds;
+	}
+
+	/**
+	 * Returns the number of cone-restriction clauses (units included) added for the minimal model;
+	 * 0 or 1, since a clause that the iterator already has is not added again.
+	 * @return the number of cone-restriction clauses added.
+	 */
+	public int coneRestrictions() {
+		return coneRestrictions;
+	}
+
+	/**
+	 * Returns the number of cone-restriction clauses added for the permutations of the minimal model.
+	 * @return the number of permuted cone-restriction clauses added.
+	 */
+	public int permutedConeRestrictions() {
+		return permutedConeRestrictions;
+	}
+
+	/**
+	 * Returns the number of times the SBP of the SAT solver was switched on or off.
+	 * @return the number of SBP toggles.
+	 */
+	public long sbpToggles() {
+		return sbpToggles;
+	}
+
+	/**
+	 * Returns the time spent claiming the SAT solver for the iterator.
+	 * @return the time spent in claimSATSolver(), in nanoseconds.
+	 */
+	public long claimTime() {
+		return claimTime;
+	}
+
+	/**
+	 * Returns the number of clauses learned by the SAT solver.
+	 * @return the number of learned clauses.
+	 */
+	public long learnedClauses() {
+		return learnedClauses;
+	}
+
+	/**
+	 * Returns the time spent building the instance of the solution from its model
+	 * (interpret and padInstance); 0 if the instance is built when it is first asked for.
+	 * @return the time spent building the instance, in nanoseconds.
+	 */
+	public long materializationTime() {
+		return materializationTime;
+	}
+
+	/**
+	 * Returns this as a JSON object, with the times in nanoseconds.
+	 * @return this as a JSON object.
+	 */
+	public String toJSON() {
+		final StringBuilder ret = new StringBuilder();
+		ret.append("{\"findTime\":").append(findTime);
+		ret.append(",\"minimizeTime\":").append(minimizeTime);
+		ret.append(",\"minimizationRounds\":").append(minimizationRounds);
+		ret.append(",\"coneRestrictions\":").append(coneRestrictions);
+		ret.append(",\"permutedConeRestrictions\":").append(permutedConeRestrictions);
+		ret.append(",\"sbpToggles\":").append(sbpToggles);
+		ret.append(",\"claimTime\":").append(claimTime);
+		ret.append(",\"learnedClauses\":").append(learnedClauses);
+		ret.append(",\"materializationTime\":").append(materializationTime);
+		return ret.append('}').toString();
+	}
+
+	/**
+	 * Returns a string representation of this object.
+	 * @return a string representation of this object.
+	 */
+	public String toString() {
+		return toJSON();
+	}
+
+	/**
+	 * Accumulates the statistics of an iterator between two solutions.
+	 */
+	static final class Recorder {
+		long findTime, minimizeTime, claimTime, materializationTime;
+		int minimizationRounds, coneRestrictions, permutedConeRestrictions;
+		private long sbpToggles, learnedClauses;
+
+		/**
+		 * Counts the SBP toggles and learned clauses of the given solver from now on,
+		 * rather than from its creation. 
+		 */
+		void start(MinSATSolver solver) {
+			sbpToggles = solver.sbpToggles();
+			learnedClauses = solver.learnedClauses();
+		}
+
+		/**
+		 * Returns the statistics recorded since the last call to snapshot(solver) or start(solver),
+		 * and starts recording anew.
+		 */
+		MinPhaseStatistics snapshot(MinSATSolver solver) {
+			final long toggles = solver.sbpToggles(), learned = solver.learnedClauses();
+			final MinPhaseStatistics result = new MinPhaseStatistics(this,
+					toggles - sbpToggles, learned - learnedClauses);
+			findTime = minimizeTime = claimTime = materializationTime = 0;
+			minimizationRounds = coneRestrictions = permutedConeRestrictions = 0;
+			sbpToggles = toggles;
+			learnedClauses = learned;
+			return result;
+		}
+	}
+}
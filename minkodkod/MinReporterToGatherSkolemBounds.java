@@ -25,6 +25,9 @@ public class MinReporterToGatherSkolemBounds implements Reporter
 	private int reducedElements = 0;
 	private int reducedAttributes = 0;	
 	private int reducedRelations = 0;	
+	private long cacheHits = 0;
+	private long cacheMisses = 0;
+	private long cacheEvictions = 0;
 	
 	@Override
 	public void detectedSymmetries(Set<IntSet> parts) {
@@ -69,6 +72,16 @@ public class MinReporterToGatherSkolemBounds implements Reporter
 	public void translatingToCNF(BooleanFormula circuit) {				
 	}
 	
+	/**
+	 * Called when a formula has been translated to a circuit, with the numbers of hits, misses and 
+	 * evictions of the caches of translations of shared nodes (see MinExtraOptions.setCircuitCacheBudget).
+	 */
+	public void translatedToBoolean(long cacheHits, long cacheMisses, long cacheEvictions) {
+		this.cacheHits = cacheHits;
+		this.cacheMisses = cacheMisses;
+		this.cacheEvictions = cacheEvictions;
+	}
+	
 	public void setIterations(int iterations){
 		this.iterations = iterations;
 	}
@@ -101,6 +114,18 @@ public class MinReporterToGatherSkolemBounds implements Reporter
 		return reducedRelations;
 	}	
 	
+	public long getCacheHits(){
+		return cacheHits;
+	}
+	
+	public long getCacheMisses(){
+		return cacheMisses;
+	}
+	
+	public long getCacheEvictions(){
+		return cacheEvictions;
+	}
+	
 	int getNumPrimaryVariables()
 	{
 		return primaryVars;
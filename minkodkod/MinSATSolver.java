@@ -21,20 +21,38 @@ package minkodkod;
  * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN
  * THE SOFTWARE.
  */
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
 import javax.swing.JOptionPane;
 
 import kodkod.engine.satlab.SATSolver;
+import kodkod.util.ints.ArrayIntVector;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
+import kodkod.util.ints.IntVector;
 
 import org.sat4j.core.VecInt;
+import org.sat4j.minisat.SolverFactory;
+import org.sat4j.minisat.core.ILits;
+import org.sat4j.minisat.core.Solver;
 import org.sat4j.specs.ContradictionException;
 import org.sat4j.specs.IConstr;
 import org.sat4j.specs.ISolver;
+import org.sat4j.specs.ISolverService;
 import org.sat4j.specs.IVecInt;
 import org.sat4j.specs.IteratorInt;
+import org.sat4j.tools.SearchListenerAdapter;
 
 /**
  * Implementor of Kodkod's SATSolver interface. Used as a wrapper atop SAT4J, 
@@ -46,15 +64,69 @@ public final class MinSATSolver implements SATSolver {
 	private ISolver solver;
 	private final ReadOnlyIVecInt wrapper;
 	private Boolean sat; 
+	/** 
+	 * Set once a clause added via addClause(..) or addClauses(..) contradicts the clauses before it.
+	 * SAT4J does not keep such a clause, so every later call to solve(..) returns false without it.
+	 */
+	private boolean contradiction = false;
 	private int vars, clauses;
 	private int[] lastModel = null;
+	private final MinSATSolverFactory.PrimaryVariablesFirstOrder primaryOrder;
+	/** The factory that made this solver, which makes its copies (may be null). */
+	private final MinSATSolverFactory factory;
 	
-	// If toRemoveSBP is empty,
 	boolean sbpActive = true;
-	private Set<int[]> sbpClauses = new HashSet<int[]>();
-	private Set<IConstr> toRemoveSBP = new HashSet<IConstr>();
+	private Set<int[]> sbpClauses = new LinkedHashSet<int[]>(); // in the order they were added
 	private Set<Integer> sbpUnitClauses = new HashSet<Integer>();
 	
+	/**
+	 * Activation literal guarding every (non-unit) SBP clause, or 0 if there are none yet.
+	 * The SBP clauses are added to the solver once, as (-sbpGuard | lits), and never removed:
+	 * getAssumptions(..) assumes sbpGuard while the SBP is active and -sbpGuard otherwise.
+	 */
+	private int sbpGuard = 0;
+	
+	/**
+	 * The clauses added via addClause(..) and addClauses(..), i.e., the CNF of the formula, or null 
+	 * if recordFormula() was not called. Used by copyOfFormula(), formulaClauses(), writeDimacs(..) 
+	 * and variableOccurrences().
+	 */
+	private MinClauseBuffer formula = null;
+	
+	/**
+	 * Set by interrupt() to stop the current SAT call, and every later one until clearInterrupt().
+	 */
+	private volatile boolean interrupted = false;
+	
+	/**
+	 * The clauses added via addGuardedConstraint(lit, ..), by activation literal, until retireActivationLiteral(lit)
+	 * removes them. Clauses that SAT4J reduced to a unit are not kept, since they cannot be removed.
+	 */
+	private final Map<Integer, List<IConstr>> guardedConstraints = new HashMap<Integer, List<IConstr>>();
+	
+	/**
+	 * Activation literals retired by retireActivationLiteral(..) that newActivationLiteral() hands out again:
+	 * no clause of the solver has them any more, and the solver has not fixed them at the root level.
+	 */
+	private final IntVector freeActivationLiterals = new ArrayIntVector();
+	
+	/** The number of variables allocated by newActivationLiteral(), the SBP guard included. */
+	private int activationLiterals = 0;
+	
+	/** The number of times activateSBP() or deactivateSBP() switched the SBP on or off. */
+	private long sbpToggles = 0;
+	
+	/** The number of primary variables, as told by setNumPrimaryVariables(..). */
+	private int primaryVariables = 0;
+	
+	/**
+	 * The variables made true by the unit clauses added via addClause(..). SAT4J fixes them once 
+	 * and for all, so a clause whose other literals are false is reduced to a unit, and fixed, too.
+	 * Used by isTrueUnit(..) if the underlying solver is not a SAT4J Solver, whose own root-level
+	 * assignment is asked otherwise.
+	 */
+	private final IntSet trueUnits = new IntTreeSet();
+	
 	public int internalNumConstraints()
 	{
 		return solver.nConstraints();
@@ -85,61 +157,54 @@ public final class MinSATSolver implements SATSolver {
 	}
 		
 	/**
-	 * Call to augment the solver's clause set with the SBP clauses.
+	 * Call to enforce the SBP clauses in the next calls to solve(..).
 	 * No effect (returns false) if SBP is already included.
+	 * The clauses stay in the solver; only the assumption on their guard changes.
 	 * @return
 	 */
 	public boolean activateSBP() 
 	{
 		if(sbpActive) return false;
-				
-		for(int[] lits : sbpClauses)
-		{
-			try {
-				// Unit clauses should have been moved to sbpUnitClauses already,
-				// so safe to do this without checking for UnitClause
-				IConstr toRemove = solver.addClause(wrapper.wrap(lits));
-				//JOptionPane.showMessageDialog(null, toRemove);
-				if(toRemove != null) 
-				{					
-					toRemoveSBP.add(toRemove);
-				}
-			} catch (ContradictionException e) {				
-				sat = Boolean.FALSE;		
-				JOptionPane.showMessageDialog(null, "CONTRADICTION EXCEPTION in activateSBP");
-			}
-		}
-		
-		//JOptionPane.showMessageDialog(null, "asbp:"+solver.nConstraints());
 		sbpActive = true;	
+		sbpToggles++;
 		return true;
 	}
 	
 	/**
-	 * Call to *remove* SBP clauses from the solver.
+	 * Call to stop enforcing the SBP clauses in the next calls to solve(..).
 	 * No effect (returns false) if SBP is not included already.
+	 * The clauses stay in the solver; only the assumption on their guard changes.
+	 * (Removing them would also make SAT4J throw away all of its learnt clauses.)
 	 * @return
 	 */
 	public boolean deactivateSBP()
 	{
 		if(!sbpActive) return false;
-		
-		// The current implementation of sat4j does not handle REMOVING unit clauses; it forces
-		// the use of assumptions. So we need the separate assumptions list above.
-		for(IConstr toRemove : toRemoveSBP)
-		{					
-			// Expect no UnitClauses here
-			solver.removeConstr(toRemove);
-		}
-		
-		// s/b same size
-		//JOptionPane.showMessageDialog(null, "dsbp:"+(foo-solver.nConstraints())+"; "+toRemoveSBP.size());
-		
-		toRemoveSBP.clear();
 		sbpActive = false;
+		sbpToggles++;
 		return true;
 	}
 	
+	/**
+	 * Returns the number of times the SBP was switched on or off by activateSBP() and deactivateSBP().
+	 * @return the number of SBP toggles so far.
+	 */
+	public long sbpToggles()
+	{
+		return sbpToggles;
+	}
+	
+	/**
+	 * Returns the number of clauses learned by the SAT solver so far, as reported by its statistics
+	 * (0 if it reports none).
+	 * @return the number of learned clauses so far.
+	 */
+	public long learnedClauses()
+	{
+		final Number learned = solver.getStat().get("learnedclauses");
+		return (learned == null) ? 0 : learned.longValue();
+	}
+	
 	/** Fills lastModel from solver.model(). We have to do this because sometimes,
 	 * the solver drops some indices.
 	 */
@@ -171,12 +236,76 @@ public final class MinSATSolver implements SATSolver {
 	 * @throws NullPointerException - solver = null
 	 */
 	MinSATSolver(ISolver solver) {
+		this(solver, null, null);
+	}
+	
+	/**
+	 * Constructs a wrapper for the given instance of ISolver, made by the given factory,
+	 * whose variable order has been replaced with primaryOrder (both may be null).
+	 * @throws NullPointerException - solver = null
+	 */
+	MinSATSolver(ISolver solver, MinSATSolverFactory.PrimaryVariablesFirstOrder primaryOrder, MinSATSolverFactory factory) {
 		if (solver==null)
 			throw new NullPointerException("solver");
 		this.solver = solver;
+		this.primaryOrder = primaryOrder;
+		this.factory = factory;
 		this.wrapper = new ReadOnlyIVecInt();
 		this.sat = null;
 		this.vars = this.clauses = 0;
+		// interrupt() only sets a flag: the solving thread itself expires the timeout when its 
+		// search loop sees it. (expireTimeout() cancels the timer of SAT4J, which fails the call
+		// if another thread does it while the call starts, and a new call restarts the timeout.)
+		solver.setSearchListener(new SearchListenerAdapter<ISolverService>() {
+			private static final long serialVersionUID = 1L;
+			public void beginLoop() {
+				if(interrupted)
+					MinSATSolver.this.solver.expireTimeout();
+			}
+		});
+	}
+	
+	/**
+	 * Tells the solver which variables are primary: 1..numPrimaryVariables.
+	 * Only has an effect if the solver was configured by its factory to 
+	 * branch on primary variables first.
+	 */
+	public void setNumPrimaryVariables(int numPrimaryVariables) {
+		primaryVariables = numPrimaryVariables;
+		if(primaryOrder != null)
+			primaryOrder.setNumPrimaryVariables(numPrimaryVariables);
+	}
+
+	/**
+	 * Makes this solver keep the clauses of the formula, i.e. the clauses added from now on via 
+	 * addClause(..) and addClauses(..), so that copyOfFormula(), formulaClauses(), writeDimacs(..) 
+	 * and variableOccurrences() can be called. Their translator calls it for the solvers that may 
+	 * be copied; the others do not keep a second copy of their CNF.
+	 * @throws IllegalStateException - clauses were added to this solver already
+	 */
+	public void recordFormula() {
+		if (clauses > 0)
+			throw new IllegalStateException("clauses were added before recordFormula()");
+		if (formula == null)
+			formula = new MinClauseBuffer();
+	}
+	
+	/**
+	 * Returns true if this solver keeps the clauses of its formula (see recordFormula()).
+	 * @return true if recordFormula() was called
+	 */
+	public boolean recordsFormula() {
+		return formula != null;
+	}
+	
+	/**
+	 * Returns this.formula.
+	 * @throws IllegalStateException - recordFormula() was not called
+	 */
+	private MinClauseBuffer formula() {
+		if (formula == null)
+			throw new IllegalStateException("the clauses of the formula are not recorded; see recordFormula()");
+		return formula;
 	}
 
 	/**
@@ -216,6 +345,10 @@ public final class MinSATSolver implements SATSolver {
 		try {
 			//if (!Boolean.FALSE.equals(sat)) {
 				clauses++;
+				if(formula != null)
+					formula.add(lits);
+				if(lits.length == 1 && lits[0] > 0)
+					trueUnits.add(lits[0]);
 				solver.addClause(wrapper.wrap(lits));
 				//JOptionPane.showMessageDialog(null,Arrays.toString(lits));
 //				for(int lit : lits) {
@@ -227,11 +360,156 @@ public final class MinSATSolver implements SATSolver {
 			
 		} catch (ContradictionException e) {
 			sat = Boolean.FALSE;
-			JOptionPane.showMessageDialog(null, "CONTRADICTION EXCEPTION in addClause");
+			contradiction = true;
 		}
 		return false;
 	}
 	
+	/**
+	 * Adds the clauses of the given buffer, in their order, as addClause(..) would add them one
+	 * by one, but without copying them out of the buffer first. If a clause makes the CNF 
+	 * unsatisfiable, the rest are still added, and every later call to solve(..) returns false;
+	 * the caller reports it as any other unsatisfiable formula.
+	 * @return false if a clause made the CNF unsatisfiable, as addClause(..) 
+	 * @see kodkod.engine.satlab.SATSolver#addClause(int[])
+	 */
+	public boolean addClauses(MinClauseBuffer buffer) {
+		final int[] arena = buffer.arena();
+		boolean result = true;
+		if(formula != null)
+			formula.addAll(buffer);
+		for(int i = 0; i < buffer.size(); i++) {
+			final int start = buffer.start(i), end = buffer.end(i);
+			try {
+				clauses++;
+				if(end - start == 1 && arena[start] > 0)
+					trueUnits.add(arena[start]);
+				solver.addClause(wrapper.wrap(arena, start, end));
+			} catch (ContradictionException e) {
+				sat = Boolean.FALSE;
+				contradiction = true;
+				result = false;
+			}
+		}
+		return result;
+	}
+	
+	/**
+	 * Adds the clauses of the given buffer as SBP clauses, in their order, via addSBPClause(..).
+	 * @return false if a clause made the CNF unsatisfiable, as addSBPClause(..)
+	 */
+	public boolean addSBPClauses(MinClauseBuffer buffer) {
+		final int[] arena = buffer.arena();
+		boolean result = true;
+		for(int i = 0; i < buffer.size(); i++)
+			result &= addSBPClause(Arrays.copyOfRange(arena, buffer.start(i), buffer.end(i)));
+		return result;
+	}
+	
+	/**
+	 * Returns a new solver, over a fresh SAT4J instance, with the variables of this solver
+	 * and the clauses added to it via addClause(..). The SBP clauses, the constraints and the 
+	 * guarded clauses are not copied. The copy can be used by another thread than this solver.
+	 * @return a new solver with the CNF of the formula
+	 * @throws IllegalStateException - !this.recordsFormula()
+	 */
+	public MinSATSolver copyOfFormula() {
+		return copyOfFormula(false);
+	}
+	
+	/**
+	 * Returns a new solver, over a fresh SAT4J instance, with the variables of this solver
+	 * and the clauses added to it via addClause(..), plus its SBP clauses if withSBP is set
+	 * (active, under a guard of the copy). The constraints and the guarded clauses are not copied. 
+	 * The copy is made by the factory of this solver, if any, so it is configured as this solver 
+	 * (e.g., it branches on primary variables first if this solver does). The copy can be used 
+	 * by another thread than this solver.
+	 * @return a new solver with the CNF of the formula, and its SBP if withSBP is set
+	 * @throws IllegalStateException - !this.recordsFormula()
+	 */
+	public MinSATSolver copyOfFormula(boolean withSBP) {
+		final MinClauseBuffer formula = formula();
+		final MinSATSolver copy = (factory == null) ? 
+				new MinSATSolver(SolverFactory.instance().defaultSolver()) : (MinSATSolver) factory.instance();
+		copy.setNumPrimaryVariables(primaryVariables);
+		copy.addVariables(vars);
+		copy.addClauses(formula);
+		if(withSBP) {
+			for(int[] lits : sbpClauses)
+				copy.addSBPClause(lits);
+			for(Integer unit : sbpUnitClauses)
+				copy.addSBPClause(new int[] {unit});
+		}
+		return copy;
+	}
+	
+	/**
+	 * Returns the number of variables of the formula and of its SBP, i.e. of the variables that
+	 * are not activation literals. A solver with the same CNF gets the same variables by
+	 * addVariables(numberOfFormulaVariables()), then the clauses, then the SBP clauses.
+	 * @return the number of variables that are not activation literals
+	 */
+	public int numberOfFormulaVariables() {
+		return vars - activationLiterals;
+	}
+	
+	/**
+	 * Returns the clauses added via addClause(..), in the order they were added, as
+	 * consecutive runs of a clause length followed by that many literals.
+	 * @return the CNF of the formula, encoded as runs of a length and literals
+	 * @throws IllegalStateException - !this.recordsFormula()
+	 */
+	public int[] formulaClauses() {
+		return formula().toArray();
+	}
+	
+	/**
+	 * Writes the clauses added via addClause(..) and addClauses(..) to the given writer in DIMACS
+	 * format, over numberOfFormulaVariables() variables. The SBP clauses are not written. 
+	 * The writer is not flushed or closed.
+	 * @throws IOException - the writer throws it
+	 * @throws IllegalStateException - !this.recordsFormula()
+	 */
+	public void writeDimacs(Writer out) throws IOException {
+		formula().writeDimacs(out, numberOfFormulaVariables());
+	}
+	
+	/**
+	 * Returns the SBP clauses added via addSBPClause(..), in the order they were added and
+	 * followed by the unit clauses, as consecutive runs of a clause length followed by that 
+	 * many literals. The clauses can be added to another solver, after its variables and 
+	 * formula, via addSBPClause(..).
+	 * @return the SBP clauses, encoded as runs of a length and literals
+	 */
+	public int[] sbpClauses() {
+		final IntVector result = new ArrayIntVector();
+		for(int[] lits : sbpClauses) {
+			result.add(lits.length);
+			for(int lit : lits)
+				result.add(lit);
+		}
+		for(Integer unit : sbpUnitClauses) {
+			result.add(1);
+			result.add(unit);
+		}
+		return result.toArray();
+	}
+	
+	/**
+	 * Returns the number of occurrences of every variable in the clauses added via addClause(..):
+	 * result[v] is the number of literals v or -v in those clauses, for v in 1..numberOfVariables().
+	 * @return the occurrence count of every variable in the CNF of the formula
+	 * @throws IllegalStateException - !this.recordsFormula()
+	 */
+	public int[] variableOccurrences() {
+		final MinClauseBuffer formula = formula();
+		final int[] result = new int[vars + 1];
+		final int[] arena = formula.arena();
+		for(int i = 0; i < formula.literals(); i++)
+			result[StrictMath.abs(arena[i])]++;
+		return result;
+	}
+	
 	static boolean isTautology(int[] lits)
 	{			
 		Set<Integer> litsSet = new HashSet<Integer>(lits.length);
@@ -261,16 +539,18 @@ public final class MinSATSolver implements SATSolver {
 				if(sbpClauses.contains(lits))					
 					return true;
 				
-				IConstr toRemove = solver.addClause(wrapper.wrap(lits));
+				// The guard comes after every variable of the SBP circuit: MinBool2CNFTranslator
+				// allocates those before adding any of its clauses.
+				if(sbpGuard == 0)
+					sbpGuard = newActivationLiteral();
+				
+				int[] guarded = new int[lits.length + 1];
+				guarded[0] = -sbpGuard;
+				System.arraycopy(lits, 0, guarded, 1, lits.length);
+				solver.addClause(wrapper.wrap(guarded));
 			
 				// DO NOT store wrapper.wrap(lits); it's in a read only field that is re-used. 
 				sbpClauses.add(lits.clone());
-			
-				if(toRemove != null)
-				{
-					//JOptionPane.showMessageDialog(null, "toRemove="+toRemove);
-					toRemoveSBP.add(toRemove);
-				}			
 			}
 						
 			return true;			
@@ -293,6 +573,67 @@ public final class MinSATSolver implements SATSolver {
 		return temp;
 	}	
 	
+	/**
+	 * Allocates a variable to be used as an activation literal. A clause
+	 * added via addGuardedConstraint(lit, ...) is only enforced while lit is
+	 * passed to solve(..) as an assumption. The variable of a retired literal is
+	 * used again if it can be, so that retiring and allocating literals over and 
+	 * over does not make every SAT call slower.
+	 * @return the new activation literal
+	 */
+	public int newActivationLiteral() {
+		if(!freeActivationLiterals.isEmpty())
+			return freeActivationLiterals.removeAt(freeActivationLiterals.size() - 1);
+		addVariables(1);
+		activationLiterals++;
+		return vars;
+	}
+
+	/**
+	 * Adds the clause (-activationLit | lits) to the solver. The clause is not counted
+	 * in numberOfClauses(), since it is not part of the CNF of the formula.
+	 * @param activationLit a literal returned by newActivationLiteral()
+	 * @param lits the literals
+	 * @return the constraint
+	 * @throws ContradictionException
+	 */
+	public IConstr addGuardedConstraint(int activationLit, int[] lits) throws ContradictionException {
+		int[] guarded = new int[lits.length + 1];
+		guarded[0] = -activationLit;
+		System.arraycopy(lits, 0, guarded, 1, lits.length);
+		final IConstr constr = solver.addClause(wrapper.wrap(guarded));
+		if(constr != null && constr.size() > 1) {
+			List<IConstr> constrs = guardedConstraints.get(activationLit);
+			if(constrs == null) {
+				constrs = new ArrayList<IConstr>();
+				guardedConstraints.put(activationLit, constrs);
+			}
+			constrs.add(constr);
+		}
+		return constr;
+	}
+
+	/**
+	 * Permanently disables the clauses guarded by the given activation literal, by removing
+	 * them from the solver. The literal must not be passed to solve(..) afterwards.
+	 * Every removal makes SAT4J throw away its learnt clauses, so the clauses of a literal 
+	 * are removed once, when it is retired, while the literals that are merely not in use
+	 * are assumed false instead.
+	 * @param activationLit a literal returned by newActivationLiteral()
+	 * @requires no SAT call is in progress
+	 */
+	public void retireActivationLiteral(int activationLit) {
+		final List<IConstr> constrs = guardedConstraints.remove(activationLit);
+		if(constrs != null) {
+			for(IConstr constr : constrs)
+				solver.removeConstr(constr);
+		}
+		// SAT4J drops its learnt clauses on every removal, so no clause has the literal any more, 
+		// unless it was reduced to a unit, and fixed.
+		if(solver instanceof Solver<?> && !isFixed(activationLit))
+			freeActivationLiterals.add(activationLit);
+	}
+
 	/**
 	 * Removes a constraint from the underlying SATSolver.
 	 * @param constraint the constraint
@@ -304,21 +645,25 @@ public final class MinSATSolver implements SATSolver {
 	}
 	
 	/**
-	 * Returns the assumptions given plus SBP assumptions if SBP is active
+	 * Returns the assumptions given plus SBP assumptions: the SBP guard and unit clauses
+	 * if SBP is active, and the negated SBP guard otherwise.
 	 * @param assumptions
 	 * @return
 	 */
 	IVecInt getAssumptions(int[] assumptions)
 	{
+		final int guards = (sbpGuard == 0) ? 0 : 1;
 		if(sbpActive)
 		{
-			int[] together = new int[assumptions.length+sbpUnitClauses.size()];
+			int[] together = new int[assumptions.length+guards+sbpUnitClauses.size()];
 			for(int ii=0;ii<assumptions.length;ii++)
 				together[ii] = assumptions[ii];
-			int ii = 0;
+			int ii = assumptions.length;
+			if(sbpGuard != 0)
+				together[ii++] = sbpGuard;
 			for(Integer unit : sbpUnitClauses)
 			{
-				together[ii+assumptions.length] = unit;
+				together[ii] = unit;
 				ii++;
 			}
 							
@@ -329,7 +674,11 @@ public final class MinSATSolver implements SATSolver {
 		else
 		{
 			//JOptionPane.showMessageDialog(null, "assumptions (-sbp):"+Arrays.toString(assumptions));
-			return new VecInt(assumptions);
+			if(sbpGuard == 0)
+				return new VecInt(assumptions);
+			int[] together = Arrays.copyOf(assumptions, assumptions.length+1);
+			together[assumptions.length] = -sbpGuard;
+			return new VecInt(together);
 		}
 	}
 	
@@ -338,9 +687,24 @@ public final class MinSATSolver implements SATSolver {
 	 * @see kodkod.engine.satlab.SATSolver#solve()
 	 */
 	public boolean solve(boolean saveModel) {
+		return solve(saveModel, MinFlightRecorder.Purpose.FIND);
+	}
+	
+	/**
+	 * Solves as solve(saveModel), recording the call with the given purpose in the flight recorder.
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve(boolean saveModel, MinFlightRecorder.Purpose purpose) {
 		try {
+			checkInterrupt();
+			if(contradiction) {
+				sat = Boolean.FALSE;
+				return false;
+			}
 			//if (!Boolean.FALSE.equals(sat)){
+				final MinFlightRecorder.Event event = MinFlightRecorder.solve(purpose);
 				sat = Boolean.valueOf(solver.isSatisfiable(getAssumptions(new int[] {})));
+				event.solved(primaryVariables, vars, clauses, 0, sat);
 				if(sat && saveModel)
 					setLastModel();
 				
@@ -348,7 +712,7 @@ public final class MinSATSolver implements SATSolver {
 			//}
 			return sat;
 		} catch (org.sat4j.specs.TimeoutException e) {
-			throw new RuntimeException("timed out");
+			throw new MinTimeoutException(interrupted ? "interrupted" : "timed out", e);
 		} 
 	}
 	
@@ -356,10 +720,18 @@ public final class MinSATSolver implements SATSolver {
 	{
 		return solve(true);
 	}
+	public boolean solve(MinFlightRecorder.Purpose purpose)
+	{
+		return solve(true, purpose);
+	}
 	public boolean solve(int[] assumptions)
 	{
 		return solve(assumptions, true);
 	}
+	public boolean solve(int[] assumptions, MinFlightRecorder.Purpose purpose)
+	{
+		return solve(assumptions, true, purpose);
+	}
 	
 	/**
 	 * {@inheritDoc}
@@ -367,8 +739,24 @@ public final class MinSATSolver implements SATSolver {
 	 * @see kodkod.engine.satlab.SATSolver#solve()
 	 */
 	public boolean solve(int[] assumptions, boolean saveModel) {
+		return solve(assumptions, saveModel, MinFlightRecorder.Purpose.FIND);
+	}
+	
+	/**
+	 * Solves as solve(assumptions, saveModel), recording the call with the given purpose in the flight recorder.
+	 * @param assumptions additional assumptions for the SATSolver
+	 * @see kodkod.engine.satlab.SATSolver#solve()
+	 */
+	public boolean solve(int[] assumptions, boolean saveModel, MinFlightRecorder.Purpose purpose) {
 		try {			
+			checkInterrupt();
+			if(contradiction) {
+				sat = Boolean.FALSE;
+				return false;
+			}
+			final MinFlightRecorder.Event event = MinFlightRecorder.solve(purpose);
 			sat = Boolean.valueOf(solver.isSatisfiable(getAssumptions(assumptions)));
+			event.solved(primaryVariables, vars, clauses, assumptions.length, sat);
 				
 			/*org.sat4j.minisat.core.Solver aSolver = (org.sat4j.minisat.core.Solver) solver;
 			String s = "";
@@ -433,10 +821,95 @@ public final class MinSATSolver implements SATSolver {
 			return sat;
 			
 		} catch (org.sat4j.specs.TimeoutException e) {
-			throw new RuntimeException("timed out");
+			throw new MinTimeoutException(interrupted ? "interrupted" : "timed out", e);
 		} 
 	}	
 
+	/**
+	 * Stops the SAT call in progress, if any, and makes every later call to solve(..) 
+	 * throw a MinTimeoutException until clearInterrupt() is called. Can be called from 
+	 * any thread.
+	 * @effects the current and later calls to solve(..) throw a MinTimeoutException
+	 */
+	public void interrupt() {
+		interrupted = true;
+	}
+	
+	/**
+	 * Lets solve(..) run again after interrupt().
+	 */
+	public void clearInterrupt() {
+		interrupted = false;
+	}
+	
+	/**
+	 * Returns true if interrupt() was called since the last clearInterrupt().
+	 * @return true if solve(..) is interrupted
+	 */
+	public boolean isInterrupted() {
+		return interrupted;
+	}
+	
+	/**
+	 * Throws a MinTimeoutException if interrupt() was called since the last clearInterrupt(),
+	 * so that a call does not start while interrupted; a call in progress is stopped by its search 
+	 * listener (see the constructor).
+	 */
+	private void checkInterrupt() {
+		if(interrupted)
+			throw new MinTimeoutException("interrupted");
+	}
+
+	/**
+	 * The field in which a SAT4J Solver keeps the explanation of its last unsatisfiable call, or null 
+	 * if it cannot be read. SAT4J 2.3.2 leaves it null when the clauses are unsatisfiable without the
+	 * assumptions, and its unsatExplanation() then throws a NullPointerException instead of returning null.
+	 */
+	private static final Field SAT4J_EXPLANATION = sat4jExplanationField();
+	
+	private static Field sat4jExplanationField() {
+		try {
+			final Field field = Solver.class.getDeclaredField("unsatExplanationInTermsOfAssumptions");
+			field.setAccessible(true);
+			return field;
+		} catch (NoSuchFieldException e) {
+			return null;
+		} catch (SecurityException e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns false if the underlying solver is known to have no explanation of its last call
+	 * (see SAT4J_EXPLANATION); otherwise, true.
+	 */
+	private boolean hasUnsatExplanation() {
+		if(SAT4J_EXPLANATION == null || !(solver instanceof Solver<?>))
+			return true;
+		try {
+			return SAT4J_EXPLANATION.get(solver) != null;
+		} catch (IllegalAccessException e) {
+			return true;
+		}
+	}
+
+	/**
+	 * Returns the assumptions that made the last call to solve(..) fail, as computed by
+	 * the underlying solver, or null if it has none (e.g., if the formula is unsatisfiable
+	 * without any assumptions). The result may include the SBP assumptions.
+	 * @return a subset of the last assumptions that is unsatisfiable with the clauses, or null
+	 */
+	public int[] unsatExplanation() {
+		if(!Boolean.FALSE.equals(sat) || contradiction || !hasUnsatExplanation())
+			return null;
+		final IVecInt explanation = solver.unsatExplanation();
+		if(explanation == null)
+			return null;
+		final int[] result = new int[explanation.size()];
+		explanation.copyTo(result);
+		return result;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.SATSolver#valueOf(int)
@@ -461,6 +934,34 @@ public final class MinSATSolver implements SATSolver {
 		return (lastModel[variable - 1] > 0) ? true: false;
 	}	
 	
+	/**
+	 * Returns true if the given variable is true in every model because the underlying solver 
+	 * fixed it at the root level: by a unit clause added via addClause(..), by a clause that it
+	 * reduced to a unit, or by propagating those. Such a variable can never be dropped from a model, 
+	 * and SAT4J removes it from the clauses added later. If the underlying solver is not a SAT4J 
+	 * Solver, only the unit clauses added via addClause(..) are known.
+	 * @requires no SAT call is in progress
+	 * @return true if the given variable is fixed to true at the root level of the solver.
+	 */
+	public boolean isTrueUnit(int variable) {
+		if(!(solver instanceof Solver<?>))
+			return trueUnits.contains(variable);
+		final Solver<?> cdcl = (Solver<?>) solver;
+		final ILits voc = cdcl.getVocabulary();
+		final int lit = voc.getFromPool(variable);
+		return voc.isSatisfied(lit) && voc.getLevel(lit) == 0;
+	}
+	
+	/**
+	 * Returns true if the underlying SAT4J Solver assigned the given variable at the root level.
+	 * @requires this.solver is a SAT4J Solver and no SAT call is in progress
+	 */
+	private boolean isFixed(int variable) {
+		final ILits voc = ((Solver<?>) solver).getVocabulary();
+		final int lit = voc.getFromPool(variable);
+		return !voc.isUnassigned(lit) && voc.getLevel(lit) == 0;
+	}
+	
 	/**
 	 * {@inheritDoc}
 	 * @see kodkod.engine.satlab.SATSolver#free()
@@ -478,18 +979,30 @@ public final class MinSATSolver implements SATSolver {
 	private static final class ReadOnlyIVecInt implements IVecInt {
 		private static final long serialVersionUID = 1L;
 		private int[] vec;
+		/** The wrapped elements are vec[from..to). */
+		private int from, to;
 		
 		/**
 		 * Sets this.vec to the given vector
 		 * and returns this.
 		 */
 		IVecInt wrap(int[] vec) {
+			return wrap(vec, 0, vec.length);
+		}
+		
+		/**
+		 * Sets this.vec to the elements vec[from..to)
+		 * of the given vector and returns this.
+		 */
+		IVecInt wrap(int[] vec, int from, int to) {
 			this.vec = vec;
+			this.from = from;
+			this.to = to;
 			return this;
 		}
 		
 		public int size() {
-			return vec.length;
+			return to - from;
 		}
 
 		public boolean isEmpty() {
@@ -525,7 +1038,7 @@ public final class MinSATSolver implements SATSolver {
 		}
 
 		public int unsafeGet(int arg0) {
-			return vec[arg0];
+			return vec[from + arg0];
 		}
 
 		public void clear() {
@@ -533,13 +1046,13 @@ public final class MinSATSolver implements SATSolver {
 		}
 
 		public int last() {
-			return vec[vec.length - 1];
+			return vec[to - 1];
 		}
 
 		public int get(int arg0) {
-			if (arg0 < 0 || arg0 >= vec.length)
+			if (arg0 < 0 || arg0 >= size())
 				throw new IndexOutOfBoundsException("arg0: " + arg0);
-			return vec[arg0];
+			return vec[from + arg0];
 		}
 
 		public void set(int arg0, int arg1) {
@@ -547,23 +1060,23 @@ public final class MinSATSolver implements SATSolver {
 		}
 
 		public boolean contains(int arg0) {
-			for(int i : vec) {
-				if (i==arg0) return true;
+			for(int i = from; i < to; i++) {
+				if (vec[i]==arg0) return true;
 			}
 			return false;
 		}
 
 		public void copyTo(IVecInt arg0) {
 			int argLength = arg0.size();
-			arg0.ensure(argLength + vec.length);
-			for(int i : vec) {
-				arg0.set(argLength++, i);
+			arg0.ensure(argLength + size());
+			for(int i = from; i < to; i++) {
+				arg0.set(argLength++, vec[i]);
 			}
 		}
 
 		public void copyTo(int[] arg0) {
-			assert arg0.length >= vec.length;
-			System.arraycopy(vec,0, arg0, 0, vec.length);
+			assert arg0.length >= size();
+			System.arraycopy(vec, from, arg0, 0, size());
 		}
 
 		public void moveTo(IVecInt arg0) {
@@ -604,9 +1117,9 @@ public final class MinSATSolver implements SATSolver {
 
 		public IteratorInt iterator() {
 			return new IteratorInt() {
-				int cursor = 0;
+				int cursor = from;
 				public boolean hasNext() {
-					return cursor < vec.length;
+					return cursor < to;
 				}
 				public int next() {
 					if (!hasNext()) 
@@ -617,12 +1130,12 @@ public final class MinSATSolver implements SATSolver {
 		}
 
 		public int containsAt(int e) {
-			for(int n=vec.length, i=0; i<n; i++) if (vec[i]==e) return i;
+			for(int n=size(), i=0; i<n; i++) if (vec[this.from+i]==e) return i;
 			return -1;
 		}
 
 		public int containsAt(int e, int from) {
-			if (from<vec.length) for(int n=vec.length, i=from+1; i<n; i++) if (vec[i]==e) return i;
+			if (from<size()) for(int n=size(), i=from+1; i<n; i++) if (vec[this.from+i]==e) return i;
 			return -1;
 		}
 		
@@ -3,26 +3,49 @@ package minkodkod;
 import kodkod.engine.satlab.SATFactory;
 import kodkod.engine.satlab.SATSolver;
 
+import org.sat4j.core.LiteralsUtils;
 import org.sat4j.minisat.SolverFactory;
+import org.sat4j.minisat.core.IPhaseSelectionStrategy;
+import org.sat4j.minisat.core.Solver;
+import org.sat4j.minisat.orders.VarOrderHeap;
+import org.sat4j.specs.ISolver;
 
 /**
- * Factory to produce MinSATSolver instances. 
+ * Factory to produce MinSATSolver instances.
  */
 public class MinSATSolverFactory extends SATFactory
-{   
-	private MinReporterToGatherSkolemBounds theReporter; 
+{
+	private MinReporterToGatherSkolemBounds theReporter;
+
+	/** If set, the solvers branch on primary variables first, and assign them false first. */
+	private boolean negativePhaseOnPrimaryVariables = false;
 
 	public MinSATSolverFactory()
 	{
 		super();
 	}
-	
+
 	public MinSATSolverFactory(MinReporterToGatherSkolemBounds theReporter)
 	{
 		super();
 		this.theReporter = theReporter;
 	}
-	
+
+	/**
+	 * If set, the solvers produced by this factory decide on the primary variables
+	 * (1..numPrimaryVariables) before any other variable, and always try them false first.
+	 * The first model found is then usually close to minimal, which saves minimization rounds.
+	 */
+	public void setNegativePhaseOnPrimaryVariables(boolean negativePhaseOnPrimaryVariables)
+	{
+		this.negativePhaseOnPrimaryVariables = negativePhaseOnPrimaryVariables;
+	}
+
+	public boolean negativePhaseOnPrimaryVariables()
+	{
+		return negativePhaseOnPrimaryVariables;
+	}
+
     @Override
     public SATSolver instance()
     {
@@ -30,9 +53,99 @@ public class MinSATSolverFactory extends SATFactory
     	// (1) Which variables are primary (and thus subject to tampering to get minimal models);
     	// (2) Which relations are added for Skolemization.
     	// ... can also get at more information by modifying MyReporter.
-    	
-    	MinSATSolver result = new MinSATSolver(SolverFactory.instance().defaultSolver());
+
+    	ISolver sat4j = SolverFactory.instance().defaultSolver();
+    	MinSATSolver result;
+    	if(negativePhaseOnPrimaryVariables && sat4j instanceof Solver<?>)
+    	{
+    		Solver<?> cdcl = (Solver<?>)sat4j;
+    		PrimaryVariablesFirstOrder order = new PrimaryVariablesFirstOrder(cdcl.getOrder().getPhaseSelectionStrategy());
+    		cdcl.setOrder(order);
+    		result = new MinSATSolver(sat4j, order, this);
+    	}
+    	else
+    	{
+    		result = new MinSATSolver(sat4j, null, this);
+    	}
     	//TODO result.registerReporter(theReporter);
         return result;
     }
-}
\ No newline at end of file
+
+    /**
+     * A VSIDS variable order that starts every search with the primary variables on top of
+     * the heap, and assigns them false first. The remaining variables are handled as usual,
+     * using the phase selection strategy of the original order.
+     */
+    static final class PrimaryVariablesFirstOrder extends VarOrderHeap
+    {
+		private static final long serialVersionUID = 1L;
+
+		/** Initial activity of the primary variables; every other variable starts at 0. */
+		private static final double PRIMARY_ACTIVITY = 1.0;
+
+		private final NegativePrimaryPhase primaryPhase;
+
+    	PrimaryVariablesFirstOrder(IPhaseSelectionStrategy phaseStrategy)
+    	{
+    		this(new NegativePrimaryPhase(phaseStrategy));
+    	}
+
+    	private PrimaryVariablesFirstOrder(NegativePrimaryPhase primaryPhase)
+    	{
+    		super(primaryPhase);
+    		this.primaryPhase = primaryPhase;
+    	}
+
+    	/**
+    	 * Sets the number of primary variables; they are numbered 1..numPrimaryVariables.
+    	 */
+    	void setNumPrimaryVariables(int numPrimaryVariables)
+    	{
+    		primaryPhase.numPrimaryVariables = numPrimaryVariables;
+    	}
+
+    	@Override
+    	public void init()
+    	{
+    		super.init();
+
+    		final int last = StrictMath.min(primaryPhase.numPrimaryVariables, lits.nVars());
+    		for(int var = 1; var <= last; var++)
+    		{
+    			activity[var] = PRIMARY_ACTIVITY;
+    			if(heap.inHeap(var))
+    				heap.increase(var);
+    		}
+    	}
+    }
+
+    /**
+     * Phase selection strategy that chooses the negative literal of every primary variable,
+     * and delegates to the given strategy for the other variables.
+     */
+    private static final class NegativePrimaryPhase implements IPhaseSelectionStrategy
+    {
+		private static final long serialVersionUID = 1L;
+
+		private final IPhaseSelectionStrategy delegate;
+		private int numPrimaryVariables = 0;
+
+		NegativePrimaryPhase(IPhaseSelectionStrategy delegate)
+		{
+			this.delegate = delegate;
+		}
+
+		public int select(int var)
+		{
+			if(var <= numPrimaryVariables)
+				return LiteralsUtils.negLit(var);
+			return delegate.select(var);
+		}
+
+		public void updateVar(int p) { delegate.updateVar(p); }
+		public void init(int nlength) { delegate.init(nlength); }
+		public void init(int var, int p) { delegate.init(var, p); }
+		public void assignLiteral(int p) { delegate.assignLiteral(p); }
+		public void updateVarAtDecisionLevel(int q) { delegate.updateVarAtDecisionLevel(q); }
+    }
+}
@@ -75,14 +75,45 @@ public final class MinSolution{
 	/** Stores the propositional model for this solution. 
 	 * This field is going to be used for augmenting operations.*/ 
 	private final int[] propositionalModel;
+	
+	/** Builds this.instance from this.propositionalModel the first time it is asked for
+	 * (null if the instance is given when the solution is constructed). */
+	private InstanceBuilder instanceBuilder = null;
+
+	/**
+	 * Builds the instance of a solution from its propositional model.
+	 * See MinSolver.MinSolutionIterator.nextBatch(int).
+	 */
+	static interface InstanceBuilder {
+		Instance build(int[] propositionalModel);
+	}
 
 	/**
-	 * Returns the propositional model for this solution.
+	 * Returns the propositional model for this solution. For a solution returned 
+	 * by MinSolver.MinSolutionIterator.nextBatch(int), it only covers the primary variables.
 	 */
 	public int[] getPropositionalModel() {		
 		return propositionalModel;
 	}
 	
+	/** The consistent facts of this solution, once they have been computed (see
+	 * MinSolver.MinSolutionIterator.getConsistentFacts()). */
+	private int[] consistentFacts = null;
+	
+	/**
+	 * Returns the consistent facts of this solution, or null if they have not been computed yet.
+	 */
+	int[] consistentFacts() {
+		return consistentFacts;
+	}
+	
+	/**
+	 * Stores the consistent facts of this solution.
+	 */
+	void setConsistentFacts(int[] consistentFacts) {
+		this.consistentFacts = consistentFacts;
+	}
+	
 	/**
 	 * Constructs a Solution from the given values.
 	 * @requires outcome != null && stats != null
@@ -106,6 +137,17 @@ public final class MinSolution{
 		return new MinSolution(Outcome.SATISFIABLE, stats, instance, null, minimizationHistory, propositionalModel);
 	}
 	
+	/**
+	 * Returns a new Solution with a SATISFIABLE outcome, given stats and propositional model,
+	 * whose instance is built by the given builder when it is first asked for.
+	 * @return {s: Solution | s.outcome() = SATISFIABLE && s.stats() = stats && s.instance() = builder.build(propositionalModel) }
+	 */
+	static MinSolution satisfiable(MinStatistics stats, InstanceBuilder builder, MinimizationHistory minimizationHistory, int[] propositionalModel) {
+		final MinSolution solution = new MinSolution(Outcome.SATISFIABLE, stats, null, null, minimizationHistory, propositionalModel);
+		solution.instanceBuilder = builder;
+		return solution;
+	}
+	
 	/**
 	 * Returns a new Solution with a TRIVIALLY_SATISFIABLE outcome, given stats and instance.
 	 * @return {s: Solution | s.outcome() = TRIVIALLY_SATISFIABLE && s.stats() = stats && s.instance() = instance }
@@ -158,8 +200,21 @@ public final class MinSolution{
 	 * @return a satisfying instance for this.formula, if one exists.
 	 */
 	public Instance instance() {
+		if (instance == null && instanceBuilder != null) {
+			instance = instanceBuilder.build(propositionalModel);
+			instanceBuilder = null;
+		}
 		return instance;
 	}
+	
+	/**
+	 * Returns true if the outcome of this solution is SATISFIABLE or TRIVIALLY_SATISFIABLE,
+	 * without building its instance.
+	 * @return outcome() = SATISFIABLE || outcome() = TRIVIALLY_SATISFIABLE
+	 */
+	public boolean sat() {
+		return outcome == Outcome.SATISFIABLE || outcome == Outcome.TRIVIALLY_SATISFIABLE;
+	}
 
 	/**
 	 * Returns a proof of this.formula's unsatisfiability if the value 
@@ -193,7 +248,7 @@ public final class MinSolution{
 		b.append("---OUTCOME---\n");
 		b.append(outcome);
 		b.append("\n");
-		if (instance!=null) {
+		if (instance()!=null) {
 			b.append("\n---INSTANCE---\n");
 			b.append(instance);
 			b.append("\n");
@@ -237,7 +292,7 @@ public final class MinSolution{
 	 */
 	public void sanitizeToBounds(Bounds skolemBounds)
 	{
-		Instance newInstance = new Instance(instance.universe());		
+		Instance newInstance = new Instance(instance().universe());		
 		newInstance = IsomorphicSolutionBuilder.padInstance(newInstance, skolemBounds);
 		
 		// Should not need to use names, since it is assumed that this bounds 
@@ -0,0 +1,258 @@
+package minkodkod;
+
+import java.util.Timer;
+import java.util.TimerTask;
+
+import minkodkod.MinSolver.MinSolutionIterator;
+
+/**
+ * Publishes the minimal solutions of a MinSolutionIterator to a subscriber, solving only
+ * as many of them as the subscriber has asked for. The protocol is the one of Reactive Streams
+ * (and of java.util.concurrent.Flow, to which Subscriber and Subscription map one to one):
+ * the subscriber gets onSubscribe first, then at most as many onNext as it has requested,
+ * then either onComplete, once the iterator is out of minimal solutions, or onError.
+ *
+ * Solving is done on a daemon thread of the subscription, which waits while there is no demand.
+ * Cancelling the subscription interrupts the SAT call in progress. Two time budgets can be set,
+ * in milliseconds (0 means none): one for every solution, counted from the moment it is solved for,
+ * and one for the whole subscription. When a budget runs out, the SAT call in progress is
+ * interrupted and the subscriber gets onError with a MinTimeoutException. After that, or after
+ * a cancellation, the iterator must not be asked for further solutions.
+ *
+ * A publisher accepts one subscriber, since its iterator can only be consumed once;
+ * later subscribers get onError with an IllegalStateException.
+ */
+public final class MinSolutionPublisher {
+
+	/**
+	 * Receives the solutions of a publisher. The calls to a subscriber are never concurrent.
+	 */
+	public static interface Subscriber {
+		/**
+		 * Called first, with the subscription to request solutions from or to cancel.
+		 */
+		void onSubscribe(Subscription subscription);
+		/**
+		 * Called with the next satisfiable solution, only while there is demand.
+		 */
+		void onNext(MinSolution solution);
+		/**
+		 * Called once if solving failed or timed out (with a MinTimeoutException); no call follows.
+		 */
+		void onError(Throwable error);
+		/**
+		 * Called once when there are no solutions left; no call follows.
+		 */
+		void onComplete();
+	}
+
+	/**
+	 * The link between a publisher and its subscriber.
+	 */
+	public static interface Subscription {
+		/**
+		 * Asks for n more solutions. The demand is capped at Long.MAX_VALUE, which means no limit.
+		 * A non-positive n ends the subscription with an IllegalArgumentException.
+		 */
+		void request(long n);
+		/**
+		 * Stops publishing, interrupting the SAT call in progress. The subscriber may still
+		 * get a solution that was already found. Has no effect if the subscription is over;
+		 * in particular, it never leaves the solver of the iterator interrupted.
+		 */
+		void cancel();
+	}
+
+	private final MinSolutionIterator iterator;
+	private final long solutionTimeout, totalTimeout;
+	private boolean subscribed = false;
+
+	/**
+	 * Constructs a publisher of the solutions of the given iterator, with the given time budgets.
+	 * @requires solutionTimeout >= 0 && totalTimeout >= 0
+	 */
+	MinSolutionPublisher(MinSolutionIterator iterator, long solutionTimeout, long totalTimeout) {
+		this.iterator = iterator;
+		this.solutionTimeout = solutionTimeout;
+		this.totalTimeout = totalTimeout;
+	}
+
+	/**
+	 * Subscribes the given subscriber to the solutions of this publisher, and starts the
+	 * thread that solves for them as they are requested.
+	 * @throws NullPointerException - subscriber = null
+	 */
+	public void subscribe(Subscriber subscriber) {
+		if (subscriber == null)
+			throw new NullPointerException("subscriber");
+		synchronized (this) {
+			if (!subscribed) {
+				subscribed = true;
+				new Publication(subscriber).start();
+				return;
+			}
+		}
+		subscriber.onSubscribe(new Subscription() {
+			public void request(long n) {}
+			public void cancel() {}
+		});
+		subscriber.onError(new IllegalStateException("this publisher already has a subscriber"));
+	}
+
+	/**
+	 * The subscription of the subscriber of this publisher, and the task that solves for it.
+	 */
+	private final class Publication implements Subscription, Runnable {
+		private final Subscriber subscriber;
+		private final Timer timer = new Timer("minimal-models-timer", true);
+
+		// All guarded by this.
+		private long demand = 0;
+		private boolean cancelled = false;
+		private boolean timedOut = false;
+		private Throwable badRequest = null;
+		// Set once publishing is over and the interrupt of the solver is cleared.
+		private boolean done = false;
+
+		Publication(Subscriber subscriber) {
+			this.subscriber = subscriber;
+		}
+
+		/**
+		 * Starts solving for the subscriber on a new daemon thread.
+		 */
+		void start() {
+			final Thread thread = new Thread(this, "minimal-models-publisher");
+			thread.setDaemon(true);
+			thread.start();
+		}
+
+		public synchronized void request(long n) {
+			if (n <= 0) {
+				if (badRequest == null)
+					badRequest = new IllegalArgumentException("non-positive request: " + n);
+			} else
+				demand = (demand + n < 0) ? Long.MAX_VALUE : demand + n;
+			notifyAll();
+		}
+
+		public synchronized void cancel() {
+			if (cancelled || done) return;
+			cancelled = true;
+			notifyAll();
+			interruptSolver();
+		}
+
+		/**
+		 * Interrupts the SAT call of the iterator, if it has a solver yet.
+		 * Only called while holding the lock and before done is set, so that an interrupt 
+		 * never outlives the publication.
+		 */
+		private void interruptSolver() {
+			if (iterator.getTranslation() != null)
+				iterator.getTranslation().cnf().interrupt();
+		}
+
+		/**
+		 * Returns a task that ends the subscription with a timeout when it runs.
+		 */
+		private TimerTask timeout() {
+			return new TimerTask() {
+				public void run() {
+					synchronized (Publication.this) {
+						if (done) return;
+						timedOut = true;
+						Publication.this.notifyAll();
+						interruptSolver();
+					}
+				}
+			};
+		}
+
+		public void run() {
+			subscriber.onSubscribe(this);
+			if (totalTimeout > 0)
+				timer.schedule(timeout(), totalTimeout);
+			try {
+				publish();
+			} finally {
+				timer.cancel();
+				synchronized (this) {
+					done = true;
+					if (iterator.getTranslation() != null)
+						iterator.getTranslation().cnf().clearInterrupt();
+				}
+			}
+		}
+
+		/**
+		 * Waits for demand, and returns the error that ends the subscription, if any.
+		 * Returns null if there is demand, and the subscription itself if it is cancelled.
+		 */
+		private synchronized Object awaitDemand() {
+			while (demand == 0 && !cancelled && !timedOut && badRequest == null) {
+				try {
+					wait();
+				} catch (InterruptedException e) {
+					cancelled = true;
+				}
+			}
+			if (cancelled) return this;
+			if (badRequest != null) return badRequest;
+			if (timedOut) return new MinTimeoutException("time budget exceeded");
+			return null;
+		}
+
+		/**
+		 * Solves for the requested solutions and passes them on, until the iterator is out of
+		 * solutions or the subscription ends.
+		 */
+		private void publish() {
+			while (true) {
+				final Object end = awaitDemand();
+				if (end == this) return;
+				if (end != null) {
+					subscriber.onError((Throwable) end);
+					return;
+				}
+
+				MinSolution solution = null;
+				Throwable error = null;
+				final TimerTask solutionTimer = (solutionTimeout > 0) ? timeout() : null;
+				try {
+					if (solutionTimer != null)
+						timer.schedule(solutionTimer, solutionTimeout);
+					solution = iterator.next();
+				} catch (Throwable t) {
+					error = t;
+				} finally {
+					if (solutionTimer != null)
+						solutionTimer.cancel();
+				}
+
+				synchronized (this) {
+					if (cancelled) return;
+					// A solution found after its budget ran out is dropped too.
+					if (timedOut)
+						error = new MinTimeoutException("time budget exceeded", error);
+					if (error == null && solution.sat() && demand != Long.MAX_VALUE)
+						demand--;
+				}
+				if (error != null) {
+					subscriber.onError(error);
+					return;
+				}
+				if (!solution.sat()) {
+					subscriber.onComplete();
+					return;
+				}
+				subscriber.onNext(solution);
+				if (!iterator.hasNext()) {
+					// A trivially satisfiable formula has a single solution.
+					subscriber.onComplete();
+					return;
+				}
+			}
+		}
+	}
+}
@@ -22,19 +22,35 @@ package minkodkod;
  * THE SOFTWARE.
  */
 
+import java.io.File;
+import java.io.IOException;
 import java.util.AbstractMap.SimpleEntry;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.StringTokenizer;
+import java.util.WeakHashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.swing.JOptionPane;
 
@@ -55,6 +71,7 @@ import kodkod.instance.TupleFactory;
 import kodkod.instance.TupleSet;
 import kodkod.util.ints.IntIterator;
 import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
 
 
 /** 
@@ -76,6 +93,19 @@ public final class MinSolver {
 	
 	//The iterator that acquires the SAT solver.
 	private MinSolutionIterator activeIterator;
+	
+	//The guards of the iterators that have not been exhausted yet (see MinSolutionIterator.guard).
+	private final IntSet liveGuards = new IntTreeSet();
+	
+	//Copies of the solvers of translations, for computing consistent facts in parallel.
+	private final Map<MinTranslation, MinSATSolver[]> formulaCopies = new WeakHashMap<MinTranslation, MinSATSolver[]>();
+	
+	//What the consistent-fact searches on each translation have learned so far.
+	private final Map<MinTranslation, ConsistentFactEngine> consistentFactEngines = new WeakHashMap<MinTranslation, ConsistentFactEngine>();
+	
+	//The thread pool for computing consistent facts in parallel (null until needed).
+	private ExecutorService consistentFactsPool = null;
+	private int consistentFactsPoolSize = 0;
 
 	/**
 	 * Constructs a new Solver with the default options and extraOptions.
@@ -130,6 +160,54 @@ public final class MinSolver {
 	public MinExtraOptions extraOptions() {
 		return extraOptions;
 	}
+	
+	/**
+	 * Returns the given number of copies of the solver of the given translation, made
+	 * by MinSATSolver.copyOfFormula() the first time they are needed.
+	 */
+	private MinSATSolver[] formulaCopies(MinTranslation translation, int copies) {
+		MinSATSolver[] result = formulaCopies.get(translation);
+		final int existing = (result == null) ? 0 : result.length;
+		if(existing < copies) {
+			result = (result == null) ? new MinSATSolver[copies] : Arrays.copyOf(result, copies);
+			for(int i = existing; i < copies; i++)
+				result[i] = translation.cnf().copyOfFormula();
+			formulaCopies.put(translation, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns the consistent-fact engine of the given translation, creating it if needed.
+	 */
+	private ConsistentFactEngine consistentFactEngine(MinTranslation translation) {
+		ConsistentFactEngine result = consistentFactEngines.get(translation);
+		if(result == null) {
+			result = new ConsistentFactEngine(translation.numPrimaryVariables());
+			consistentFactEngines.put(translation, result);
+		}
+		return result;
+	}
+	
+	/**
+	 * Returns a pool of the given number of daemon threads for computing consistent facts.
+	 */
+	private ExecutorService consistentFactsPool(int threads) {
+		if(consistentFactsPool == null || consistentFactsPoolSize != threads) {
+			if(consistentFactsPool != null)
+				consistentFactsPool.shutdown();
+			consistentFactsPool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+				private int counter = 0;
+				public Thread newThread(Runnable r) {
+					Thread thread = new Thread(r, "consistent-facts-" + (++counter));
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			consistentFactsPoolSize = threads;
+		}
+		return consistentFactsPool;
+	}
 		
 	
 	/**
@@ -161,27 +239,128 @@ public final class MinSolver {
 			throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
 						
 		MinSolutionIterator iterator = new MinSolutionIterator(this, formula, origBounds, options, extraOptions);
-		
+
 		return iterator;
 	}
+
+	/**
+	 * Finds all minimal solutions to the given formula with respect to the specified bounds, as
+	 * solveAll(formula, origBounds) does, but with the given number of worker threads. The search
+	 * space is split into cubes over the primary variables that occur most often in the CNF, and
+	 * every worker enumerates the cubes it takes with its own copy of the solver. The cone restrictions
+	 * of the models found are shared by all workers, so no minimal model is returned twice; the models
+	 * are returned in the order the workers find them. The formula is translated on the calling thread.
+	 * The returned iterator cannot be augmented, nor used for consistent facts.
+	 * If the formula is trivial, returns solveAll(formula, origBounds).
+	 * @return an iterator over all the minimal Solutions to the formula with respect to the given bounds,
+	 * whose last solution is UNSAT
+	 * @throws NullPointerException - formula = null || bounds = null
+	 * @throws IllegalArgumentException - threads < 1
+	 * @throws kodkod.engine.fol2sat.UnboundLeafException - the formula contains an undeclared variable or
+	 * a relation not mapped by the given bounds
+	 * @throws kodkod.engine.fol2sat.HigherOrderDeclException - the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but this.options.skolemize is false.
+	 * @throws AbortedException - a worker failed; thrown by the iterator
+	 * @see #solveAll(Formula, Bounds)
+	 */
+	public Iterator<MinSolution> solveAllInParallel(final Formula formula, final Bounds origBounds, int threads)
+		throws HigherOrderDeclException, UnboundLeafException, AbortedException {
+		if (threads < 1)
+			throw new IllegalArgumentException("threads < 1: " + threads);
+
+		final MinTranslation translation;
+		long translTime = System.currentTimeMillis();
+		try {
+			// The workers solve copies of the formula.
+			translation = MinTranslator.translate(formula, origBounds, options, extraOptions, true);
+		} catch (TrivialFormulaException tfe) {
+			return solveAll(formula, origBounds);
+		}
+		translTime = System.currentTimeMillis() - translTime;
+
+		return new ParallelMinSolutionIterator(translation, origBounds, options, translTime, threads);
+	}
+
+	/**
+	 * Finds all minimal models of the CNF in the given DIMACS file, without a formula: the clauses are
+	 * streamed from the file into the solver, and every variable of the CNF is primary. Variable i is
+	 * the atom "i" of a unary relation v, so the instance of a solution maps v to its true variables,
+	 * and getSkolemBounds() returns the bounds of v. The returned iterator can be augmented and used for
+	 * consistent facts as any other; there is no symmetry breaking.
+	 * If the CNF is trivially unsatisfiable, returns solveAll(Formula.FALSE, getSkolemBounds()).
+	 * @return an iterator over all the minimal models of the CNF in the given file
+	 * @throws NullPointerException - dimacs = null
+	 * @throws IOException - the file cannot be read, or it is not a CNF in DIMACS format
+	 * @throws IllegalArgumentException - !this.options.solver().incremental()
+	 * @see MinTranslator#translate(java.io.File, Options)
+	 */
+	public Iterator<MinSolution> solveAll(final File dimacs) throws IOException {
+		if (!options.solver().incremental())
+			throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
+
+		final MinTranslation translation;
+		long translTime = System.currentTimeMillis();
+		try {
+			translation = MinTranslator.translate(dimacs, options, extraOptions.consistentFactsThreads() > 1);
+		} catch (TrivialFormulaException tfe) {
+			return solveAll(Formula.FALSE, getSkolemBounds());
+		}
+		translTime = System.currentTimeMillis() - translTime;
+
+		return new MinSolutionIterator(this, getSkolemBounds(), options, extraOptions, translation, translTime);
+	}
+
+	/**
+	 * Returns a publisher of the minimal solutions of the given formula with respect to the specified
+	 * bounds, that solves for them (via solveAll(formula, origBounds)) only as its subscriber requests
+	 * them. Cancelling the subscription interrupts the SAT call in progress. If a solution takes more
+	 * than solutionTimeout milliseconds, or the subscription more than totalTimeout milliseconds (0 for
+	 * no limit), the subscriber gets a MinTimeoutException. The translation itself is not interrupted.
+	 * @return a publisher of the minimal solutions of the formula with respect to the given bounds
+	 * @throws NullPointerException - formula = null || bounds = null
+	 * @throws IllegalArgumentException - solutionTimeout < 0 || totalTimeout < 0
+	 * @see MinSolutionPublisher
+	 * @see #solveAll(Formula, Bounds)
+	 */
+	public MinSolutionPublisher publishAll(final Formula formula, final Bounds origBounds, long solutionTimeout, long totalTimeout) {
+		if (solutionTimeout < 0 || totalTimeout < 0)
+			throw new IllegalArgumentException("negative timeout: " + solutionTimeout + ", " + totalTimeout);
+		if (formula == null || origBounds == null)
+			throw new NullPointerException();
+
+		return new MinSolutionPublisher((MinSolutionIterator) solveAll(formula, origBounds), solutionTimeout, totalTimeout);
+	}
 	
 	/**
-	 * Augments a model from an iterator with a set of facts
-	 * @param formula the original FOL formula.
-	 * @param origBounds the bounds.
-	 * @param iterator the previous iterator.
-	 * @param solution the current solution of the previous iterator being augmented.
+	 * Augments a model from an iterator with a set of facts. The formula is not used: 
+	 * see augment(Iterator, Instance).
+	 * @param formula the original FOL formula (ignored).
+	 * @param prevIterator the previous iterator.
 	 * @param augmentWith the facts to augment.
 	 * @return a new iterator over the augmented models.
 	 * @throws MinHigherOrderDeclException
 	 * @throws UnboundLeafException
 	 * @throws AbortedException
 	 */
-	//TODO in a refined implementation, we don't need the formula and bound since we have the translation 
-	//via previous iterator.
 	public MinSolutionIterator augment(final Formula formula, Iterator<MinSolution> prevIterator, 
 			Instance augmentWith)
 			throws HigherOrderDeclException, UnboundLeafException, AbortedException, ExplorationException {
+		return augment(prevIterator, augmentWith);
+	}
+	
+	/**
+	 * Augments the last model of an iterator with a set of facts. This is a propositional operation
+	 * on the translation of the iterator, which the new iterator shares (with its symmetry data and its
+	 * tuple index): the positive primary variables of the last model and the variables of the new facts
+	 * become assumptions of the new iterator, and nothing is translated again.
+	 * @param prevIterator the previous iterator.
+	 * @param augmentWith the facts to augment.
+	 * @return a new iterator over the augmented models.
+	 * @throws ExplorationException - the iterator never produced a model, or a fact is already true in its last model
+	 * @throws AbortedException
+	 */
+	public MinSolutionIterator augment(Iterator<MinSolution> prevIterator, Instance augmentWith)
+			throws AbortedException, ExplorationException {
 		
 		if (!options.solver().incremental())
 			throw new IllegalArgumentException("cannot enumerate solutions without an incremental solver.");
@@ -210,32 +389,36 @@ public final class MinSolver {
 		ArrayList<Integer> allAugments = new ArrayList<Integer>();
 		
 		// Do not use getLastSolution() here: it may be the iterator is empty, in which case it would contain no
-		// propositional model, being the UNSAT soln. Instead, use the last *instance* found:	
-		Map<Relation, TupleSet> solutionTuples = msiterator.lastSatSolutionFound.instance().relationTuples();
-		Map<Relation, TupleSet> augmentTuples = augmentWith.relationTuples();
-
-		for(Relation r : solutionTuples.keySet()){
-			TupleSet tuples = solutionTuples.get(r);
-			for(Tuple t: tuples){
-				int index = MinTwoWayTranslator.getPropVariableForTuple(skBounds, msiterator.getTranslation(), r, t);
-				//if there is no primary variables assigned to this relation, continue.
-				if(index == -1)
-					continue;
-				allAugments.add(index);
+		// propositional model, being the UNSAT soln. Instead, use the last model found. Its true primary 
+		// variables are exactly the variables of its tuples (the other tuples are in the lower bounds).
+		final MinSolution lastModel = msiterator.lastSatSolutionFound;
+		final int[] propositionalModel = lastModel.getPropositionalModel();
+		final int primary = msiterator.translation.numPrimaryVariables();
+		final BitSet preserved = new BitSet(primary + 1);
+		for(int i = 1; i <= primary; i++){
+			if(propositionalModel[i - 1] > 0){
+				preserved.set(i);
+				allAugments.add(i);
 			}
 		}
 		
+		Map<Relation, TupleSet> augmentTuples = augmentWith.relationTuples();
 		for(Relation r : augmentTuples.keySet()){
 			TupleSet tuples = augmentTuples.get(r);
 			if(tuples != null)
 				for(Tuple t: tuples){
-					if(solutionTuples.get(r).contains(t))
-						throw new ExplorationException("The fact " + t + " is already true in the solution.");
-
-					int index = MinTwoWayTranslator.getPropVariableForTuple(skBounds, msiterator.getTranslation(), r, t);					
-					//if there is no primary variables assigned to this relation, continue.
-					if(index == -1)
+					int index = MinTwoWayTranslator.getPropVariableForTuple(msiterator.varTupleIndex, r, t);
+					
+					//if there is no primary variables assigned to this relation, the tuple is either 
+					//in the lower bound (so already true) or out of the upper bound.
+					if(index == -1){
+						TupleSet solutionTuples = lastModel.instance().tuples(r);
+						if(solutionTuples != null && solutionTuples.contains(t))
+							throw new ExplorationException("The fact " + t + " is already true in the solution.");
 						continue;
+					}
+					if(preserved.get(index))
+						throw new ExplorationException("The fact " + t + " is already true in the solution.");
 					
 					allAugments.add(index);
 				}
@@ -243,7 +426,7 @@ public final class MinSolver {
 		
 		// We want the same MinSolver, because MinSolver governs
 		// the active iterator and allows the iterators to share the SAT solver.
-		MinSolutionIterator iterator = new MinSolutionIterator(this, formula, skBounds, options, extraOptions, allAugments, msiterator);
+		MinSolutionIterator iterator = new MinSolutionIterator(this, msiterator.formula, skBounds, options, extraOptions, allAugments, msiterator);
 				
 		return iterator;
 	}	
@@ -276,8 +459,8 @@ public final class MinSolver {
 
 		// If not trivial, go through the propositional translation
 		return MinTwoWayTranslator.translatePropositions(
-				theIterator.translation, ((MinReporterToGatherSkolemBounds)theIterator.options.reporter()).skolemBounds,
-				theIterator.mapVarToRelation,
+				((MinReporterToGatherSkolemBounds)theIterator.options.reporter()).skolemBounds,
+				theIterator.varTupleIndex,
 				theIterator.getConsistentFacts()); 
 	}
 	
@@ -335,7 +518,7 @@ public final class MinSolver {
 			for(Tuple t: tuples){
 				if(!miniterator.trivial)
 				{
-					int index = MinTwoWayTranslator.getPropVariableForTuple(bounds, translation, r, t);
+					int index = MinTwoWayTranslator.getPropVariableForTuple(miniterator.varTupleIndex, r, t);
 					// if there are no primary variables assigned to this relation, continue.
 					if(index == -1)
 						continue;
@@ -669,7 +852,7 @@ public final class MinSolver {
 		private boolean trivial = false;
 		
 		private MinTranslation translation;
-		private Map<Integer, Relation> mapVarToRelation;
+		private MinTwoWayTranslator.VarTupleIndex varTupleIndex;
 		private long translTime;
 		private MinSolution lastSolution;
 		
@@ -690,26 +873,71 @@ public final class MinSolver {
 		 * Keeps cone restriction clauses such that the next model from the SATsolver
 		 * is not in any of the previous cones.
 		 */
-		private Set<Set<Integer>> coneRestrictionClauses = new HashSet<Set<Integer>>();
+		private final ConeRestrictionClauses coneRestrictionClauses = new ConeRestrictionClauses();
 		/**
 		 * Keeps a list of all the constraints that are being taken into account.
 		 * Some operations such as getConsistentFacts() has to eliminate all the constraints.
 		 * Also, when another iterator is using the solver, the constraints from
 		 * the current iterator should be removed.
 		 */
-		private Set<IConstr> coneRestrictionConstraints = new HashSet<IConstr>();
+		private final List<IConstr> coneRestrictionConstraints = new ArrayList<IConstr>();
 
 		/**
 		 * Keeps a list of all the unit constraints due to a bug in SAT4J that does not
 		 * return a handle to remove unit constraints.
 		 */
-		private Set<Integer> coneRestrictionUnits = new HashSet<Integer>();
+		private final IntSet coneRestrictionUnits = new IntTreeSet();
+		
+		/**
+		 * Buffers for the negated positive diagram of the last model and its permutations,
+		 * of length translation.numPrimaryVariables() (null until the first model is found).
+		 */
+		private int[] notModel = null, permNotModel = null;
 		
 		/**
 		 * The augments for this iterator.
 		 */
 		private final int[] augments;
 		
+		/**
+		 * Activation literal of this iterator (0 if not allocated yet). It guards the loseSomethingPositive 
+		 * clauses when extraOptions.minimizeWithActivationLiterals() is set. The guard is assumed
+		 * whenever this iterator solves, and guarded clauses are not removed while it is live: every 
+		 * loseSomethingPositive clause contains the negated positive diagram of the minimal model 
+		 * it led to, which this iterator forbids anyway via a cone restriction. So one literal per 
+		 * iterator suffices, rather than a fresh variable per model, which would make every SAT 
+		 * call slower as the number of variables grows. The guard is retired once the iterator
+		 * is exhausted or closed, which removes its clauses from the solver, since they are never 
+		 * needed again, and when a minimization is stopped, since its clauses have no cone restriction 
+		 * yet; the next minimization allocates a new guard.
+		 */
+		private int guard = 0;
+		
+		/**
+		 * Set by close(): the iterator has released its clauses and gives no more solutions.
+		 */
+		private boolean closed = false;
+		
+		/**
+		 * False if the translation is shared with the iterator that this one augments, which owns it.
+		 */
+		private final boolean ownsTranslation;
+		
+		/**
+		 * Records the statistics of the phases of the work towards the next solution.
+		 */
+		private final MinPhaseStatistics.Recorder phases = new MinPhaseStatistics.Recorder();
+		
+		/**
+		 * Builds the instances of the solutions returned by nextBatch(int) from their
+		 * primary variables, when they are asked for.
+		 */
+		private final MinSolution.InstanceBuilder instanceBuilder = new MinSolution.InstanceBuilder() {
+			public Instance build(int[] propositionalModel) {
+				return padInstance(translation.interpret(propositionalModel), origBounds);
+			}
+		};
+		
 		/**
 		 * Constructs a solution iterator for the given formula, bounds, and options.
 		 */
@@ -740,13 +968,29 @@ public final class MinSolver {
 			this.extraOptions = extraOptions;
 			this.translation = null;
 			this.augments = (augs == null) ? null : toIntCollection(augs);					
+			this.ownsTranslation = (prevIterator == null);
 			
 			if(prevIterator != null){  //if augmenting on a previous iterator
 				this.translation = prevIterator.getTranslation();
-				this.mapVarToRelation = prevIterator.mapVarToRelation;		
+				this.varTupleIndex = prevIterator.varTupleIndex;		
 				this.parentHash = prevIterator.hashCode();
+				if(translation != null)
+					phases.start(translation.cnf());
 			}
 		}
+
+		/**
+		 * Constructs a solution iterator for a translation that has no formula, e.g. one read from a
+		 * DIMACS file: the iterator solves the translation, whose bounds are the given ones.
+		 */
+		MinSolutionIterator(MinSolver minSolver, Bounds bounds, Options options, MinExtraOptions extraOptions,
+				MinTranslation translation, long translTime) {
+			this(minSolver, Formula.TRUE, bounds, options, extraOptions, null, null);
+			this.translation = translation;
+			this.translTime = translTime;
+			this.varTupleIndex = MinTwoWayTranslator.buildVarTupleIndex(translation, bounds);
+			phases.start(translation.cnf());
+		}
 		
 		/**
 		 * Debugging string.
@@ -761,7 +1005,7 @@ public final class MinSolver {
 			result.append("Iterator augmentations:"+Arrays.toString(augments)+"\n");
 			result.append("Iterator translation's num pri vars:"+translation.numPrimaryVariables()+"\n");
 			result.append("Iterator solver's hash code:"+minSolver.hashCode()+"\n");
-			result.append("Iterator mapVarToRelation:"+mapVarToRelation+"\n");
+			result.append("Iterator varTupleIndex:"+varTupleIndex+"\n");
 			return result.toString();
 		}
 		
@@ -771,18 +1015,20 @@ public final class MinSolver {
 		 */
 		public boolean hasNext() {
 			// Can no longer set formula=null; instead use unsatSolution (reversed)
-			return (unsatSolution == null);
+			return (unsatSolution == null && !closed);
 		}
 		
 		/**
 		 * Solves translation.cnf and adds the negation of the
-		 * found model to the set of clauses.
+		 * found model to the set of clauses. If deferInstance is set, the solution
+		 * only keeps the primary variables of the model, and builds its instance
+		 * when it is first asked for.
 		 * @requires this.translation != null
 		 * @effects this.translation.cnf is modified to eliminate
 		 * the  current solution from the set of possible solutions
 		 * @return current solution
 		 */
-		private MinSolution nonTrivialSolution() {						
+		private MinSolution nonTrivialSolution(boolean deferInstance) {						
 			try {
 				final MinSATSolver internalSolver = translation.cnf();
 				
@@ -810,23 +1056,29 @@ public final class MinSolver {
 					if(isSat)
 					{												
 						final int primary = translation.numPrimaryVariables();					
-						final Set<Integer> notModel = new HashSet<Integer>();		
+						if(notModel == null){
+							notModel = new int[primary];
+							permNotModel = new int[primary];
+						}
+						int length = 0;
 						
 						// Negate this model's positive diagram. 
 						// We will use this disjunctively for "cone-restriction": preventing models 
 						// (or any of their supermodels) from occuring again.
-						for(int i = 1; i <= primary; i++){
+						// (Going down from the last variable keeps the literals sorted.)
+						for(int i = primary; i >= 1; i--){
 							if(internalSolver.valueOf(i)){
-								notModel.add(-i);
+								notModel[length++] = -i;
 							}
 						}
 																								
 						try{	
 							//JOptionPane.showMessageDialog(null, translation.permutations);
 							// Add the cone restriction for this model:
-							addConeRestriction(notModel, internalSolver);
+							if(addConeRestriction(notModel, length, internalSolver))
+								phases.coneRestrictions++;
 							// Add the cone restriction for all (safe) adjacent transpositions: 
-							addPermConeRestrictions(notModel, internalSolver);
+							addPermConeRestrictions(notModel, length, internalSolver);
 						}
 						catch(ContradictionException e) {
 							// This iterator is now out of models. Either we just gave the empty model,
@@ -836,6 +1088,8 @@ public final class MinSolver {
 							final long endSolveU = System.currentTimeMillis();				
 							final MinStatistics statsU = new MinStatistics(translation, translTime, endSolveU - startSolve);
 							unsatSolution = unsat(translation, statsU);							
+							retireGuard();
+							freeTranslation();
 						}
 					} // end constraints to forbid current cone									
 					
@@ -846,20 +1100,38 @@ public final class MinSolver {
 				// Found a minimal model (or unsat)
 				
 				final long endSolve = System.currentTimeMillis();				
-				final MinStatistics stats = new MinStatistics(translation, translTime, endSolve - startSolve);
+				MinReporterToGatherSkolemBounds reporter = (MinReporterToGatherSkolemBounds)options.reporter();
+				// An UNSAT result takes a single SAT call; a model also counts its minimization.
+				final int satInvocations = isSat ? reporter.getIterations() : 1;
 				if (isSat) {
-					int[] propositionalModel = translation.cnf().getLastModel().clone();
-					MinReporterToGatherSkolemBounds reporter = (MinReporterToGatherSkolemBounds)options.reporter();
 					MinimizationHistory history = null;
 					if(extraOptions.logMinimizationHistory())
 						history = new MinimizationHistory(reporter.getIterations(), reporter.getReducedElements(), 
 								reporter.getReducedAttributes(), reporter.getReducedRelations());
 					
+					if(deferInstance) {
+						final MinStatistics stats = new MinStatistics(translation, translTime, endSolve - startSolve, 
+								satInvocations, phases.snapshot(internalSolver));
+						final int[] primaryModel = Arrays.copyOf(translation.cnf().getLastModel(), translation.numPrimaryVariables());
+						return MinSolution.satisfiable(stats, instanceBuilder, history, primaryModel);
+					}
+					
+					int[] propositionalModel = translation.cnf().getLastModel().clone();
+
 					// extract the current solution; can't use the sat(..) method because it frees the sat solver
-					final MinSolution sol = MinSolution.satisfiable(stats, padInstance(translation.interpret(), origBounds), history, propositionalModel);
+					final long startInstance = System.nanoTime();
+					final Instance instance = padInstance(translation.interpret(), origBounds);
+					phases.materializationTime += System.nanoTime() - startInstance;
+					final MinStatistics stats = new MinStatistics(translation, translTime, endSolve - startSolve, 
+							satInvocations, phases.snapshot(internalSolver));
+					final MinSolution sol = MinSolution.satisfiable(stats, instance, history, propositionalModel);
 					return sol;
 				} else {
+					final MinStatistics stats = new MinStatistics(translation, translTime, endSolve - startSolve, 
+							satInvocations, phases.snapshot(internalSolver));
 					unsatSolution = unsat(translation, stats); 
+					retireGuard();
+					freeTranslation();
 					return unsatSolution;
 				}
 			} catch (SATAbortedException sae) {
@@ -870,20 +1142,23 @@ public final class MinSolver {
 		/**
 		 * Add a clause for this negated positive-diagram.
 		 * 
-		 * @param notModel
+		 * @param notModel the literals of the negated positive-diagram, in notModel[0..length)
+		 * @param length
 		 * @param internalSolver
+		 * @requires notModel[0..length) is sorted in ascending order and has no duplicates
+		 * @return true if the clause was added, false if this iterator already has it
 		 * @throws ContradictionException
 		 */
-		private void addConeRestriction(Set<Integer> notModel, MinSATSolver internalSolver)
+		private boolean addConeRestriction(int[] notModel, int length, MinSATSolver internalSolver)
 				throws ContradictionException
 		{						
-			// It is vital that notModel be a SET, not a LIST (the literals can be transposed).
+			// It is vital that notModel be sorted and duplicate-free (the literals can be 
+			// transposed), so that the same clause is always stored the same way.
 			
-			if(notModel.size() == 1)
+			if(length == 1)
 			{
 				// No risk of adding duplicates; it's just a set.
-				for(int unit : notModel)
-					coneRestrictionUnits.add(unit);
+				return coneRestrictionUnits.add(notModel[0]);
 			}
 			else
 			{				
@@ -891,13 +1166,14 @@ public final class MinSolver {
 				// clauses ought to be idempotent, but it is not: the same IConstr
 				// is returned, and removeConstraint will only end up removing the 
 				// *FIRST* such clause, not all of them. So never add duplicates!
-				if(coneRestrictionClauses.contains(notModel))
-					return;								
+				if(coneRestrictionClauses.contains(notModel, length))
+					return false;								
 				
-				// (This will be called if notModel.size() ==0, triggering the exception.)							
-				coneRestrictionConstraints.add(internalSolver.addConstraint(toIntCollection(notModel)));
-				coneRestrictionClauses.add(notModel);
-								
+				// (This will be called if length == 0, triggering the exception.)
+				final int[] clause = Arrays.copyOf(notModel, length);
+				coneRestrictionConstraints.add(internalSolver.addConstraint(clause));
+				coneRestrictionClauses.add(clause);
+				return true;
 			}			
 		}
 		
@@ -905,18 +1181,19 @@ public final class MinSolver {
 		 * Add cone-restriction clauses for the broken symmetries (i.e., the symmetries for which
 		 * Kodkod produces a symmetry-breaking predicate) of this negated positive-diagram.
 		 * 
-		 * @param notModel
+		 * @param notModel the literals of the negated positive-diagram, in notModel[0..length)
+		 * @param length
 		 * @param internalSolver
 		 * @throws ContradictionException
 		 */
-		private void addPermConeRestrictions(Set<Integer> notModel, MinSATSolver internalSolver) 
+		private void addPermConeRestrictions(int[] notModel, int length, MinSATSolver internalSolver) 
 				throws ContradictionException
 		{			
 			// the CALLER is responsible for adding the original restriction clause:
-			//addConeRestriction(notModel, internalSolver);
+			//addConeRestriction(notModel, length, internalSolver);
 			
 			int permCounter = 0;
-			for(Map<Integer, Integer> aPerm : translation.permutations)
+			for(int[] aPerm : translation.permutationArrays())
 			{
 				// For safety. Note that this is a *completely different use*
 				// of the symmetry-breaking option. Here it means the number of
@@ -928,8 +1205,9 @@ public final class MinSolver {
 				// Apply this permutation and add the permuted C.R. clause. The permutation
 				// is assumed to be complete. I.e., if 2->3, then 3->x for some x. In our
 				// case, the permutations are actually length 2 (2->3 then 3->2). 
-				Set<Integer> permNotModel = permuteNegatedPositiveDiagram(notModel, aPerm);				
-				addConeRestriction(permNotModel, internalSolver);								
+				int permLength = permuteNegatedPositiveDiagram(notModel, length, aPerm, permNotModel);				
+				if(addConeRestriction(permNotModel, permLength, internalSolver))
+					phases.permutedConeRestrictions++;
 				permCounter++;
 
 				//JOptionPane.showMessageDialog(null, permCounter+" Added restriction. notModel="+notModel+"\naPerm="+aPerm+"\npermNotModel="+permNotModel);				
@@ -937,27 +1215,35 @@ public final class MinSolver {
 		}
 
 		/**
-		 * Given a negated positive diagram, apply a permutation to it.
-		 * We do NOT need an ordering on the diagram.
-		 * @param notModel
-		 * @param aPerm
-		 * @return
+		 * Given a negated positive diagram, apply a permutation to it. The permuted
+		 * diagram is stored in result, sorted and without duplicates.
+		 * @param notModel the literals of the negated positive-diagram, in notModel[0..length)
+		 * @param length
+		 * @param aPerm a permutation, as returned by translation.permutationArrays()
+		 * @param result the array to store the permuted diagram in
+		 * @requires result.length >= length
+		 * @return the number of literals of the permuted diagram
 		 */
-		private Set<Integer> permuteNegatedPositiveDiagram(Set<Integer> notModel,
-				Map<Integer, Integer> aPerm) 
+		private static int permuteNegatedPositiveDiagram(int[] notModel, int length,
+				int[] aPerm, int[] result) 
 		{
-			Set<Integer> result = new HashSet<Integer>(notModel.size());
-			for(Integer aLiteral : notModel)
+			for(int i = 0; i < length; i++)
 			{
-				if(aLiteral > 0 && aPerm.containsKey(aLiteral))
-					result.add(aPerm.get(aLiteral));
-				else if(aLiteral < 0 && aPerm.containsKey(aLiteral*-1))
-					result.add(aPerm.get(aLiteral*-1)*-1);
-				else
-					result.add(aLiteral);					
+				final int aLiteral = notModel[i];
+				final int var = StrictMath.abs(aLiteral);
+				final int image = (var < aPerm.length) ? aPerm[var] : var;
+				result[i] = (aLiteral < 0) ? -image : image;
 			}
 			
-			return result;
+			Arrays.sort(result, 0, length);
+			int size = 0;
+			for(int i = 0; i < length; i++)
+			{
+				if(size == 0 || result[i] != result[size - 1])
+					result[size++] = result[i];
+			}
+			
+			return size;
 		}
 
 		/**
@@ -998,43 +1284,78 @@ public final class MinSolver {
 		 * @see java.util.Iterator#next()
 		 */
 		public MinSolution next() {
+			if (closed) throw new IllegalStateException("iterator is closed");
 			if (!hasNext()) return unsatSolution;
 			
+			final MinFlightRecorder.Event event = MinFlightRecorder.next();
 			claimSATSolver();
 
 			if (translation==null) {
 				try {
 					translTime = System.currentTimeMillis();
-					translation = MinTranslator.translate(formula, origBounds, options);
+					translation = MinTranslator.translate(formula, origBounds, options, extraOptions);
 					translTime = System.currentTimeMillis() - translTime;
 					
-					//We use this data structure for translation:
-					//mapVarToRelation = MinTwoWayTranslator.buildVarToRelationMap(translation, bounds);
-					mapVarToRelation = MinTwoWayTranslator.buildVarToRelationMap(translation, 
+					//We use this data structure for translation, once per translation:
+					varTupleIndex = MinTwoWayTranslator.buildVarTupleIndex(translation, 
 							((MinReporterToGatherSkolemBounds)options.reporter()).skolemBounds);
 					
 					// Print the translation (DEBUG ONLY!)
-					//String transStr = MinTwoWayTranslator.printTranslation(translation, 
-					//		((MyReporter)options.reporter()).skolemBounds,
-					//		mapVarToRelation);
+					//String transStr = MinTwoWayTranslator.printTranslation(translation, varTupleIndex);
 					//JOptionPane.showMessageDialog(null, transStr);
 					
-					setLastSolution(nonTrivialSolution());
+					setLastSolution(nonTrivialSolution(false));
 				} catch (TrivialFormulaException tfe) {
 					translTime = System.currentTimeMillis() - translTime;
 					setLastSolution(trivialSolution(tfe));
 				} 
 			} else {
-				setLastSolution(nonTrivialSolution());
+				setLastSolution(nonTrivialSolution(false));
 			}						
-						
+			
+			event.next(getLastSolution().stats(), getLastSolution().sat());
 			return getLastSolution();
 		}
 
+		/**
+		 * Returns up to n next solutions, without leaving the SAT loop in between: the solver is
+		 * claimed once for the whole batch, and every solution only keeps the primary variables 
+		 * of its model and builds its instance when {@link MinSolution#instance()} is first called.
+		 * The batch is shorter than n iff the iterator runs out of solutions; unlike next(), the
+		 * unsatisfiable solution at the end is not returned.
+		 * @return the next min(n, #remaining solutions) satisfiable solutions
+		 * @throws IllegalArgumentException - n < 0
+		 */
+		public List<MinSolution> nextBatch(int n) {
+			if (n < 0) 
+				throw new IllegalArgumentException("n < 0: " + n);
+			
+			final List<MinSolution> batch = new ArrayList<MinSolution>();
+			boolean claimed = false;
+			while (batch.size() < n && hasNext()) {
+				final MinSolution solution;
+				if (translation == null || trivial) {
+					// Translates the formula (or finds its trivial solution) first.
+					solution = next();
+				} else {
+					if (!claimed)
+						claimSATSolver();
+					solution = nonTrivialSolution(true);
+					setLastSolution(solution);
+				}
+				claimed = true;
+				
+				if (solution.sat())
+					batch.add(solution);
+			}
+			return batch;
+		}
+
 		/**
 		 * Prepares the solver to be used by the current iterator.
 		 */
 		private void claimSATSolver() {
+			final long start = System.nanoTime();
 			
 //			if(translation != null)
 				//JOptionPane.showMessageDialog(null, "before claim: "+((MinSATSolver)translation.cnf()).printConstraints());
@@ -1066,6 +1387,7 @@ public final class MinSolver {
 				else
 					((MinSATSolver)translation.cnf()).activateSBP();
 			}
+			phases.claimTime += System.nanoTime() - start;
 		}		
 		
 		/**
@@ -1085,19 +1407,22 @@ public final class MinSolver {
 			if(!hasNext()) return false;
 			
 			try{
-				Set<Integer> allUnits = new HashSet<Integer>();
-				allUnits.addAll(toSet(augments));
-				allUnits.addAll(coneRestrictionUnits);
+				IntSet allUnits = unitAssumptions();
 				
+				final long startFind = System.nanoTime();
+				final MinFlightRecorder.Purpose purpose = isAugmented() ? 
+						MinFlightRecorder.Purpose.AUGMENT : MinFlightRecorder.Purpose.FIND;
 				if(allUnits.size() == 0)
-					sat = Boolean.valueOf(translation.cnf().solve());
+					sat = Boolean.valueOf(translation.cnf().solve(purpose));
 				else
-					sat = Boolean.valueOf(translation.cnf().solve(toIntCollection(allUnits)));
+					sat = Boolean.valueOf(translation.cnf().solve(allUnits.toArray(), purpose));
+				phases.findTime += System.nanoTime() - startFind;
 		
 				//JOptionPane.showMessageDialog(null, sat+" "+allUnits.size());
 				
 				if(sat)
 				{	
+					final long startMinimize = System.nanoTime();
 					try{
 						minimize();
 					}
@@ -1105,16 +1430,18 @@ public final class MinSolver {
 					{
 						JOptionPane.showMessageDialog(null, "CONTRADICTION exception in minimize() call");
 					}
+					phases.minimizeTime += System.nanoTime() - startMinimize;
 				}								
 				
 				return sat;
 			} catch (org.sat4j.specs.TimeoutException e) {
-				throw new RuntimeException("timed out");
+				throw new MinTimeoutException("timed out", e);
 			}
 		}
 
 		/**
-		 * Minimizes the model in the SAT solver.
+		 * Minimizes the model in the SAT solver, using the strategy given by
+		 * extraOptions.minimizationStrategy().
 		 * @throws TimeoutException
 		 * @throws ContradictionException
 		 * @throws NotMinimalModelException 
@@ -1127,80 +1454,265 @@ public final class MinSolver {
 			int[] modelAfterMinimization = null;			
 			// Assumption: Have already found a model at this point!							
 			
-			// This keeps constraints to be removed from the solver
-			// after finding the next model.
-			Set<IConstr> constraints = new HashSet<IConstr>();
-			
-			// All the unit clauses being passed to the solver as assumptions.
-			Set<Integer> unitClauses = toSet(augments);						
-			
-			// Add all coneRestrictionUnits
-			for(Integer value: coneRestrictionUnits)
-				unitClauses.add(value);
+			// All the unit clauses being passed to the solver as assumptions:
+			// the augments and all coneRestrictionUnits.
+			IntSet unitClauses = unitAssumptions();
 			
 			MinSATSolver theSolver = ((MinSATSolver)translation.cnf());						
 			if(logDifference)		
 				modelBeforeMinimization = theSolver.getLastModel().clone();
 			
+			// Every fact of this model is consistent with the minimal model below it.
+			minSolver.consistentFactEngine(translation).addModel(theSolver);
+			
 			theSolver.deactivateSBP();
 			
+			int iterationCounter;
+			try{
+				if(extraOptions.minimizationStrategy() == MinExtraOptions.MinimizationStrategy.DIVIDE_AND_CONQUER)
+					iterationCounter = minimizeByDroppingBlocks(theSolver, unitClauses);
+				else
+					iterationCounter = minimizeByLosingSomethingPositive(theSolver, unitClauses);
+			}
+			catch(MinTimeoutException e)
+			{
+				// The SAT call was stopped before the model was minimal: drop the model, so that
+				// the next call finds one again. The guarded clauses that led below it would 
+				// exclude its cone without a cone restriction, so the guard is retired; the clauses
+				// of the earlier models are redundant with their cone restrictions anyway.
+				sat = null;
+				retireGuard();
+				if(!isAugmented())
+					theSolver.activateSBP();
+				throw e;
+			}
+
+			if(logDifference){
+				modelAfterMinimization = theSolver.getLastModel().clone();
+				computeDifference(modelBeforeMinimization, modelAfterMinimization);
+			}
+			
+			((MinReporterToGatherSkolemBounds)options.reporter()).setIterations(iterationCounter);
+			// Every strategy counts the SAT call that found the model, too.
+			phases.minimizationRounds += iterationCounter - 1;
+						
+			if(!isAugmented()) //if the iterator is NOT an augmentation, activate SBP.
+				theSolver.activateSBP();
+		}
+		
+		/**
+		 * Minimizes the model in the SAT solver by repeatedly asking for a model that loses
+		 * some positive literal of the current one, until the solver returns UNSAT.
+		 * @param theSolver the solver holding the model to minimize.
+		 * @param unitClauses the unit clauses to pass to the solver as assumptions. 
+		 * @return the number of SAT solver invocations, including the one that found the model.
+		 * @throws TimeoutException
+		 * @throws ContradictionException
+		 */
+		private int minimizeByLosingSomethingPositive(MinSATSolver theSolver, IntSet unitClauses) 
+				throws TimeoutException, ContradictionException
+		{
+			// This keeps constraints to be removed from the solver
+			// after finding the next model.
+			Set<IConstr> constraints = new HashSet<IConstr>();
+			
+			// If minimizing with activation literals, every loseSomethingPositive clause is
+			// guarded by this iterator's guard instead of being removed afterwards.
+			// (unitClauses already has the guard if it was allocated.)
+			boolean useActivationLiteral = extraOptions.minimizeWithActivationLiterals();
+			
 			int iterationCounter = 1;						
 			
-			do
+			final int numPrimaryVariables = translation.numPrimaryVariables();
+			
+			// A buffer for the next constraint being added.
+			final int[] loseSomethingPositive = new int[numPrimaryVariables];
+			
+			try
 			{
-				// Given that candidate for minimal-model, try to make something smaller.
-				// add: disjunction of negations of all positive literals in M (constraint)
-				// add: all negative literals as unit clauses
-				
-				// An array of the next constraint being added.
-				List<Integer> loseSomethingPositive = new ArrayList<Integer>();
+				do
+				{
+					// Given that candidate for minimal-model, try to make something smaller.
+					// add: disjunction of negations of all positive literals in M (constraint)
+					// add: all negative literals as unit clauses
 				
-				int numPrimaryVariables = translation.numPrimaryVariables();
+					int length = 0;
 					
-				for(int i = 1; i <= numPrimaryVariables; i++){
-					if(theSolver.valueOf(i) == true)
-						loseSomethingPositive.add(-i);
-					else // don't set anything curr. negative to positive.
-						unitClauses.add(-i);
-				}
+					for(int i = 1; i <= numPrimaryVariables; i++){
+						if(theSolver.valueOf(i) == true){
+							// A variable fixed by a unit clause cannot be lost; SAT4J would remove
+							// it from the clause, which may then be reduced to a (permanent) unit.
+							if(!theSolver.isTrueUnit(i))
+								loseSomethingPositive[length++] = -i;
+						}
+						else // don't set anything curr. negative to positive.
+							unitClauses.add(-i);
+					}
 				
-				if(loseSomethingPositive.size() == 0)
-				{
-					// We have minimized down to the empty model. 
-					// Avoid calling the final SAT (would be adding the empty clause)
-					break;
+					if(length == 0)
+					{
+						// We have minimized down to the empty model (but for the variables fixed by unit clauses). 
+						// Avoid calling the final SAT (would be adding the empty clause)
+						break;
+					}
+					if(length == 1)
+					{
+						// We have only one relational fact that can possibly be removed.
+						unitClauses.add(loseSomethingPositive[0]);
+					}
+					else if(useActivationLiteral)
+					{
+						unitClauses.add(guard(theSolver));
+						theSolver.addGuardedConstraint(guard, Arrays.copyOf(loseSomethingPositive, length));
+					}
+					else
+					{
+						constraints.add(theSolver.addConstraint(Arrays.copyOf(loseSomethingPositive, length)));
+					}
+				
+					iterationCounter++;
 				}
-				if(loseSomethingPositive.size() == 1)
+				while(Boolean.valueOf(theSolver.solve(unitClauses.toArray(), MinFlightRecorder.Purpose.MINIMIZE)));
+			}
+			finally
+			{
+				// Remove all the (non-unit) loseSomethingPositive constraints we just added from the solver,
+				// even if a SAT call was stopped:
+				Iterator<IConstr> it = constraints.iterator();
+				while(it.hasNext()){
+					theSolver.removeConstraint(it.next());		
+				}
+			}
+			
+			return iterationCounter;
+		}
+		
+		/**
+		 * Minimizes the model in the SAT solver by dropping whole blocks of its positive primary
+		 * variables at once. For each block, the solver is first asked for a model that loses at least 
+		 * one variable of the block, while every variable that is already negative stays negative. 
+		 * If that is UNSAT, every variable of the block is necessary in all models below the current 
+		 * one. Otherwise, the solver is asked to drop everything left in the block; if that is UNSAT 
+		 * too, the block is split in halves, down to single variables. Once every block is either 
+		 * dropped or necessary, the model is minimal.
+		 * @param theSolver the solver holding the model to minimize.
+		 * @param unitClauses the unit clauses to pass to the solver as assumptions. 
+		 * @return the number of SAT solver invocations, including the one that found the model.
+		 * @throws TimeoutException
+		 * @throws ContradictionException
+		 */
+		private int minimizeByDroppingBlocks(MinSATSolver theSolver, IntSet unitClauses)
+				throws TimeoutException, ContradictionException
+		{
+			final int numPrimaryVariables = translation.numPrimaryVariables();
+			
+			// The positive variables of the model we start with; variables forced to be true 
+			// by the unit clauses (e.g., augmentations, or unit clauses of the CNF) can never be dropped. 
+			int[] candidates = new int[numPrimaryVariables];
+			int numCandidates = 0;
+			for(int i = 1; i <= numPrimaryVariables; i++){
+				if(theSolver.valueOf(i) && !unitClauses.contains(i) && !theSolver.isTrueUnit(i))
+					candidates[numCandidates++] = i;
+			}
+			
+			int[] fixed = unitClauses.toArray();			
+			int[] assumptions = new int[fixed.length + numPrimaryVariables];
+			System.arraycopy(fixed, 0, assumptions, 0, fixed.length);
+			int[] block = new int[numCandidates];
+			
+			int iterationCounter = 1;
+			
+			// Ranges [from, to) of candidates still to be dropped.
+			List<int[]> ranges = new ArrayList<int[]>();
+			ranges.add(new int[] {0, numCandidates});
+			
+			while(!ranges.isEmpty())
+			{
+				int[] range = ranges.remove(ranges.size() - 1);
+				
+				int blockSize = fillBlock(theSolver, candidates, range, block);
+				
+				// Already dropped along with an earlier block
+				if(blockSize == 0)
+					continue;
+				
+				// Is there any variable in the block that can be dropped?
+				int numNegative = fillNegatives(theSolver, assumptions, fixed.length);
+				iterationCounter++;
+				boolean shrunk;
+				if(blockSize == 1)
 				{
-					// We have only one relational fact that can possibly be removed.
-					unitClauses.add(loseSomethingPositive.get(0));
+					assumptions[numNegative] = block[0];
+					shrunk = theSolver.solve(Arrays.copyOf(assumptions, numNegative + 1), MinFlightRecorder.Purpose.MINIMIZE);
 				}
 				else
 				{
-					constraints.add(theSolver.addConstraint(toIntCollection(loseSomethingPositive)));
+					IConstr loseSomethingInBlock = theSolver.addConstraint(Arrays.copyOf(block, blockSize));
+					try{
+						shrunk = theSolver.solve(Arrays.copyOf(assumptions, numNegative), MinFlightRecorder.Purpose.MINIMIZE);
+					}
+					finally{
+						theSolver.removeConstraint(loseSomethingInBlock);
+					}
 				}
 				
+				// If not, the whole block is necessary.
+				if(!shrunk)
+					continue;
+				
+				// If so, try to drop what is left of the block at once.
+				blockSize = fillBlock(theSolver, candidates, range, block);
+				if(blockSize == 0)
+					continue;
+				
+				numNegative = fillNegatives(theSolver, assumptions, fixed.length);
+				System.arraycopy(block, 0, assumptions, numNegative, blockSize);
 				iterationCounter++;
+				if(theSolver.solve(Arrays.copyOf(assumptions, numNegative + blockSize), MinFlightRecorder.Purpose.MINIMIZE))
+					continue;
+				
+				if(blockSize > 1)
+				{
+					// Try each half (the first half goes on top).
+					int middle = (range[0] + range[1]) / 2;
+					ranges.add(new int[] {middle, range[1]});
+					ranges.add(new int[] {range[0], middle});
+				}
+				// else: a single necessary variable.
 			}
-			while(Boolean.valueOf(theSolver.solve(toIntCollection(unitClauses))));
-
-			if(logDifference){
-				modelAfterMinimization = theSolver.getLastModel().clone();
-				computeDifference(modelBeforeMinimization, modelAfterMinimization);
-			}
-			
-			((MinReporterToGatherSkolemBounds)options.reporter()).setIterations(iterationCounter);
-						
-			if(!isAugmented()) //if the iterator is NOT an augmentation, activate SBP.
-				theSolver.activateSBP();
 			
-			// Remove all the (non-unit) loseSomethingPositive constraints we just added from the solver:
-			Iterator<IConstr> it = constraints.iterator();
-			while(it.hasNext()){
-				theSolver.removeConstraint(it.next());		
+			return iterationCounter;
+		}
+		
+		/**
+		 * Fills block with the negations of the candidates in the given range that are 
+		 * positive in the last model of the solver.
+		 * @return the number of literals written to block.
+		 */
+		private static int fillBlock(MinSATSolver theSolver, int[] candidates, int[] range, int[] block)
+		{
+			int blockSize = 0;
+			for(int j = range[0]; j < range[1]; j++){
+				if(theSolver.valueOf(candidates[j]))
+					block[blockSize++] = -candidates[j];
 			}
+			return blockSize;
 		}
-
+		
+		/**
+		 * Writes the negations of the primary variables that are negative in the last model
+		 * of the solver to assumptions, starting at the given offset.
+		 * @return the offset after the last literal written.
+		 */
+		private int fillNegatives(MinSATSolver theSolver, int[] assumptions, int offset)
+		{
+			for(int i = 1; i <= translation.numPrimaryVariables(); i++){
+				if(!theSolver.valueOf(i))
+					assumptions[offset++] = -i;
+			}
+			return offset;
+		}
+		
 		/**
 		 * This method computes the differences between the two propositional models before and after minimization and updates
 		 * the reporter accordingly.
@@ -1220,7 +1732,7 @@ public final class MinSolver {
 			//Computing the difference set:
 			for(int i = 0; i < translation.numPrimaryVariables(); i++){
 				//getting the translation for this proposition: 
-				Entry<Relation, TupleSet> trans = MinTwoWayTranslator.translateProposition(translation, reporter.skolemBounds, mapVarToRelation, i+1);
+				Entry<Relation, TupleSet> trans = MinTwoWayTranslator.translateProposition(reporter.skolemBounds, varTupleIndex, i+1);
 
 				if(modelBeforeMinimization[i] > 0) //a fact is true before minimization, so store its atoms in the first set.
 					atomsBeforeMinimization.addAll(getAtoms(trans.getValue()));
@@ -1243,7 +1755,10 @@ public final class MinSolver {
 		}
 		
 		/**
-		 * Computes all the CFs for the current model loaded in the solver.
+		 * Computes all the CFs for the current model loaded in the solver. The facts true in 
+		 * a model seen before inside the current cone are consistent without a SAT call, and
+		 * the facts ruled out by a failed-assumption core learned before are dropped without one.
+		 * The result is kept in the solution, so asking again for the same model is free.
 		 * @return
 		 * @throws TimeoutException
 		 * @throws ContradictionException
@@ -1252,18 +1767,12 @@ public final class MinSolver {
 		{			
 			assert(!trivial);
 			
-			MinSATSolver solver = (MinSATSolver)translation.cnf();								
+			final int[] cached = lastSatSolutionFound.consistentFacts();
+			if(cached != null)
+				return cached.clone();
+			
 			Set<Integer> wantToAdd = new HashSet<Integer>();
-			Set<Integer> retVal = new HashSet<Integer>();
 			Set<Integer> preservedFacts = new HashSet<Integer>();						
-						
-			//TODO claimSATSolver does not have to fill all the clauses in here.
-			claimSATSolver();
-			removeAllConstraints();								
-			
-			
-			// Always deactivate SBP before searching for augmentations
-			solver.deactivateSBP();			
 			
 			// preservedFacts are the positive literals that define the "cone" we are in.
 			// wantToAdd are the negative (turned positive) literals we want to check for in the cone.
@@ -1282,20 +1791,148 @@ public final class MinSolver {
 					wantToAdd.add(i);
 			}					
 			
-			boolean wasSatisfiable = false;
-			List<Integer> unitClauses = new ArrayList<Integer>(preservedFacts);
-								
-			//JOptionPane.showMessageDialog(null, wantToAdd+"\n"+preservedFacts);
+			final ConsistentFactEngine engine = minSolver.consistentFactEngine(translation);
+			final BitSet preserved = engine.positiveDiagram(lastPropositionalModelReturned);
+			Set<Integer> retVal = new HashSet<Integer>();
+			engine.prune(preserved, wantToAdd, retVal);
 			
-			// Loop while (a) there are facts left to find and (b) still satisfiable.
-			do
-			{
-				// Add a disjunction for the current set of literals we want to find:
-				IConstr removeWTA = null;
-				//System.out.println("Adding WTA: "+wantToAdd);
-				if(wantToAdd.size() > 1)
-				{
-					removeWTA = solver.addConstraint(toIntCollection(wantToAdd));
+			if(!wantToAdd.isEmpty())
+				retVal.addAll(searchConsistentFacts(engine, preserved, preservedFacts, wantToAdd));
+			
+			final int[] result = toIntCollection(retVal);
+			lastSatSolutionFound.setConsistentFacts(result.clone());
+			return result;
+		}
+		
+		/**
+		 * Finds the consistent facts among wantToAdd with the SAT solver, sequentially on the
+		 * shared solver or in parallel on copies of it (see MinExtraOptions.consistentFactsThreads()).
+		 * @return the consistent facts among wantToAdd
+		 * @throws TimeoutException
+		 * @throws ContradictionException
+		 */
+		private Set<Integer> searchConsistentFacts(ConsistentFactEngine engine, BitSet preserved, 
+				Set<Integer> preservedFacts, Set<Integer> wantToAdd) throws TimeoutException, ContradictionException
+		{
+			// The copies of the solver have none of the constraints or the SBP of the shared
+			// solver, so there is no need to claim it. A translation made before the option was 
+			// set has no formula to copy, and is searched sequentially.
+			if(extraOptions.consistentFactsThreads() > 1 && translation.cnf().recordsFormula())
+				return getConsistentFactsInParallel(engine, preserved, preservedFacts, wantToAdd, extraOptions.consistentFactsThreads());
+			
+			MinSATSolver solver = (MinSATSolver)translation.cnf();								
+						
+			//TODO claimSATSolver does not have to fill all the clauses in here.
+			claimSATSolver();
+			removeAllConstraints();								
+			
+			
+			// Always deactivate SBP before searching for augmentations
+			solver.deactivateSBP();			
+			
+			List<Integer> unitClauses = new ArrayList<Integer>(preservedFacts);
+			
+			// Disable the guarded minimization clauses of every iterator, too.
+			for(IntIterator it = minSolver.liveGuards.iterator(); it.hasNext(); )
+				unitClauses.add(-it.next());
+								
+			Set<Integer> retVal = findConsistentFacts(solver, engine, preserved, unitClauses, wantToAdd);
+			
+			// If this is an un-augmented iterator, re-activate symmetry-breaking
+			// (Or else the next models would not benefit from SB.)
+			if(!isAugmented())
+				solver.activateSBP();												
+			
+			return retVal;
+		}
+		
+		/**
+		 * Partitions wantToAdd among the given number of copies of the formula's solver, and
+		 * finds the consistent facts of each part on the thread pool of the MinSolver. Each fact
+		 * is consistent iff it is consistent with the formula and preservedFacts alone, so the 
+		 * union of the parts is the result of the sequential search.
+		 * @return the consistent facts among wantToAdd
+		 * @throws TimeoutException
+		 * @throws ContradictionException
+		 */
+		private Set<Integer> getConsistentFactsInParallel(final ConsistentFactEngine engine, final BitSet preserved, 
+				final Set<Integer> preservedFacts, Set<Integer> wantToAdd, int threads)
+				throws TimeoutException, ContradictionException
+		{
+			final MinSATSolver[] solvers = minSolver.formulaCopies(translation, threads);
+			
+			// Deal the candidates out in order, so that every part gets facts of every relation.
+			int[] candidates = toIntCollection(wantToAdd);
+			Arrays.sort(candidates);
+			List<Set<Integer>> parts = new ArrayList<Set<Integer>>(threads);
+			for(int i = 0; i < threads && i < candidates.length; i++)
+				parts.add(new HashSet<Integer>());
+			for(int i = 0; i < candidates.length; i++)
+				parts.get(i % parts.size()).add(candidates[i]);
+			
+			List<Future<Set<Integer>>> results = new ArrayList<Future<Set<Integer>>>(parts.size());
+			ExecutorService pool = minSolver.consistentFactsPool(threads);
+			for(int i = 0; i < parts.size(); i++)
+			{
+				final MinSATSolver aSolver = solvers[i];
+				final Set<Integer> part = parts.get(i);
+				results.add(pool.submit(new Callable<Set<Integer>>() {
+					public Set<Integer> call() throws TimeoutException, ContradictionException {
+						return findConsistentFacts(aSolver, engine, preserved, new ArrayList<Integer>(preservedFacts), part);
+					}
+				}));
+			}
+			
+			Set<Integer> retVal = new HashSet<Integer>();
+			try {
+				for(Future<Set<Integer>> result : results)
+					retVal.addAll(result.get());
+			} catch (InterruptedException e) {
+				for(Future<Set<Integer>> result : results)
+					result.cancel(true);
+				throw new AbortedException(e);
+			} catch (ExecutionException e) {
+				final Throwable cause = e.getCause();
+				if(cause instanceof TimeoutException)
+					throw (TimeoutException)cause;
+				if(cause instanceof ContradictionException)
+					throw (ContradictionException)cause;
+				if(cause instanceof RuntimeException)
+					throw (RuntimeException)cause;
+				throw new RuntimeException(cause);
+			}
+			return retVal;
+		}
+		
+		/**
+		 * Finds the facts of wantToAdd that are consistent with the clauses of the given solver 
+		 * and the given unit clauses, by asking for a model with at least one of the facts that 
+		 * have not been found yet, until there are none left or the solver returns UNSAT.
+		 * Every model found is given to the engine, and so is the nogood of the final UNSAT.
+		 * @requires unitClauses contains the facts in preserved, and otherwise only negated guards
+		 * @effects unitClauses and wantToAdd are modified
+		 * @return the consistent facts among wantToAdd
+		 * @throws TimeoutException
+		 * @throws ContradictionException
+		 */
+		private static Set<Integer> findConsistentFacts(MinSATSolver solver, ConsistentFactEngine engine, BitSet preserved,
+				List<Integer> unitClauses, Set<Integer> wantToAdd)
+				throws TimeoutException, ContradictionException
+		{
+			Set<Integer> retVal = new HashSet<Integer>();
+			boolean wasSatisfiable = false;
+								
+			//JOptionPane.showMessageDialog(null, wantToAdd+"\n"+preservedFacts);
+			
+			// Loop while (a) there are facts left to find and (b) still satisfiable.
+			do
+			{
+				// Add a disjunction for the current set of literals we want to find:
+				IConstr removeWTA = null;
+				//System.out.println("Adding WTA: "+wantToAdd);
+				if(wantToAdd.size() > 1)
+				{
+					removeWTA = solver.addConstraint(toIntCollection(wantToAdd));
 				}
 				else
 				{
@@ -1303,7 +1940,16 @@ public final class MinSolver {
 						unitClauses.add(onlyOne);
 				}
 				
-				wasSatisfiable = solver.solve(toIntCollection(unitClauses));		
+				final int[] assumptions = toIntCollection(unitClauses);
+				try{
+					wasSatisfiable = solver.solve(assumptions, MinFlightRecorder.Purpose.CONSISTENT_FACT);
+				}
+				catch(MinTimeoutException e){
+					// Keep the shared solver clean if the SAT call was stopped, too.
+					if(removeWTA != null)
+						solver.removeConstraint(removeWTA);
+					throw e;
+				}
 				
 				//JOptionPane.showMessageDialog(null, "sat="+wasSatisfiable+"; unitClauses="+unitClauses);
 
@@ -1325,7 +1971,12 @@ public final class MinSolver {
 					}
 
 					wantToAdd.removeAll(foundAugments);
+					engine.addModel(solver);
 				}	
+				else
+				{
+					learnNogood(solver, engine, preserved, assumptions, wantToAdd);
+				}
 				
 				// Remove the targets for this iteration (needed to keep the shared solver clean)
 				if(removeWTA != null)
@@ -1334,12 +1985,44 @@ public final class MinSolver {
 			}
 			while(wantToAdd.size() > 0 && wasSatisfiable);
 			
-			// If this is an un-augmented iterator, re-activate symmetry-breaking
-			// (Or else the next models would not benefit from SB.)
-			if(!isAugmented())
-				solver.activateSBP();												
+			return retVal;
+		}
+		
+		/**
+		 * After the solver has found no model with the given assumptions and at least one of 
+		 * wantToAdd, tells the engine that there is none with any of wantToAdd and the preserved 
+		 * facts in the failed-assumption core of the solver. The other assumptions in the core
+		 * are negated guards, which only ever disable clauses, so they can be left out.
+		 * If the core is smaller than the assumptions, the solver is asked to confirm it first, 
+		 * since SAT4J can leave a core from an earlier call.
+		 * @requires wantToAdd is still required by a clause, or is the last unit of assumptions
+		 */
+		private static void learnNogood(MinSATSolver solver, ConsistentFactEngine engine, BitSet preserved, 
+				int[] assumptions, Set<Integer> wantToAdd)
+		{
+			final int[] explanation = solver.unsatExplanation();
+			if(explanation == null)
+				return;
 			
-			return toIntCollection(retVal);
+			final BitSet core = new BitSet();
+			for(int lit : explanation)
+				if(lit > 0 && preserved.get(lit))
+					core.set(lit);
+			
+			if(core.cardinality() < preserved.cardinality() && solver.solve(explanation, false, MinFlightRecorder.Purpose.CONSISTENT_FACT))
+				return;
+			engine.addNogood(core, wantToAdd);
+		}
+		
+		/**
+		 * Makes the given solution, which this iterator returned before, the one that augmentation
+		 * and consistent facts refer to. Callers that fetch solutions ahead of the one they show
+		 * (e.g., the GUI) use this to go back to the solution shown. Unsatisfiable solutions are ignored.
+		 * @effects solution.sat() => this.lastSatSolutionFound' = solution
+		 */
+		public void setCurrentSolution(MinSolution solution) {
+			if(solution.sat())
+				this.lastSatSolutionFound = solution;
 		}
 		
 		/**
@@ -1366,10 +2049,13 @@ public final class MinSolver {
 			if(last != null)
 				this.lastSolution = last;
 			
-			if(last.instance() != null)
+			if(last.sat())
 			{
 				this.lastSatSolutionFound = last;
 			}			
+			
+			if(extraOptions.statisticsListener() != null)
+				extraOptions.statisticsListener().solved(last);
 		}
 		
 		/**
@@ -1380,15 +2066,98 @@ public final class MinSolver {
 		}
 		
 		//Helpers:
+		/**
+		 * Returns a new set with the augments, the cone-restriction units and the guard of 
+		 * this iterator, i.e., the unit clauses that are passed to the solver as assumptions.
+		 * The guards of the other live iterators are assumed false.
+		 */
+		private IntSet unitAssumptions(){
+			IntSet units = new IntTreeSet(coneRestrictionUnits);
+			if(augments != null){
+				for(int i = 0; i < augments.length; i++)
+					units.add(augments[i]);
+			}
+			addGuardAssumptions(units, guard);
+			return units;
+		}
+		
+		/**
+		 * Adds the given guard (if not 0) and the negation of every other live guard to units. 
+		 * A guard that is not assumed could be set either way by the solver, and its 
+		 * saved phase would make it enforce the clauses of an inactive iterator.
+		 */
+		private void addGuardAssumptions(IntSet units, int activeGuard){
+			for(IntIterator it = minSolver.liveGuards.iterator(); it.hasNext(); ){
+				final int aGuard = it.next();
+				units.add(aGuard == activeGuard ? aGuard : -aGuard);
+			}
+		}
+		
+		/**
+		 * Returns the guard of this iterator, allocating it in the given solver if needed.
+		 */
+		private int guard(MinSATSolver theSolver){
+			if(guard == 0){
+				guard = theSolver.newActivationLiteral();
+				minSolver.liveGuards.add(guard);
+			}
+			return guard;
+		}
+		
+		/**
+		 * Removes the clauses guarded by this iterator from the solver. Called once the iterator
+		 * is exhausted or closed: it will never solve again, so its guarded clauses are dead weight,
+		 * and the other iterators no longer need to assume its guard false. Also called when a SAT
+		 * call of a minimization is stopped, whose guarded clauses must not outlive it.
+		 */
+		private void retireGuard(){
+			if(guard == 0)
+				return;
+			translation.cnf().retireActivationLiteral(guard);
+			minSolver.liveGuards.remove(guard);
+			guard = 0;
+		}
+		
+		/**
+		 * Releases what this iterator keeps in the shared solver, for an iterator that is dropped 
+		 * before it is exhausted (e.g. an augmentation that is backtracked from). Its guard is retired,
+		 * so the clauses it guards are removed and the other iterators stop assuming it false,
+		 * and its cone restrictions are removed if it is the active iterator. Afterwards, 
+		 * hasNext() returns false and next() throws an IllegalStateException. Does nothing if the 
+		 * iterator is already closed. If this iterator owns its translation, the translation is freed
+		 * (see MinTranslation.free()); its CNF is kept, since augmented iterators share it.
+		 * @effects this iterator no longer constrains the solver
+		 */
+		public void close(){
+			if(closed)
+				return;
+			closed = true;
+			if(minSolver.activeIterator == this){
+				removeAllConstraints();
+				minSolver.activeIterator = null;
+			}
+			retireGuard();
+			freeTranslation();
+		}
+		
+		/**
+		 * Frees the translation of this iterator, once it is exhausted or closed, if it owns it.
+		 * This only releases the log file of the translation; augmented iterators keep solving its CNF.
+		 */
+		private void freeTranslation(){
+			if(ownsTranslation && translation != null)
+				translation.free();
+		}
+		
 		/**
 		 * Considers all the constraints.
 		 * @throws ContradictionException
 		 */
 		private void addAllClauses() throws ContradictionException
 		{
-			for(Set<Integer> aClause: coneRestrictionClauses)
+			for(int i = 0; i < coneRestrictionClauses.size(); i++)
 			{
-				coneRestrictionConstraints.add(((MinSATSolver)translation.cnf()).addConstraint(toIntCollection(aClause)));					
+				coneRestrictionConstraints.add(translation.cnf().addConstraint(coneRestrictionClauses.get(i)));					
 			}
 		}
 		
@@ -1396,12 +2165,10 @@ public final class MinSolver {
 		 * Removes all the cone restriction constraints of this iterator.
 		 */
 		private void removeAllConstraints(){
-			Iterator<IConstr> it = coneRestrictionConstraints.iterator();
-			while(it.hasNext()){
-				IConstr temp = it.next();
+			for(IConstr temp : coneRestrictionConstraints){
 				translation.cnf().removeConstraint(temp);
-				it.remove();
 			}
+			coneRestrictionConstraints.clear();
 		}		
 		
 		private static int[] toIntCollection(Collection<Integer> integers)
@@ -1416,22 +2183,6 @@ public final class MinSolver {
 		    return ret;
 		}
 		
-		/**
-		 * Converts a list of integers to an ArrayList.
-		 * @param list the list.
-		 * @return the ArrayList containing the elements of list.
-		 */
-		private static Set<Integer> toSet(int[] list){
-			Set<Integer> retVal = new HashSet<Integer>();
-			if(list != null){
-				for(int i = 0; i < list.length; i++){
-					retVal.add(list[i]);
-				}
-			}
-			
-			return retVal;
-		}
-		
 		/**
 		 * Returns all the atoms in a TupleSet
 		 * @param tuples the input TupleSet
@@ -1447,7 +2198,329 @@ public final class MinSolver {
 			return atoms;
 		}
 	}
-	
+
+	/**
+	 * An iterator over all minimal solutions of a translation, found by several workers.
+	 * The search space is split into cubes, i.e. assignments to the primary variables that occur
+	 * most often in the CNF. Every worker has its own copy of the solver, with the SBP, and takes
+	 * cubes until there are none left. In a cube, it asks for a model of the SBP and the cube that
+	 * is outside every cone it knows, and minimizes that model over the whole formula, without the
+	 * SBP or the cube. The cone restrictions are kept in one store shared by all workers: a worker
+	 * only reports a minimal model whose cone restriction is not stored yet, and imports the clauses
+	 * stored by the others before every solve.
+	 *
+	 * Any model below a model outside the known cones is outside them too, and a worker only leaves
+	 * a cube once the cube has no model outside the cones it knows. So when every cube is done, the
+	 * SBP has no model outside the stored cones, which is where MinSolutionIterator stops too.
+	 */
+	public static final class ParallelMinSolutionIterator implements Iterator<MinSolution> {
+		/** The number of cubes per worker, so that a worker with easy cubes takes more of them. */
+		private static final int CUBES_PER_THREAD = 4;
+
+		private final MinTranslation translation;
+		private final Bounds origBounds;
+		private final Options options;
+		private final long translTime;
+
+		/** The cubes, as assumptions over primary variables; nextCube is the index of the next free one. */
+		private final int[][] cubes;
+		private final AtomicInteger nextCube = new AtomicInteger(0);
+
+		/** The cone restrictions of the models found by all workers. Guarded by itself. */
+		private final ConeRestrictionClauses coneRestrictionClauses = new ConeRestrictionClauses();
+
+		/** 
+		 * The solutions found and not returned yet, then an unsatisfiable solution once all workers are done.
+		 * A worker takes a permit of room before it adds a solution, and next() gives it back when it returns
+		 * one, so the workers stay at most one solution each ahead of a full queue, and the unsatisfiable 
+		 * solution always fits.
+		 */
+		private final BlockingQueue<MinSolution> solutions;
+		private final Semaphore room;
+		private final Thread[] workers;
+		/** The number of workers that are not done yet. Guarded by this. */
+		private int runningWorkers;
+		/** The first exception thrown by a worker, if any. */
+		private volatile Throwable failure = null;
+
+		private long startSolve;
+		private MinSolution unsatSolution = null;
+
+		/**
+		 * Builds the instances of the solutions from their primary variables, when they are asked for.
+		 */
+		private final MinSolution.InstanceBuilder instanceBuilder = new MinSolution.InstanceBuilder() {
+			public Instance build(int[] propositionalModel) {
+				return padInstance(translation.interpret(propositionalModel), origBounds);
+			}
+		};
+
+		/**
+		 * Constructs an iterator over the minimal solutions of the given translation, and
+		 * starts the given number of workers on it.
+		 * @requires threads > 0
+		 */
+		ParallelMinSolutionIterator(MinTranslation translation, Bounds origBounds, Options options, long translTime, int threads) {
+			this.translation = translation;
+			this.origBounds = origBounds;
+			this.options = options;
+			this.translTime = translTime;
+			this.cubes = cubes(translation, threads);
+			// Computed here, so that the workers only read them.
+			translation.permutationArrays();
+
+			this.solutions = new ArrayBlockingQueue<MinSolution>(threads + 1);
+			this.room = new Semaphore(threads);
+			this.workers = new Thread[threads];
+			this.runningWorkers = threads;
+			for(int i = 0; i < threads; i++) {
+				workers[i] = new Thread(new Runnable() {
+					public void run() {
+						try {
+							enumerate();
+						} catch (ContradictionException e) {
+							// The known cones cover every model: nothing is left in any cube.
+						} catch (Throwable t) {
+							if(failure == null)
+								failure = t;
+						} finally {
+							workerDone();
+						}
+					}
+				}, "minimal-models-" + (i + 1));
+				workers[i].setDaemon(true);
+			}
+			this.startSolve = System.currentTimeMillis();
+			for(Thread worker : workers)
+				worker.start();
+		}
+
+		/**
+		 * Returns the cubes for the given number of threads: every assignment to the k primary variables
+		 * with the most occurrences in the CNF of the translation, where k is the least number such that
+		 * there are at least CUBES_PER_THREAD cubes per thread (or the number of primary variables).
+		 */
+		private static int[][] cubes(MinTranslation translation, int threads) {
+			final int primary = translation.numPrimaryVariables();
+			int k = 0;
+			while((1 << k) < CUBES_PER_THREAD * threads && k < primary)
+				k++;
+
+			final int[] occurrences = translation.cnf().variableOccurrences();
+			final Integer[] vars = new Integer[primary];
+			for(int i = 0; i < primary; i++)
+				vars[i] = i + 1;
+			Arrays.sort(vars, new Comparator<Integer>() {
+				public int compare(Integer v1, Integer v2) {
+					if(occurrences[v1] != occurrences[v2])
+						return (occurrences[v1] > occurrences[v2]) ? -1 : 1;
+					return v1.compareTo(v2);
+				}
+			});
+
+			final int[][] result = new int[1 << k][k];
+			for(int c = 0; c < result.length; c++)
+				for(int j = 0; j < k; j++)
+					result[c][j] = (((c >> j) & 1) == 0) ? -vars[j] : vars[j];
+			return result;
+		}
+
+		/**
+		 * Returns true if there is another solution, i.e. the unsatisfiable solution
+		 * at the end has not been returned yet.
+		 * @see java.util.Iterator#hasNext()
+		 */
+		public boolean hasNext() {
+			return (unsatSolution == null);
+		}
+
+		/**
+		 * Returns the next solution found by a worker, waiting for one if needed.
+		 * Once all workers are done, returns an unsatisfiable solution.
+		 * @throws AbortedException - a worker failed, or the calling thread was interrupted
+		 * while waiting (which also cancels the workers)
+		 * @see java.util.Iterator#next()
+		 */
+		public MinSolution next() {
+			if (!hasNext()) return unsatSolution;
+
+			final MinSolution solution;
+			try {
+				solution = solutions.take();
+			} catch (InterruptedException e) {
+				cancel();
+				throw new AbortedException(e);
+			}
+			if (solution.sat())
+				room.release();
+			else {
+				unsatSolution = solution;
+				// All the workers are done with the translation.
+				translation.free();
+				if (failure != null)
+					throw new AbortedException(failure);
+			}
+			return solution;
+		}
+
+		/**
+		 * Stops the workers before they look for their next model. The solutions in the queue
+		 * are still returned (but not one that a worker was waiting to add), and the iterator 
+		 * then ends with an unsatisfiable solution.
+		 */
+		public void cancel() {
+			for(Thread worker : workers)
+				worker.interrupt();
+		}
+
+		/**
+		 * @see java.util.Iterator#remove()
+		 */
+		public void remove() {
+			throw new UnsupportedOperationException();
+		}
+
+		/**
+		 * Records that a worker is done; the last one adds the unsatisfiable solution.
+		 */
+		private synchronized void workerDone() {
+			if(--runningWorkers == 0) {
+				final MinStatistics stats = new MinStatistics(translation, translTime, System.currentTimeMillis() - startSolve);
+				solutions.add(unsat(translation, stats));
+			}
+		}
+
+		/**
+		 * Takes cubes and enumerates their minimal models until there are no cubes left,
+		 * with a new copy of the solver of the translation.
+		 * @throws ContradictionException - the stored cone restrictions cover every model
+		 */
+		private void enumerate() throws ContradictionException {
+			final MinSATSolver solver = translation.cnf().copyOfFormula(true);
+			final int primary = translation.numPrimaryVariables();
+			final int[] notModel = new int[primary], permNotModel = new int[primary];
+			int imported = 0;
+
+			for(int c = nextCube.getAndIncrement(); c < cubes.length; c = nextCube.getAndIncrement()) {
+				while(!Thread.currentThread().isInterrupted()) {
+					imported = importConeRestrictions(solver, imported);
+
+					final long start = System.currentTimeMillis();
+					solver.activateSBP();
+					if(!solver.solve(cubes[c], MinFlightRecorder.Purpose.FIND))
+						break;
+					solver.deactivateSBP();
+					final int satInvocations = minimize(solver, primary);
+
+					// Negate the positive diagram of the minimal model, going down from
+					// the last variable to keep the literals sorted.
+					int length = 0;
+					for(int i = primary; i >= 1; i--)
+						if(solver.valueOf(i))
+							notModel[length++] = -i;
+					if(!addConeRestrictions(notModel, length, permNotModel))
+						continue; // another worker found it first
+
+					final MinStatistics stats = new MinStatistics(translation, translTime,
+							System.currentTimeMillis() - start, satInvocations);
+					final int[] primaryModel = Arrays.copyOf(solver.getLastModel(), primary);
+					try {
+						room.acquire();
+					} catch (InterruptedException e) {
+						return;
+					}
+					solutions.add(MinSolution.satisfiable(stats, instanceBuilder, null, primaryModel));
+				}
+				if(Thread.currentThread().isInterrupted())
+					return;
+			}
+		}
+
+		/**
+		 * Minimizes the model in the given solver over the whole formula, by asking for a model that loses
+		 * some positive primary variable of the current one, and keeps the negative ones, until the solver
+		 * returns UNSAT. The loseSomethingPositive clauses are added for good, since every one of them is
+		 * subsumed by the cone restriction of the minimal model, which the solver gets anyway.
+		 * @requires the last call to solver.solve(..) returned true, and the SBP is not active
+		 * @return the number of SAT solver invocations, including the one that found the model.
+		 * @throws ContradictionException
+		 */
+		private static int minimize(MinSATSolver solver, int primary) throws ContradictionException {
+			final int[] loseSomethingPositive = new int[primary];
+			final int[] unitClauses = new int[primary];
+			int iterationCounter = 1;
+			int units;
+			do
+			{
+				int length = 0;
+				units = 0;
+				for(int i = 1; i <= primary; i++) {
+					if(solver.valueOf(i))
+						loseSomethingPositive[length++] = -i;
+					else
+						unitClauses[units++] = -i;
+				}
+
+				if(length == 0)
+					break;
+				if(length == 1)
+					unitClauses[units++] = loseSomethingPositive[0];
+				else
+					solver.addConstraint(Arrays.copyOf(loseSomethingPositive, length));
+
+				iterationCounter++;
+			}
+			while(solver.solve(Arrays.copyOf(unitClauses, units), MinFlightRecorder.Purpose.MINIMIZE));
+
+			return iterationCounter;
+		}
+
+		/**
+		 * Adds the clauses stored since the given number of them to the given solver.
+		 * @return the number of stored clauses that the solver has now
+		 * @throws ContradictionException - the solver has no model left
+		 */
+		private int importConeRestrictions(MinSATSolver solver, int imported) throws ContradictionException {
+			final int[][] clauses;
+			synchronized(coneRestrictionClauses) {
+				clauses = new int[coneRestrictionClauses.size() - imported][];
+				for(int i = 0; i < clauses.length; i++)
+					clauses[i] = coneRestrictionClauses.get(imported + i);
+			}
+			for(int[] clause : clauses)
+				solver.addConstraint(clause);
+			return imported + clauses.length;
+		}
+
+		/**
+		 * Stores the cone restriction for the given negated positive diagram, and for its images under
+		 * the broken symmetries (as many as MinSolutionIterator adds), unless it is already stored.
+		 * @param notModel the literals of the negated positive-diagram, in notModel[0..length)
+		 * @param permNotModel a buffer of notModel.length literals
+		 * @requires notModel[0..length) is sorted in ascending order and has no duplicates
+		 * @return true if the cone restriction was not stored yet
+		 */
+		private boolean addConeRestrictions(int[] notModel, int length, int[] permNotModel) {
+			synchronized(coneRestrictionClauses) {
+				if(coneRestrictionClauses.contains(notModel, length))
+					return false;
+				coneRestrictionClauses.add(Arrays.copyOf(notModel, length));
+
+				int permCounter = 0;
+				for(int[] aPerm : translation.permutationArrays())
+				{
+					if(permCounter >= options.symmetryBreaking())
+						break;
+					final int permLength = MinSolutionIterator.permuteNegatedPositiveDiagram(notModel, length, aPerm, permNotModel);
+					if(!coneRestrictionClauses.contains(permNotModel, permLength))
+						coneRestrictionClauses.add(Arrays.copyOf(permNotModel, permLength));
+					permCounter++;
+				}
+				return true;
+			}
+		}
+	}
+
 	/**
 	 * Handles the translation of propositional elements to relational facts and vice versa.
 	 * Caution: Pass the skolem bounds here.
@@ -1455,51 +2528,128 @@ public final class MinSolver {
 	 *
 	 */
 	public static class MinTwoWayTranslator{
-		private static Map<Integer, Relation> buildVarToRelationMap(
-				MinTranslation translation, Bounds aBounds){
-			Map<Integer, Relation> mapVarToRelation = new HashMap<Integer, Relation>(); 
-			for(Relation r : aBounds.relations())
-			{
-				IntSet varsForThisRelation = translation.primaryVariables(r);
-				
-				//if there is no primary variable for this relation, continue:
-				if(varsForThisRelation == null)
-					continue;
-				
-				IntIterator itVarsForThis = varsForThisRelation.iterator();
-				while(itVarsForThis.hasNext())
-				{
-					mapVarToRelation.put(itVarsForThis.next(), r);
+		/**
+		 * A bidirectional index between the primary variables of a translation and the tuples 
+		 * they stand for. The variables of a relation r are contiguous, and the i-th of them stands 
+		 * for the i-th tuple of the upper bound of r that is not in its lower bound (as in 
+		 * MinTranslation.interpret()). So the index keeps, for every variable, its relation, and for 
+		 * every relation, its first variable and the (sorted) indices of those tuples. Built once per 
+		 * translation.
+		 */
+		private static final class VarTupleIndex {
+			private final TupleFactory factory;
+			/** relations[var] is the relation of the primary variable var (null if it has none) */
+			private final Relation[] relations;
+			/** The variables and the free tuples of each relation that has primary variables. */
+			private final Map<Relation, RelationVars> relationVars = new HashMap<Relation, RelationVars>();
+			
+			/** The primary variables of a single relation. */
+			private static final class RelationVars {
+				final int firstVar;
+				/** tupleIndices[i] is the index of the tuple of the variable firstVar + i (sorted) */
+				final int[] tupleIndices;
+				RelationVars(int firstVar, int[] tupleIndices) {
+					this.firstVar = firstVar;
+					this.tupleIndices = tupleIndices;
 				}
+			}
+			
+			VarTupleIndex(MinTranslation translation, Bounds aBounds) {
+				this.factory = aBounds.universe().factory();
+				this.relations = new Relation[translation.numPrimaryVariables() + 1];
+				for(Relation r : aBounds.relations())
+				{
+					IntSet varsForThisRelation = translation.primaryVariables(r);
+					
+					//if there is no primary variable for this relation, continue:
+					if(varsForThisRelation == null)
+						continue;
+					
+					IntIterator itVarsForThis = varsForThisRelation.iterator();
+					while(itVarsForThis.hasNext())
+					{
+						final int var = itVarsForThis.next();
+						if(var < relations.length)
+							relations[var] = r;
+					}
 					
+					// Only the tuples of the upper bound that are not in the lower bound have variables.
+					TupleSet upperBound = aBounds.upperBound(r);
+					if(upperBound != null){
+						IntSet free = new IntTreeSet(upperBound.indexView());
+						free.removeAll(aBounds.lowerBound(r).indexView());
+						relationVars.put(r, new RelationVars(varsForThisRelation.min(), free.toArray()));
+					}
+				}
+			}
+			
+			/**
+			 * Returns the relation of the given primary variable, or null if it has none.
+			 */
+			Relation relation(int var) {
+				return (var > 0 && var < relations.length) ? relations[var] : null;
+			}
+			
+			/**
+			 * Returns the tuple that the given primary variable stands for.
+			 * @requires relation(var) != null
+			 */
+			Tuple tuple(int var) {
+				final Relation r = relations[var];
+				final RelationVars rv = relationVars.get(r);
+				
+				// The relation's upper bound has a list of tuple indices. (var - firstVar) is an index
+				// into that list of indices. (If our upper bound was _everything_, would be no need to de-reference.)
+				return factory.tuple(r.arity(), rv.tupleIndices[var - rv.firstVar]);
+			}
+			
+			/**
+			 * Returns the primary variable that stands for the given tuple of the given relation,
+			 * or -1 if there is none.
+			 */
+			int variable(Relation r, Tuple tuple) {
+				final RelationVars rv = relationVars.get(r);
+				
+				//if there is no primary variable for this relation, return -1
+				if(rv == null || tuple.arity() != r.arity() || !tuple.universe().equals(factory.universe()))
+					return -1;
+				
+				final int index = Arrays.binarySearch(rv.tupleIndices, tuple.index());
+				return (index < 0) ? -1 : rv.firstVar + index;
 			}
 			
-			return mapVarToRelation;
+			@Override
+			public String toString() {
+				return Arrays.toString(relations);
+			}
+		}
+		
+		/**
+		 * Builds the index between the primary variables of the given translation
+		 * and the tuples of the given bounds.
+		 */
+		private static VarTupleIndex buildVarTupleIndex(MinTranslation translation, Bounds aBounds){
+			return new VarTupleIndex(translation, aBounds);
 		}
 		
 		/**
 		 * Used for debugging purposes. Print the bijection between propositional
 		 * variables and relational facts as a string.
 		 * @param translation
-		 * @param aBounds
-		 * @param mapVarToRelation
+		 * @param index
 		 * @return
 		 */
 		@SuppressWarnings("unused")
-		private static String printTranslation(MinTranslation translation, Bounds aBounds,
-				Map<Integer, Relation> mapVarToRelation)
+		private static String printTranslation(MinTranslation translation, VarTupleIndex index)
 		{
 			String outs="";
 			
 			// Now that we have the mapping from var --> its relation, we can find the tuple:		
 			for(int theVar = 1; theVar <= translation.numPrimaryVariables(); theVar++)
 			{					
-				Relation myRelation = mapVarToRelation.get(theVar);
-				
-				IntSet s = translation.primaryVariables(myRelation);
+				Relation myRelation = index.relation(theVar);
 				
-				Tuple myTuple = getTupleForPropVariable(
-							aBounds, translation, s, myRelation, theVar);
+				Tuple myTuple = index.tuple(theVar);
 									
 				outs += (theVar+": "+myTuple+" "+myRelation+" | ");
 				if(theVar % 4 == 0)
@@ -1512,31 +2662,34 @@ public final class MinSolver {
 		
 		/**
 		 * Converts a set of primary propositional variables into set of relational expressions.
-		 * @param translation the translation.
 		 * @param aBounds the bounds.
-		 * @param mapVarToRelation a map that maps the propositional variables to the relations that they appear in.
+		 * @param index the index between the primary variables and the tuples of aBounds.
 		 * @param theVars a VectInt of the variables to convert.
 		 * @return
 		 */
-		private static Instance translatePropositions(MinTranslation translation, Bounds aBounds,
-				Map<Integer, Relation> mapVarToRelation, int[] theVars)
+		private static Instance translatePropositions(Bounds aBounds, VarTupleIndex index, int[] theVars)
 		{
-			// Populate an empty instance over the universe we're using:
-			Instance result = new Instance(aBounds.universe());
-
+			// Collect the tuples of each relation first: Instance.add overwrites what is already in the relation.
+			Map<Relation, TupleSet> contents = new LinkedHashMap<Relation, TupleSet>();
+			TupleFactory factory = aBounds.universe().factory();
+			
 			for(int i = 0; i < theVars.length; i++)
 			{	
-				Entry<Relation, TupleSet> entry = translateProposition(translation, aBounds, mapVarToRelation, theVars[i]);
-				Relation myRelation = entry.getKey();
-				TupleSet theContents = entry.getValue();
-				
-				TupleSet currentContents = result.tuples(myRelation);
-				if(currentContents != null) // returns null instead of empty set!!
-					theContents.addAll(currentContents); 				
-
-				result.add(myRelation, theContents);
+				Relation myRelation = index.relation(theVars[i]);
+				TupleSet theContents = contents.get(myRelation);
+				if(theContents == null)
+				{
+					theContents = factory.noneOf(myRelation.arity());
+					contents.put(myRelation, theContents);
+				}
+				theContents.add(index.tuple(theVars[i]));
 			}
 			
+			// Populate an empty instance over the universe we're using:
+			Instance result = new Instance(aBounds.universe());
+			for(Entry<Relation, TupleSet> entry : contents.entrySet())
+				result.add(entry.getKey(), entry.getValue());
+			
 			// Set<RelationalFact> would be better than Instance. But for now use Instance
 			
 			// Return an instance (should not be interpreted as a model of the qry!!) that contains
@@ -1546,20 +2699,15 @@ public final class MinSolver {
 
 		/**
 		 * Converts a single primary propositional variable to a relational expression.
-		 * @param translation the translation.
 		 * @param bounds the bounds.
-		 * @param mapVarToRelation a map that maps the propositional variables to the relations that they appear in.
+		 * @param index the index between the primary variables and the tuples of bounds.
 		 * @param vars a propositional variable to convert.
 		 * @return a Map.Entry object mapping a Relation to a TupleSet.
 		 */
-		private static Entry<Relation, TupleSet> translateProposition(MinTranslation translation, Bounds bounds, 
-				Map<Integer, Relation> mapVarToRelation, final int var){
-			Relation myRelation = mapVarToRelation.get(var);
-
-			IntSet s = translation.primaryVariables(myRelation);
+		private static Entry<Relation, TupleSet> translateProposition(Bounds bounds, VarTupleIndex index, final int var){
+			Relation myRelation = index.relation(var);
 			
-			Tuple myTuple = getTupleForPropVariable(
-						bounds, translation, s, myRelation, var);
+			Tuple myTuple = index.tuple(var);
 				
 			// .add here is actually .set -- it overwrites what is already in the relation.
 			// So we CANNOT just do:			
@@ -1569,57 +2717,8 @@ public final class MinSolver {
 			return new SimpleEntry<Relation, TupleSet>(myRelation, theContents);
 		}
 		
-		private static Tuple getTupleForPropVariable(Bounds aBounds, MinTranslation theTranslation, IntSet s, Relation r, int theVar)
-		//throws MInternalNoBoundsException
-		{
-			// The relation's upper bound has a list of tuple indices. The "index" variable below is an index
-			// into that list of indices. (If our upper bound was _everything_, would be no need to de-reference.)
-	        int minVarForR = s.min();
-			
-			// Compute index: (variable - minvariable) of this relation's variables 
-	        int index = theVar - minVarForR;
-	        
-	        // OPT: How slow is this? May want to cache...
-	        int[] arr = aBounds.upperBound(r).indexView().toArray();
-	        
-	        TupleFactory factory = aBounds.universe().factory();   
-	        Tuple tup = factory.tuple(r.arity(), arr[index]);  
-
-	        //MCommunicator.writeToLog("\ngetTupleForPropVariable: thisTuple="+tup+" for "+theVar+". Relation had vars: "+s+" and the offset was "+minVarForR+
-	        //		"leaving index="+index+". Upper bound indexview: "+Arrays.toString(arr)+
-	        //		"\nThe de-referenced tuple index is: "+arr[index]);
-
-	        return tup;
-		}
-		
-		private static int getPropVariableForTuple(Bounds aBounds, MinTranslation translation, Relation r, Tuple tuple){
-			IntSet s = translation.primaryVariables(r);
-
-			//if there is no primary variable for this relation, return -1
-			if(s == null)
-				return -1;
-			
-			TupleSet upperBound = aBounds.upperBound(r);
-			
-			if(upperBound == null)
-				return -1;
-			
-			int[] arr = upperBound.indexView().toArray();
-
-			
-	        TupleFactory factory = aBounds.universe().factory();
-	        
-	        int index = -1;
-	        //Not the best way of doing this!
-	        for(int i = 0; i < arr.length; i++){
-	        	if(tuple.equals(factory.tuple(r.arity(), arr[i])))
-	        		index = i;
-	        }
-	        
-	        if(index == -1)
-	        	return -1;
-	        
-			return s.min() + index;//s.min() + tuple.index();
+		private static int getPropVariableForTuple(VarTupleIndex index, Relation r, Tuple tuple){
+			return index.variable(r, tuple);
 		}
 	}
 	
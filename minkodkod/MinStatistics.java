@@ -38,25 +38,60 @@ public final class MinStatistics {
 	
 	private final int vars, pVars, clauses;
 	private final long translation, solving; 
+	private final int satInvocations;
+	private final MinPhaseStatistics phases;
 	
 	/**
 	 * Constructs a new Statistics object using the provided values.
 	 */
 	MinStatistics(int primaryVariables, int variables, int clauses, 
 			   long translationTime, long solvingTime) {
+		this(primaryVariables, variables, clauses, translationTime, solvingTime, 0);
+	}
+	
+	/**
+	 * Constructs a new Statistics object using the provided values.
+	 */
+	MinStatistics(int primaryVariables, int variables, int clauses, 
+			   long translationTime, long solvingTime, int satInvocations) {
+		this(primaryVariables, variables, clauses, translationTime, solvingTime, satInvocations, null);
+	}
+	
+	/**
+	 * Constructs a new Statistics object using the provided values.
+	 */
+	MinStatistics(int primaryVariables, int variables, int clauses, 
+			   long translationTime, long solvingTime, int satInvocations, MinPhaseStatistics phases) {
 		this.pVars = primaryVariables;
 		this.vars = variables;
 		this.clauses = clauses;
 		this.translation = translationTime;
 		this.solving = solvingTime;
+		this.satInvocations = satInvocations;
+		this.phases = phases;
 	}
 	
 	/**
 	 * Constructs a new Statistics object using the provided values.
 	 */
 	MinStatistics(MinTranslation translation, long translationTime, long solvingTime) { 
+		this(translation, translationTime, solvingTime, 0);
+	}
+	
+	/**
+	 * Constructs a new Statistics object using the provided values.
+	 */
+	MinStatistics(MinTranslation translation, long translationTime, long solvingTime, int satInvocations) { 
+		this(translation, translationTime, solvingTime, satInvocations, null);
+	}
+	
+	/**
+	 * Constructs a new Statistics object using the provided values.
+	 */
+	MinStatistics(MinTranslation translation, long translationTime, long solvingTime, int satInvocations, 
+			MinPhaseStatistics phases) { 
 		this(translation.numPrimaryVariables(), translation.cnf().numberOfVariables(), 
-				translation.cnf().numberOfClauses(), translationTime, solvingTime);
+				translation.cnf().numberOfClauses(), translationTime, solvingTime, satInvocations, phases);
 	}
 	
 	/**
@@ -111,6 +146,45 @@ public final class MinStatistics {
 		return solving;
 	}
 	
+	/**
+	 * Returns the number of SAT solver invocations spent on
+	 * finding and minimizing this solution (0 if unknown). 
+	 * Useful to compare solver configurations, e.g., 
+	 * {@link MinSATSolverFactory#setNegativePhaseOnPrimaryVariables(boolean)}.
+	 * @return the number of SAT solver invocations spent on
+	 * finding and minimizing this solution.
+	 */
+	public int satInvocations() {
+		return satInvocations;
+	}
+	
+	/**
+	 * Returns the statistics of the phases of the work that produced this solution,
+	 * or null if they were not recorded (e.g., for trivial solutions).
+	 * @return the statistics of the phases of the work that produced this solution.
+	 */
+	public MinPhaseStatistics phases() {
+		return phases;
+	}
+	
+	/**
+	 * Returns this Statistics object as a JSON object. Translation and solving
+	 * times are in miliseconds, the times of the phases in nanoseconds.
+	 * @return this Statistics object as a JSON object.
+	 */
+	public String toJSON() {
+		final StringBuilder ret = new StringBuilder();
+		ret.append("{\"variables\":").append(vars);
+		ret.append(",\"primaryVariables\":").append(pVars);
+		ret.append(",\"clauses\":").append(clauses);
+		ret.append(",\"translationTime\":").append(translation);
+		ret.append(",\"solvingTime\":").append(solving);
+		ret.append(",\"satInvocations\":").append(satInvocations);
+		if (phases != null)
+			ret.append(",\"phases\":").append(phases.toJSON());
+		return ret.append('}').toString();
+	}
+	
 	/**
 	 * Returns a string representation of this
 	 * Statistics object.
@@ -132,7 +206,9 @@ public final class MinStatistics {
 		ret.append(" ms").append(NEW_LINE);
 		ret.append("solving time: ");
 		ret.append(solving);
-		ret.append(" ms");
+		ret.append(" ms").append(NEW_LINE);
+		ret.append("SAT invocations: ");
+		ret.append(satInvocations);
 		return ret.toString();
 	}
 }
\ No newline at end of file
@@ -0,0 +1,16 @@
+package minkodkod;
+
+/**
+ * Receives the statistics of every solution of the MinSolutionIterators of a MinSolver,
+ * as a Reporter receives the progress of translation. Set with 
+ * {@link MinExtraOptions#setStatisticsListener(MinStatisticsListener)}.
+ * The listener is called on the thread that asked the iterator for the solution.
+ */
+public interface MinStatisticsListener {
+	/**
+	 * Called when an iterator has produced the given solution (an unsatisfiable one when it is out 
+	 * of solutions). Its statistics include {@link MinStatistics#phases()} unless the solution is trivial.
+	 * The instance of the solution may not be built yet, and should not be asked for here.
+	 */
+	void solved(MinSolution solution);
+}
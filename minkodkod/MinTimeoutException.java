@@ -0,0 +1,29 @@
+package minkodkod;
+
+/**
+ * Indicates that a SAT call was stopped before it finished, either because
+ * the solver ran out of time or because it was interrupted via 
+ * {@link MinSATSolver#interrupt()}. The solver remains usable once the interrupt
+ * is cleared, and so does an iterator whose SAT call was stopped: it drops the 
+ * model it was working on, with the clauses of its minimization, and the next 
+ * call to next() computes the solution again.
+ */
+public final class MinTimeoutException extends RuntimeException {
+
+	private static final long serialVersionUID = -3218541260411837764L;
+
+	/**
+	 * Constructs a timeout exception with the given message.
+	 */
+	MinTimeoutException(String message) {
+		super(message);
+	}
+
+	/**
+	 * Constructs a timeout exception with the given message and cause.
+	 */
+	MinTimeoutException(String message, Throwable cause) {
+		super(message, cause);
+	}
+
+}
@@ -39,7 +39,7 @@ import kodkod.util.ints.TreeSequence;
  */
 final class TrivialProof extends Proof {
 	private Map<Formula,Node> coreRoots;
-	private RecordFilter coreFilter;
+	private Set<Node> coreNodes;
 	
 	/**
 	 * Constructs a proof of unsatisfiability for the trivially unsatisfiable
@@ -49,7 +49,7 @@ final class TrivialProof extends Proof {
 	 */
 	TrivialProof(TranslationLog log) {
 		super(log);
-		this.coreFilter = null;
+		this.coreNodes = null;
 		this.coreRoots = null;
 	}
 	
@@ -58,15 +58,10 @@ final class TrivialProof extends Proof {
 	 * @see kodkod.engine.Proof#core()
 	 */
 	public final Iterator<TranslationRecord> core() { 
-		if (coreFilter==null) {
-			coreFilter = new RecordFilter() {
-				final Set<Node> coreNodes = NodePruner.relevantNodes(log(),  coreRoots==null ? log().roots() : coreRoots.keySet());
-				public boolean accept(Node node, Formula translated, int literal, Map<Variable, TupleSet> env) {
-					return coreNodes.contains(translated) ;
-				}
-			};
+		if (coreNodes==null) {
+			coreNodes = NodePruner.relevantNodes(log(),  coreRoots==null ? log().roots() : coreRoots.keySet());
 		}
-		return log().replay(coreFilter); 
+		return log().replay(coreNodes, RecordFilter.ALL); 
 	}
 
 	/**
@@ -141,7 +136,7 @@ final class TrivialProof extends Proof {
 			}
 		}
 		
-		coreFilter = null;
+		coreNodes = null;
 		assert coreRoots.size()==1 && rootLits.get(coreRoots.keySet().iterator().next())[0]==-Integer.MAX_VALUE || coreRoots.size()==2;
 	}
 
@@ -22,6 +22,7 @@
 package minkodkod.engine.fol2sat;
 
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -29,6 +30,7 @@ import kodkod.ast.Node;
 import kodkod.ast.Variable;
 import kodkod.engine.bool.BooleanConstant;
 import kodkod.engine.bool.BooleanMatrix;
+import kodkod.engine.bool.Int;
 import kodkod.util.nodes.AnnotatedNode;
 
 
@@ -37,20 +39,47 @@ import kodkod.util.nodes.AnnotatedNode;
  * In particular it determines which translations
  * to cache, when to throw them out of the cache, etc. 
  * 
+ * ALUMINUM: the cache can be given a budget, which bounds the total cost of the 
+ * translations that it keeps (see cost(Object)). When caching a translation exceeds
+ * the budget, the least recently used translations are thrown out until the total
+ * is within the budget again; a translation that is thrown out is recomputed if it
+ * is needed again. The cache counts its hits, misses and evictions.
+ * 
  * @specfield node: Node // node being translated
  * @specfield cached: node.*children  // the nodes whose translations are cached
  * @specfield cache: cached -> (Object ->lone Environment)
+ * @specfield budget: long
  * @author Emina Torlak
  */
 final class FOL2BoolCache {
 	private final Map<Node,Record> cache;
 	
+	/** The maximum total cost of the translations in the records. */
+	private final long budget;
+	/** The sentinel of the circular list of the records that have a translation, least recently used first. */
+	private final Record lru = new NoVarRecord();
+	private long total = 0;
+	private long hits = 0, misses = 0, evictions = 0;
+	
 	/**
-	 * Constructs a new translation cache for the given annotated node.
-	 * @effects this.node' = annotated.node 
+	 * Constructs a new translation cache for the given annotated node,
+	 * with no budget.
+	 * @effects this.node' = annotated.node && this.budget' = Long.MAX_VALUE
 	 */
-	@SuppressWarnings("unchecked") 
 	FOL2BoolCache(AnnotatedNode<? extends Node> annotated) {
+		this(annotated, Long.MAX_VALUE);
+	}
+	
+	/**
+	 * Constructs a new translation cache for the given annotated node,
+	 * with the given budget.
+	 * @effects this.node' = annotated.node && this.budget' = budget
+	 * @throws IllegalArgumentException - budget < 0
+	 */
+	@SuppressWarnings("unchecked") 
+	FOL2BoolCache(AnnotatedNode<? extends Node> annotated, long budget) {
+		if (budget < 0)
+			throw new IllegalArgumentException("budget < 0: " + budget);
 		final CacheCollector collector = new CacheCollector(annotated.sharedNodes());
 		annotated.node().accept(collector);
 
@@ -62,6 +91,8 @@ final class FOL2BoolCache {
 			else 
 				this.cache.put(e.getKey(), new MultiVarRecord(freeVars));
 		}
+		this.budget = budget;
+		lru.prev = lru.next = lru;
 	}
 
 	
@@ -75,7 +106,15 @@ final class FOL2BoolCache {
 	@SuppressWarnings("unchecked")
 	<T> T lookup(Node node, Environment<BooleanMatrix> env) {
 		final Record info = cache.get(node);
-		return info==null ? null : (T) info.get(env);
+		if (info==null) return null;
+		final Object translation = info.get(env);
+		if (translation==null) {
+			misses++;
+		} else {
+			hits++;
+			use(info);
+		}
+		return (T) translation;
 	}
 	
 	/**
@@ -85,15 +124,138 @@ final class FOL2BoolCache {
 	 * @effects node in this.cached => 
 	 *           this.cache' = this.cache ++ node->translation->env, 
 	 *           this.cache' = this.cache
+	 * @effects the least recently used translations are thrown out of this.cache 
+	 *           until the total cost of the remaining ones is at most this.budget 
 	 * @return translation
 	 */
 	final <T> T cache(Node node, T translation, Environment<BooleanMatrix> env) {
 		final Record info = cache.get(node);
 		if (info != null) {
 			info.set(translation, env);
+			total -= info.cost;
+			info.cost = cost(translation);
+			total += info.cost;
+			use(info);
+			while (total > budget) 
+				evict(lru.next);
 		}
 		return translation;
 	}
+	
+	/**
+	 * Returns the number of lookups that found a translation.
+	 * @return the number of calls to lookup(node, env) that returned a translation
+	 */
+	long hits() {
+		return hits;
+	}
+	
+	/**
+	 * Returns the number of lookups of a node in this.cached that found no translation.
+	 * @return the number of calls to lookup(node, env) with node in this.cached that returned null
+	 */
+	long misses() {
+		return misses;
+	}
+	
+	/**
+	 * Returns the number of translations thrown out to stay within this.budget.
+	 * @return the number of translations thrown out to stay within this.budget
+	 */
+	long evictions() {
+		return evictions;
+	}
+	
+	/**
+	 * Returns the cost of keeping the given translation: the number of non-FALSE entries of a 
+	 * BooleanMatrix, the number of bits of an Int, the sum of the costs of the elements of a
+	 * List (of the matrices of Decls), and 1 otherwise (for a BooleanValue).  The cost of a 
+	 * translation is at least 1.
+	 * @return the cost of keeping the given translation
+	 */
+	private static long cost(Object translation) {
+		long cost = 1;
+		if (translation instanceof BooleanMatrix) {
+			cost = ((BooleanMatrix) translation).density();
+		} else if (translation instanceof Int) {
+			cost = ((Int) translation).width();
+		} else if (translation instanceof List) {
+			cost = 0;
+			for(Object element : (List<?>) translation)
+				cost += cost(element);
+		}
+		return Math.max(1, cost);
+	}
+	
+	/**
+	 * Makes the given record, which has a translation, the most recently used one.
+	 * @effects the given record is at the end of the list of this.lru
+	 */
+	private void use(Record info) {
+		if (info.next != null) {
+			info.prev.next = info.next;
+			info.next.prev = info.prev;
+		}
+		info.prev = lru.prev;
+		info.next = lru;
+		lru.prev.next = info;
+		lru.prev = info;
+	}
+	
+	/**
+	 * Throws out the translation of the given record.
+	 * @effects no info.translation' && info is not in the list of this.lru
+	 */
+	private void evict(Record info) {
+		info.prev.next = info.next;
+		info.next.prev = info.prev;
+		info.prev = info.next = null;
+		info.translation = null;
+		total -= info.cost;
+		info.cost = 0;
+		evictions++;
+	}
+	
+	/**
+	 * The budget of the caches of a translation, and the sums of their counters. 
+	 * It is shared by the caches of the conjuncts that MinConjunctTranslator translates
+	 * concurrently; every cache has the whole budget. 
+	 */
+	static final class Budget {
+		final long cost;
+		private long hits = 0, misses = 0, evictions = 0;
+		
+		/**
+		 * Constructs a budget of the given cost, with no counts.
+		 * @throws IllegalArgumentException - cost < 0
+		 */
+		Budget(long cost) {
+			if (cost < 0)
+				throw new IllegalArgumentException("cost < 0: " + cost);
+			this.cost = cost;
+		}
+		
+		/**
+		 * Adds the counters of the given cache to the sums of this budget.
+		 */
+		synchronized void add(FOL2BoolCache cache) {
+			hits += cache.hits;
+			misses += cache.misses;
+			evictions += cache.evictions;
+		}
+		
+		synchronized long hits() {
+			return hits;
+		}
+		
+		synchronized long misses() {
+			return misses;
+		}
+		
+		synchronized long evictions() {
+			return evictions;
+		}
+	}
 		
 	/**
 	 * Collects the free variables of the nodes in a given AST whose
@@ -157,6 +319,9 @@ final class FOL2BoolCache {
 	 */
 	private static abstract class Record {
 		Object translation;
+		/** The cost of this.translation, and the neighbours of this record in the list of FOL2BoolCache.lru. */
+		long cost;
+		Record prev, next;
 		/**
 		 * Returns this.translation if the given environment
 		 * has the same mappings for the free variables of 
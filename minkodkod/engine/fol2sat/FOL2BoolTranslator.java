@@ -103,6 +103,26 @@ abstract class FOL2BoolTranslator implements ReturnVisitor<BooleanMatrix, Boolea
 		return (T) annotated.node().accept(translator);
 	}
 
+	/**
+	 * Translates the given annotated formula or expression into a boolean
+	 * formula or matrix, as translate(annotated, interpreter) does, with a cache 
+	 * that keeps translations of at most the given budget's cost, and adds the 
+	 * counters of the cache to the budget.
+	 * @requires interpreter.relations = AnnotatedNode.relations(annotated)
+	 * @return translate(annotated, interpreter)
+	 * @effects the hits, misses and evictions of the cache are added to the budget
+	 * @throws HigherOrderDeclException - annotated.node contains a higher order declaration
+	 * @throws UnboundLeafException - annotated.node refers to an undeclared variable 
+	 **/
+	@SuppressWarnings("unchecked")
+	static final <T> T translate(AnnotatedNode<? extends Node> annotated, LeafInterpreter interpreter, FOL2BoolCache.Budget budget) {
+		final FOL2BoolCache cache = new FOL2BoolCache(annotated, budget.cost);
+		final FOL2BoolTranslator translator = new FOL2BoolTranslator(cache, interpreter) {};
+		final T translation = (T) annotated.node().accept(translator);
+		budget.add(cache);
+		return translation;
+	}
+
 	/**
 	 * Translates the given annotated formula into a boolean
 	 * accumulator with respect to the given interpreter and logs the translation events to the given logger.  
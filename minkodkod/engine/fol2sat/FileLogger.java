@@ -21,15 +21,15 @@
  */
 package minkodkod.engine.fol2sat;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
-import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.IdentityHashMap;
 import java.util.Iterator;
@@ -56,6 +56,14 @@ import kodkod.util.nodes.Nodes;
 /**
  * A file-based translation logger that logs translation events
  * to a temporary file.
+ * 
+ * ALUMINUM: the records have a fixed width: the index of the formula, its literal, 
+ * and the tuple bound to each of its free variables, padded with zeros to the 
+ * largest number of free variables of a logged formula. The log maps the file into
+ * memory, and reads the i-th record at offset i * width, so replaying the log does not
+ * re-parse it. Replaying the records of some formulas only reads their records, through
+ * an index of the records of every formula. The file is deleted when the log is freed 
+ * (see TranslationLog.free()).
  * @specfield originalFormula: Formula // the {@linkplain Solver#solve(Formula, kodkod.instance.Bounds) original} formula, provided by the user
  * @specfield originalBounds: Bounds // the {@linkplain Solver#solve(Formula, kodkod.instance.Bounds) original} bounds, provided by the user
  * @specfield formula: Formula // desugaring of this.formula that was translated
@@ -71,6 +79,8 @@ final class FileLogger extends TranslationLogger {
 	private final File file;
 	private DataOutputStream out;
 	private final Bounds bounds;
+	/** The largest number of free variables of a formula in this.logMap. */
+	private final int maxVars;
 	/**
 	 * Constructs a new file logger from the given annotated formula.
 	 * @effects this.formula' = annotated.node
@@ -94,7 +104,7 @@ final class FileLogger extends TranslationLogger {
 	
 		this.logMap = new FixedMap<Formula, Variable[]>(freeVarMap.keySet());	
 		
-		int index = 0;
+		int index = 0, maxVars = 0;
 		for(Map.Entry<Formula, Variable[]> e : logMap.entrySet()) {
 			Set<Variable> vars = freeVarMap.get(e.getKey());
 			int size = vars.size();
@@ -103,8 +113,10 @@ final class FileLogger extends TranslationLogger {
 			} else {
 				e.setValue(Containers.identitySort(vars.toArray(new Variable[size])));
 			}
+			maxVars = StrictMath.max(maxVars, size);
 			index++;
 		}
+		this.maxVars = maxVars;
 		this.bounds = bounds.unmodifiableView();
 	}
 	
@@ -167,6 +179,9 @@ final class FileLogger extends TranslationLogger {
 			for(Variable var : vars) {
 				out.writeInt(env.lookup(var).denseIndices().min());
 			}
+			for(int i = vars.length; i < maxVars; i++) {
+				out.writeInt(0);
+			}
 		} catch (IOException e) {
 			throw new RuntimeException(e);
 		}
@@ -177,7 +192,7 @@ final class FileLogger extends TranslationLogger {
 	 */
 	@Override
 	TranslationLog log() {
-		return new FileLog(annotated, logMap, file, bounds);
+		return new FileLog(annotated, logMap, file, bounds, maxVars);
 	}
 	
 	/**
@@ -189,26 +204,45 @@ final class FileLogger extends TranslationLogger {
 
 	/**
 	 * A file-based translation log, written by a FileLogger.
+	 * The file is mapped into memory, in windows of at most 1GB that hold a 
+	 * whole number of records, the first time the log is replayed.
 	 * @author Emina Torlak
 	 */
 	private static final class FileLog extends TranslationLog {
+		/** The largest size of a window of the file that is mapped at once. */
+		private static final int WINDOW = 1 << 30;
+		
 	    private final Set<Formula> roots;
 		private final Node[] original;
 		private final Formula[] translated;
 	    private final Variable[][] freeVars;
 	    private final File file;
 	    private final Bounds bounds;
+	    /** The number of bytes of a record, and the number of records in a window. */
+	    private final int width, windowRecords;
+	    /** The windows of the file, mapped on the first replay; null before, or after this log is freed. */
+	    private MappedByteBuffer[] windows = null;
+	    private long size = 0;
+	    /** 
+	     * records[i] holds the positions of the records of the i-th formula, in replay order. 
+	     * Built on the first replay of some formulas only; null before, or after this log is freed. 
+	     */
+	    private long[][] records = null;
+	    private boolean freed = false;
 	   
 	    /**
 	     * Constructs a new file log for the sources of the given annotated formula,
 	     * using the provided fixed map, file, and tuplefactory.
 	     * @requires all f: annotated.node.*children & Formula | logMap.get(f) = freeVariables(f)
-	     * @requires the file was written by a FileLogger using the given map
+	     * @requires the file was written by a FileLogger using the given map, with records 
+	     * for maxVars free variables
 	     */
-	    FileLog(AnnotatedNode<Formula> annotated, FixedMap<Formula, Variable[]> logMap, File file, Bounds bounds) {
+	    FileLog(AnnotatedNode<Formula> annotated, FixedMap<Formula, Variable[]> logMap, File file, Bounds bounds, int maxVars) {
 	    	this.file = file;
 	    	this.bounds = bounds;
 	    	this.roots = Nodes.conjuncts(annotated.node());
+	    	this.width = (2 + maxVars) << 2;
+	    	this.windowRecords = WINDOW / width;
 	    	
 	    	final int size = logMap.entrySet().size();
 	    	this.original = new Node[size];
@@ -224,11 +258,88 @@ final class FileLogger extends TranslationLogger {
 	    }
 	    
 	    /**
-	     * Deletes the log file.
+	     * Maps the file of this log into memory, if it is not mapped yet, and returns its windows.
+	     * @throws IllegalStateException - this log has been freed
+	     */
+	    private synchronized MappedByteBuffer[] windows() {
+	    	if (freed) throw new IllegalStateException("the log has been freed");
+	    	if (windows == null) {
+	    		try {
+	    			final FileInputStream in = new FileInputStream(file);
+	    			try {
+	    				final FileChannel channel = in.getChannel();
+	    				final long length = channel.size();
+	    				final long windowBytes = (long) windowRecords * width;
+	    				final MappedByteBuffer[] mapped = new MappedByteBuffer[(int) ((length + windowBytes - 1) / windowBytes)];
+	    				for(int i = 0; i < mapped.length; i++) {
+	    					final long position = i * windowBytes;
+	    					mapped[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, StrictMath.min(windowBytes, length - position));
+	    				}
+	    				size = length / width;
+	    				windows = mapped;
+	    			} finally {
+	    				in.close();
+	    			}
+	    		} catch (IOException e) {
+	    			throw new RuntimeException(e);
+	    		}
+	    	}
+	    	return windows;
+	    }
+	    
+	    /**
+	     * Returns the index of the formula of the record at the given position.
+	     */
+	    private int formulaAt(MappedByteBuffer[] windows, long position) {
+	    	return windows[(int) (position / windowRecords)].getInt((int) (position % windowRecords) * width);
+	    }
+	    
+	    /**
+	     * Returns the positions of the records of every formula, reading the formula of every
+	     * record of the log twice (to count them, and to place them) the first time it is called.
+	     * @throws IllegalStateException - this log has been freed
+	     */
+	    private synchronized long[][] records() {
+	    	final MappedByteBuffer[] windows = windows();
+	    	if (records == null) {
+	    		final int[] counts = new int[translated.length];
+	    		for(long position = 0; position < size; position++) 
+	    			counts[formulaAt(windows, position)]++;
+	    		final long[][] positions = new long[translated.length][];
+	    		for(int i = 0; i < positions.length; i++) {
+	    			positions[i] = new long[counts[i]];
+	    			counts[i] = 0;
+	    		}
+	    		for(long position = 0; position < size; position++) {
+	    			final int index = formulaAt(windows, position);
+	    			positions[index][counts[index]++] = position;
+	    		}
+	    		records = positions;
+	    	}
+	    	return records;
+	    }
+	    
+	    /**
+	     * Unmaps the log file (when the buffers are collected) and deletes it.  
+	     * If the file cannot be deleted now, it is deleted when the virtual machine exits.
+	     * @see kodkod.engine.fol2sat.TranslationLog#free()
+	     */
+	    public synchronized void free() {
+	    	if (!freed) {
+	    		freed = true;
+	    		windows = null;
+	    		records = null;
+	    		if (!file.delete() && file.exists())
+	    			file.deleteOnExit();
+	    	}
+	    }
+	    
+	    /**
+	     * Deletes the log file, if this log has not been freed.
 	     * @see java.lang.Object#finalize()
 	     */
 	    protected final void finalize() {
-	    	file.delete();
+	    	free();
 	    }
 	    
 	    /**
@@ -246,67 +357,92 @@ final class FileLogger extends TranslationLogger {
 		/**
 		 * {@inheritDoc}
 		 * @see kodkod.engine.fol2sat.TranslationLog#replay(kodkod.engine.fol2sat.RecordFilter)
+		 * @throws IllegalStateException - this log has been freed
 		 */
 		public Iterator<TranslationRecord> replay(final RecordFilter filter) {
-			try {	
-				return new Iterator<TranslationRecord>() {
-					final TupleFactory factory = bounds.universe().factory();
-					final DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
-					final MutableRecord current = new MutableRecord(), next = new MutableRecord();
-					long remaining = file.length();
-								
-					public boolean hasNext() {
-						while(remaining > 0 && next.node == null) {
-							try {
-								final long indexLiteral = in.readLong();
-								final int literal = (int) (indexLiteral);
-								final int index = (int) (indexLiteral>>>32);
-								final Variable[] freeVars = FileLog.this.freeVars[index];
-								final Map<Variable,TupleSet> env;
-								if (freeVars.length==0) {
-									env = Collections.emptyMap();
-								} else {
-									env = new FixedMap<Variable,TupleSet>(freeVars);
-									for(int i = 0; i < freeVars.length; i++) {
-										env.put(freeVars[i], factory.setOf(1, Ints.singleton(in.readInt())));
-									}
-								}
-								if (filter.accept(original[index], translated[index], literal, env)) {
-									next.setAll(original[index], translated[index], literal, env);
-								}
-								remaining -= (8 + (freeVars.length << 2));
-								
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
-						}
-						if (next.node==null) {
-							try {
-								in.close();
-							} catch (IOException e) {
-								throw new RuntimeException(e);
-							}
-							return false;
-						} else {
-							return true;
+			final MappedByteBuffer[] windows = windows();
+			return new Replay(windows, null, size, filter);
+		}
+		
+		/**
+		 * {@inheritDoc}
+		 * Only the records of the given formulas are read, and passed to the filter.
+		 * @see kodkod.engine.fol2sat.TranslationLog#replay(java.util.Set, kodkod.engine.fol2sat.RecordFilter)
+		 * @throws IllegalStateException - this log has been freed
+		 */
+		public Iterator<TranslationRecord> replay(final Set<? extends Node> formulas, final RecordFilter filter) {
+			final long[][] records = records();
+			int count = 0;
+			for(int i = 0; i < translated.length; i++) {
+				if (formulas.contains(translated[i])) count += records[i].length;
+			}
+			final long[] positions = new long[count];
+			count = 0;
+			for(int i = 0; i < translated.length; i++) {
+				if (formulas.contains(translated[i])) {
+					System.arraycopy(records[i], 0, positions, count, records[i].length);
+					count += records[i].length;
+				}
+			}
+			Arrays.sort(positions);
+			return new Replay(windows(), positions, positions.length, filter);
+		}
+		
+		/**
+		 * An iterator over the records of this log at the given positions (or at 
+		 * every position, if none are given) that are accepted by a filter.
+		 */
+		private final class Replay implements Iterator<TranslationRecord> {
+			final TupleFactory factory = bounds.universe().factory();
+			final MutableRecord current = new MutableRecord(), next = new MutableRecord();
+			final MappedByteBuffer[] windows;
+			final long[] positions;
+			final long end;
+			final RecordFilter filter;
+			long k = 0;
+			
+			/**
+			 * Replays the records at positions[0..end), or at [0..end) if positions is null.
+			 */
+			Replay(MappedByteBuffer[] windows, long[] positions, long end, RecordFilter filter) {
+				this.windows = windows;
+				this.positions = positions;
+				this.end = end;
+				this.filter = filter;
+			}
+						
+			public boolean hasNext() {
+				while(k < end && next.node == null) {
+					final long position = (positions == null) ? k : positions[(int) k];
+					final MappedByteBuffer window = windows[(int) (position / windowRecords)];
+					final int offset = (int) (position % windowRecords) * width;
+					final int index = window.getInt(offset);
+					final int literal = window.getInt(offset + 4);
+					final Variable[] freeVars = FileLog.this.freeVars[index];
+					final Map<Variable,TupleSet> env;
+					if (freeVars.length==0) {
+						env = Collections.emptyMap();
+					} else {
+						env = new FixedMap<Variable,TupleSet>(freeVars);
+						for(int i = 0; i < freeVars.length; i++) {
+							env.put(freeVars[i], factory.setOf(1, Ints.singleton(window.getInt(offset + 8 + (i << 2)))));
 						}
 					}
-
-					public TranslationRecord next() {
-						if (!hasNext()) throw new NoSuchElementException();
-						return current.setAll(next);
+					if (filter.accept(original[index], translated[index], literal, env)) {
+						next.setAll(original[index], translated[index], literal, env);
 					}
+					k++;
+				}
+				return next.node != null;
+			}
 
-					public void remove() {	throw new UnsupportedOperationException(); }
-					
-					protected final void finalize() {
-						try { in.close(); } catch (IOException e) { /* unused */ }
-					}
-				};
-			} catch (FileNotFoundException e) {
-				throw new RuntimeException(e);
-			}	
-		}		
+			public TranslationRecord next() {
+				if (!hasNext()) throw new NoSuchElementException();
+				return current.setAll(next);
+			}
+
+			public void remove() {	throw new UnsupportedOperationException(); }
+		}
 	}
 	
 	/**
@@ -23,9 +23,9 @@ package minkodkod.engine.fol2sat;
 
 import static kodkod.engine.bool.Operator.AND;
 
+import minkodkod.MinClauseBuffer;
 import minkodkod.MinSATSolver;
 import kodkod.engine.bool.BooleanFormula;
-import kodkod.engine.bool.BooleanValue;
 import kodkod.engine.bool.BooleanVariable;
 import kodkod.engine.bool.BooleanVisitor;
 import kodkod.engine.bool.ITEGate;
@@ -37,7 +37,7 @@ import kodkod.engine.satlab.SATSolver;
 import kodkod.util.ints.IntSet;
 import kodkod.util.ints.Ints;
 
-// ALUMINUM: Modified to separate original and SBP clauses in the solver.
+// ALUMINUM: Modified to separate original and SBP clauses in the solver, and to buffer the clauses.
 
 /**
  * Transforms a boolean circuit into a formula in conjunctive
@@ -47,94 +47,108 @@ import kodkod.util.ints.Ints;
  */
 final class MinBool2CNFTranslator implements BooleanVisitor<int[], Object> {
 
-	static boolean addClause(MinSATSolver solver, boolean sbp, int[] clause)
-	{		
-		//JOptionPane.showMessageDialog(null, "Adding clause: "+Arrays.toString(clause));
-		if(sbp) {
-			return solver.addSBPClause(clause);			
-		}
-		return solver.addClause(clause);
-	}
-	
-	static void addCircuitToSolver(MinSATSolver solver, boolean forSBP, BooleanFormula circuit, SATFactory factory, int numPrimaryVariables) {
-		
-		//JOptionPane.showMessageDialog(null, "Add circuit to solver: "+circuit);		
-		
-		final MinBool2CNFTranslator translator = new MinBool2CNFTranslator(solver, forSBP, numPrimaryVariables, circuit);
-//		System.out.println("--------------transls2-------------");
+	/**
+	 * Returns the clauses of the CNF of the given circuit, using the <i>definitional translation 
+	 * algorithm</i>: the clauses of every gate, and then a unit clause for the root, or for every 
+	 * input of the root if it is an AND gate. Nothing is added to a solver, so that the cost of 
+	 * generating the CNF can be told apart from that of loading it (see load(..)).
+	 * The second parameter is required to contain the number of primary variables
+	 * allocated during translation from FOL to boolean.
+	 * @return the clauses of the CNF of the given circuit
+	 */
+	static MinClauseBuffer toClauses(BooleanFormula circuit, int numPrimaryVariables) {
+		final MinBool2CNFTranslator translator = new MinBool2CNFTranslator(numPrimaryVariables, circuit);
+		final MinClauseBuffer clauses = translator.clauses;
 		if (circuit.op()==Operator.AND) { 
+			// The inputs are visited once; their literals are kept for the unit clauses.
+			final int[] roots = new int[circuit.size()];
+			int i = 0;
 			for(BooleanFormula input : circuit) { 
-//				System.out.println(input);
-//				solver.addClause(input.accept(translator,null));				
-				input.accept(translator, null);		
+				roots[i++] = input.accept(translator, null)[0];
 			}
-			for(BooleanFormula input : circuit) { 
-				translator.unaryClause[0] = input.label();
-				addClause(solver, forSBP, translator.unaryClause);
+			for(int root : roots) { 
+				clauses.add(root);
 			}
 		} else {
-			addClause(solver, forSBP, circuit.accept(translator,null));
-		}						
+			clauses.add(circuit.accept(translator,null)[0]);
+		}
+		return clauses;
 	}
-
+	
 	/**
-	 * Creates a new instance of SATSolver using the provided factory
-	 * and uses it to translate the given circuit into conjunctive normal form
-	 * using the <i>definitional translation algorithm</i>.
-	 * The third parameter is required to contain the number of primary variables
-	 * allocated during translation from FOL to boolean.
+	 * Returns the number of variables that the CNF of the given circuit needs: its primary
+	 * variables and the variables of its gates.
+	 * @return max(numPrimaryVariables, |circuit.label()|)
+	 */
+	static int numberOfVariables(BooleanFormula circuit, int numPrimaryVariables) {
+		return StrictMath.max(numPrimaryVariables, StrictMath.abs(circuit.label()));
+	}
+	
+	/**
+	 * Creates a new instance of SATSolver using the provided factory, and loads it with the 
+	 * given clauses of the CNF of a circuit, and with the given clauses of the CNF of its SBP
+	 * (or none if sbpClauses is null), which are recorded so that they can be deactivated.
+	 * The variables of each CNF are allocated before its clauses are loaded. If recordFormula 
+	 * is set, the solver keeps the clauses of the circuit (see MinSATSolver.recordFormula()).
+	 * @requires clauses = toClauses(circuit, numPrimaryVariables) && 
+	 *           numVariables = numberOfVariables(circuit, numPrimaryVariables)
+	 * @requires sbpClauses != null => sbpClauses = toClauses(sbp, numPrimaryVariables) && 
+	 *           numSBPVariables = numberOfVariables(sbp, numPrimaryVariables)
 	 * @return a SATSolver instance returned by the given factory and initialized
-	 * to contain the CNF translation of the given circuit.
+	 * to contain the given clauses.
 	 */
-	static MinSATSolver translate(BooleanFormula circuit, BooleanValue sbp, SATFactory factory, int numPrimaryVariables) {
+	static MinSATSolver load(SATFactory factory, int numPrimaryVariables, MinClauseBuffer clauses, int numVariables,
+			MinClauseBuffer sbpClauses, int numSBPVariables, boolean recordFormula) {
 		final SATSolver solver = factory.instance();		
 		
 		assert(solver instanceof MinSATSolver);
 		MinSATSolver minsolver = (MinSATSolver) solver;
+		minsolver.setNumPrimaryVariables(numPrimaryVariables);
+		if(recordFormula)
+			minsolver.recordFormula();
 		
 		////////////////////////////////////
-		// Add the (base formula's) circuit to the solver
-		addCircuitToSolver(minsolver, false, circuit, factory, numPrimaryVariables); 				
+		// Add the (base formula's) clauses to the solver
+		addVariables(minsolver, numVariables);
+		minsolver.addClauses(clauses);
 		
 		////////////////////////////////////
 		// Add the SBP -- but also record the clauses so we can remove/re-add them later				
-		if(sbp instanceof BooleanFormula)
+		if(sbpClauses != null)
 		{
-			//JOptionPane.showMessageDialog(null, "SB: "+sbp);
-			addCircuitToSolver(minsolver, true, (BooleanFormula)sbp, factory, numPrimaryVariables);
+			addVariables(minsolver, numSBPVariables);
+			minsolver.addSBPClauses(sbpClauses);
 		}
 		// else do nothing (it's True; no clauses)				
 		
 		return minsolver;
 	}
+
+	/**
+	 * Adds variables to the given solver, so that it has at least the given number.
+	 */
+	private static void addVariables(MinSATSolver solver, int numVariables) {
+		final int numVariablesToAdd = numVariables - solver.numberOfVariables();
+		if(numVariablesToAdd > 0) 
+			solver.addVariables(numVariablesToAdd);
+	}
 	
 	/**
 	 * Helper visitor that performs <i> definitional translation to cnf </i>.
 	 * @specfield root: BooleanFormula // the translated circuit
 	 */
 
-	private final MinSATSolver solver;
+	private final MinClauseBuffer clauses = new MinClauseBuffer();
 	private final IntSet visited;
 	private final PolarityDetector pdetector;
-	private final boolean forSBP;
 	private final int[] unaryClause = new int[1];
-	private final int[] binaryClause = new int[2];
-	private final int[] ternaryClause = new int[3];
 	
 	/**
 	 * Constructs a translator for the given circuit.
 	 * @effects this.root' = circuit
 	 */
-	private MinBool2CNFTranslator(MinSATSolver solver, boolean forSBP, int numPrimaryVars, BooleanFormula circuit) {
+	private MinBool2CNFTranslator(int numPrimaryVars, BooleanFormula circuit) {
 		final int maxLiteral = StrictMath.abs(circuit.label());
-		this.solver = solver;
-		this.forSBP = forSBP;
-		
-		int numVariablesToHave = StrictMath.max(numPrimaryVars, maxLiteral);
-		int numVariablesToAdd = (numVariablesToHave - solver.numberOfVariables());
-		if(numVariablesToAdd > 0) 
-			this.solver.addVariables(numVariablesToAdd);
-		
 		this.pdetector = (new PolarityDetector(numPrimaryVars, maxLiteral)).apply(circuit);
 		this.visited = Ints.bestSet(pdetector.offset, StrictMath.max(pdetector.offset, maxLiteral));
 	}
@@ -144,25 +158,15 @@ final class MinBool2CNFTranslator implements BooleanVisitor<int[], Object> {
 		unaryClause[0] = lit;
 		return unaryClause;
 	}
-	/** @return 0->lit0 + 1->lit1 */
-	final int[] clause(int lit0, int lit1) { 
-		binaryClause[0] = lit0; binaryClause[1] = lit1;
-		return binaryClause;
-	}
-	/** @return 0->lit0 + 1->lit1 + 2->lit2 */
-	final int[] clause(int lit0, int lit1, int lit2) { 
-		ternaryClause[0] = lit0; ternaryClause[1] = lit1; ternaryClause[2] = lit2;
-		return ternaryClause;
-	}
 	
 	/**
-	 * Adds translation clauses to the solver and returns an array containing the
+	 * Adds translation clauses to this.clauses and returns an array containing the
 	 * gate's literal. The CNF clauses are generated according to the standard SAT to CNF translation:
 	 * o = AND(i1, i2, ... ik) ---> (i1 | !o) & (i2 | !o) & ... & (ik | !o) & (!i1 | !i2 | ... | !ik | o),
 	 * o = OR(i1, i2, ... ik)  ---> (!i1 | o) & (!i2 | o) & ... & (!ik | o) & (i1 | i2 | ... | ik | !o).
 	 * @return o: int[] | o.length = 1 && o.[0] = multigate.literal
 	 * @effects if the multigate has not yet been visited, its children are visited
-	 * and the clauses are added to the solver connecting the multigate's literal to
+	 * and the clauses are added to this.clauses connecting the multigate's literal to
 	 * its input literal, as described above.
 	 */
 	public int[] visit(MultiGate multigate, Object arg) {  
@@ -180,7 +184,7 @@ final class MinBool2CNFTranslator implements BooleanVisitor<int[], Object> {
 			for(BooleanFormula input : multigate) {
 				int iLit = input.accept(this, arg)[0];
 				if (p) {
-					addClause(solver, forSBP, clause(iLit * sgn, output));
+					clauses.add(iLit * sgn, output);
 				}
 				if (n) { 
 					lastClause[i++] = iLit * -sgn;
@@ -188,19 +192,19 @@ final class MinBool2CNFTranslator implements BooleanVisitor<int[], Object> {
 			}
 			if (n) {
 				lastClause[i] = oLit * sgn;
-				addClause(solver, forSBP, lastClause);
+				clauses.add(lastClause);
 			}
 		}
 		return clause(oLit);        
 	}
 
 	/**
-	 * Adds translation clauses to the solver and returns an array containing the
+	 * Adds translation clauses to this.clauses and returns an array containing the
 	 * gate's literal. The CNF clauses are generated according to the standard SAT to CNF translation:
 	 * o = ITE(i, t, e) ---> (!i | !t | o) & (!i | t | !o) & (i | !e | o) & (i | e | !o)
 	 * @return o: int[] | o.length = 1 && o.[0] = itegate.literal
 	 * @effects if the itegate has not yet been visited, its children are visited
-	 * and the clauses are added to the solver connecting the multigate's literal to
+	 * and the clauses are added to this.clauses connecting the multigate's literal to
 	 * its input literal, as described above.
 	 */
 	public int[] visit(ITEGate itegate, Object arg) {
@@ -211,16 +215,16 @@ final class MinBool2CNFTranslator implements BooleanVisitor<int[], Object> {
 			final int e = itegate.input(2).accept(this, arg)[0];
 			final boolean p = pdetector.positive(oLit), n = pdetector.negative(oLit);
 			if (p) {
-				addClause(solver, forSBP, clause(-i, t, -oLit));
-				addClause(solver, forSBP, clause(i, e, -oLit));
+				clauses.add(-i, t, -oLit);
+				clauses.add(i, e, -oLit);
 				// redundant clause that strengthens unit propagation
-				addClause(solver, forSBP, clause(t, e, -oLit));
+				clauses.add(t, e, -oLit);
 			}
 			if (n) {
-				addClause(solver, forSBP, clause(-i, -t, oLit));	
-				addClause(solver, forSBP, clause(i, -e, oLit));
+				clauses.add(-i, -t, oLit);	
+				clauses.add(i, -e, oLit);
 				// redundant clause that strengthens unit propagation
-				addClause(solver, forSBP, clause(-t, -e, oLit));
+				clauses.add(-t, -e, oLit);
 			}	
 		}
 		return clause(oLit);
@@ -0,0 +1,210 @@
+package minkodkod.engine.fol2sat;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import minkodkod.AbortedException;
+
+import kodkod.ast.Formula;
+import kodkod.engine.bool.BooleanAccumulator;
+import kodkod.engine.bool.BooleanFactory;
+import kodkod.engine.bool.BooleanFormula;
+import kodkod.engine.bool.BooleanValue;
+import kodkod.engine.bool.BooleanVariable;
+import kodkod.engine.bool.BooleanVisitor;
+import kodkod.engine.bool.ITEGate;
+import kodkod.engine.bool.MultiGate;
+import kodkod.engine.bool.NotGate;
+import kodkod.engine.bool.Operator;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.util.nodes.AnnotatedNode;
+import kodkod.util.nodes.Nodes;
+
+import static kodkod.util.nodes.AnnotatedNode.annotate;
+
+// ALUMINUM: Alloy specs have hundreds of top-level facts, which are translated independently
+
+/**
+ * Translates the top-level conjuncts of a formula to boolean circuits on a pool of threads, and
+ * conjoins the circuits in the factory of a given interpreter.
+ *
+ * BooleanFactory is not thread-safe, so every thread of the pool translates with its own interpreter,
+ * over its own factory, made by LeafInterpreter.exact(bounds, options): its variables have the same
+ * labels as those of the given interpreter, but its gates are its own. Every conjunct is translated
+ * with its own FOL2BoolCache, of the given budget. The circuits are then copied gate by gate into the
+ * given factory, in the order of the conjuncts, as they become available; since the given factory
+ * hash-conses the gates, the result does not depend on which thread translated which conjunct. The
+ * subformulas that two conjuncts share are translated by both.
+ */
+final class MinConjunctTranslator {
+	private final Bounds bounds;
+	private final Options options;
+	private final BooleanFactory factory;
+
+	/** The interpreter of every thread of the pool. */
+	private final ThreadLocal<LeafInterpreter> interpreters = new ThreadLocal<LeafInterpreter>() {
+		protected LeafInterpreter initialValue() {
+			return LeafInterpreter.exact(bounds, options);
+		}
+	};
+
+	/** The copies, in this.factory, of the gates of the factory of every thread. */
+	private final Map<BooleanFactory, Map<BooleanFormula, BooleanValue>> copies =
+		new IdentityHashMap<BooleanFactory, Map<BooleanFormula, BooleanValue>>();
+
+	private MinConjunctTranslator(Bounds bounds, Options options, BooleanFactory factory) {
+		this.bounds = bounds;
+		this.options = options;
+		this.factory = factory;
+	}
+
+	/**
+	 * Translates the given annotated formula to a circuit in interpreter.factory(), translating its top-level
+	 * conjuncts on the given number of threads. If the formula has a single conjunct, or threads = 1, it is
+	 * translated by FOL2BoolTranslator.translate(annotated, interpreter, budget) on the calling thread.
+	 * @requires interpreter = LeafInterpreter.exact(bounds, options)
+	 * @requires threads > 0
+	 * @return a circuit, in interpreter.factory(), that is the meaning of annotated.node with respect to the
+	 * given bounds
+	 * @effects the counters of the caches of the translations are added to the given budget
+	 * @throws HigherOrderDeclException - annotated.node contains a higher order declaration
+	 * @throws UnboundLeafException - annotated.node refers to an undeclared variable
+	 * @throws AbortedException - the calling thread is interrupted while waiting for the pool
+	 */
+	static BooleanValue translate(AnnotatedNode<Formula> annotated, Bounds bounds, Options options, LeafInterpreter interpreter, 
+			int threads, FOL2BoolCache.Budget budget) {
+		final Set<Formula> conjuncts = (threads == 1) ? null : Nodes.conjuncts(annotated.node());
+		if (conjuncts == null || conjuncts.size() < 2)
+			return (BooleanValue) FOL2BoolTranslator.translate(annotated, interpreter, budget);
+		return new MinConjunctTranslator(bounds, options, interpreter.factory()).translate(conjuncts, threads, budget);
+	}
+
+	/**
+	 * Translates the given conjuncts on a pool of the given number of threads, with caches of the
+	 * given budget, and returns the conjunction of their circuits in this.factory.
+	 */
+	private BooleanValue translate(Set<Formula> conjuncts, int threads, final FOL2BoolCache.Budget budget) {
+		final ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, conjuncts.size()), new ThreadFactory() {
+			private int counter = 0;
+			public Thread newThread(Runnable r) {
+				Thread thread = new Thread(r, "translation-" + (++counter));
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		try {
+			final List<Future<Circuit>> circuits = new ArrayList<Future<Circuit>>(conjuncts.size());
+			for (final Formula conjunct : conjuncts) {
+				circuits.add(pool.submit(new Callable<Circuit>() {
+					public Circuit call() {
+						final LeafInterpreter interpreter = interpreters.get();
+						final BooleanValue value = FOL2BoolTranslator.translate(annotate(conjunct), interpreter, budget);
+						return new Circuit(value, interpreter.factory());
+					}
+				}));
+			}
+			final BooleanAccumulator acc = BooleanAccumulator.treeGate(Operator.AND);
+			for (Future<Circuit> circuit : circuits) {
+				acc.add(copy(circuit.get()));
+				if (acc.isShortCircuited())
+					break;
+			}
+			return factory.accumulate(acc);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new AbortedException(e);
+		} catch (ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			if (cause instanceof Error)
+				throw (Error) cause;
+			throw new RuntimeException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+	}
+
+	/**
+	 * Returns the copy in this.factory of the given circuit.
+	 */
+	private BooleanValue copy(Circuit circuit) {
+		if (circuit.value.op() == Operator.CONST)
+			return circuit.value;
+		Map<BooleanFormula, BooleanValue> cache = copies.get(circuit.factory);
+		if (cache == null) {
+			cache = new IdentityHashMap<BooleanFormula, BooleanValue>();
+			copies.put(circuit.factory, cache);
+		}
+		return ((BooleanFormula) circuit.value).accept(new Copier(cache), null);
+	}
+
+	/**
+	 * The translation of a conjunct, and the factory of the thread that made it.
+	 */
+	private static final class Circuit {
+		final BooleanValue value;
+		final BooleanFactory factory;
+
+		Circuit(BooleanValue value, BooleanFactory factory) {
+			this.value = value;
+			this.factory = factory;
+		}
+	}
+
+	/**
+	 * Rebuilds a circuit of the factory of a thread in this.factory. A variable is replaced by the
+	 * variable with the same label, and a gate by the gate of this.factory with the same operator
+	 * over the copies of its inputs, which is kept in the cache of the thread's factory.
+	 */
+	private final class Copier implements BooleanVisitor<BooleanValue, Object> {
+		private final Map<BooleanFormula, BooleanValue> cache;
+
+		Copier(Map<BooleanFormula, BooleanValue> cache) {
+			this.cache = cache;
+		}
+
+		public BooleanValue visit(MultiGate multigate, Object arg) {
+			BooleanValue copy = cache.get(multigate);
+			if (copy == null) {
+				final BooleanAccumulator acc = BooleanAccumulator.treeGate(multigate.op());
+				for (BooleanFormula input : multigate) {
+					acc.add(input.accept(this, arg));
+					if (acc.isShortCircuited())
+						break;
+				}
+				copy = factory.accumulate(acc);
+				cache.put(multigate, copy);
+			}
+			return copy;
+		}
+
+		public BooleanValue visit(ITEGate itegate, Object arg) {
+			BooleanValue copy = cache.get(itegate);
+			if (copy == null) {
+				copy = factory.ite(itegate.input(0).accept(this, arg), itegate.input(1).accept(this, arg),
+						itegate.input(2).accept(this, arg));
+				cache.put(itegate, copy);
+			}
+			return copy;
+		}
+
+		public BooleanValue visit(NotGate negation, Object arg) {
+			return factory.not(negation.input(0).accept(this, arg));
+		}
+
+		public BooleanValue visit(BooleanVariable variable, Object arg) {
+			return factory.variable(variable.label());
+		}
+	}
+}
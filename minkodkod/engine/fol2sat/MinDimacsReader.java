@@ -0,0 +1,223 @@
+package minkodkod.engine.fol2sat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import minkodkod.MinFlightRecorder;
+import minkodkod.MinSATSolver;
+
+import kodkod.ast.Formula;
+import kodkod.ast.Relation;
+import kodkod.engine.bool.BooleanConstant;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.Universe;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.Ints;
+
+// ALUMINUM: lets the minimal-model engine run on raw CNF (e.g., the SATLIB benchmarks)
+
+/**
+ * Reads a CNF in DIMACS format straight into a MinSATSolver, without a formula to translate.
+ * The file is memory-mapped (in windows of at most 1GB) and parsed byte by byte; every clause
+ * is given to the solver as soon as its terminating 0 is read. Comment lines ("c ..."), the
+ * problem line ("p cnf variables clauses") and the "%" line that ends the SATLIB files are
+ * understood; the number of clauses in the problem line is not checked.
+ *
+ * Every variable of the CNF is primary. So that solutions are instances, as usual, the variables
+ * are the tuples of one unary relation, v, over a universe of atoms named "1" to "n": variable i
+ * is true iff the atom "i" is in v. There is no symmetry breaking.
+ */
+final class MinDimacsReader {
+	/** The size of the windows of the file that are mapped at once. */
+	private static final int WINDOW = 1 << 30;
+
+	/** The relation whose tuples are the variables of the CNF. */
+	private final Relation v = Relation.unary("v");
+
+	private final Options options;
+	/** If set, this.cnf keeps the clauses of the file. */
+	private final boolean recordFormula;
+	private MinSATSolver cnf = null;
+	private int numVars = -1, numClauses = 0;
+
+	/** The literals of the clause being read. */
+	private int[] clause = new int[16];
+	private int size = 0;
+
+	/** Set once this.cnf rejects a clause as contradictory. */
+	private boolean unsat = false;
+
+	private MinDimacsReader(Options options, boolean recordFormula) {
+		this.options = options;
+		this.recordFormula = recordFormula;
+	}
+
+	/**
+	 * Returns the translation of the CNF in the given DIMACS file: a translation whose solver has
+	 * the clauses of the file, and whose bounds bound one unary relation v by the atoms "1" to "n",
+	 * where n is the number of variables in the problem line, atom "i" standing for variable i.
+	 * The solver keeps the clauses of the file iff recordFormula is set.
+	 * @effects options.reporter().translatingToBoolean(Formula.TRUE, bounds of the result)
+	 * @throws IOException - the file cannot be read, or it is not a CNF in DIMACS format
+	 * @throws TrivialFormulaException - the CNF is trivially unsatisfiable: the solver finds a clause
+	 * contradictory when it is added (e.g., an empty clause, or one whose literals are all false 
+	 * given the unit clauses before it)
+	 */
+	static MinTranslation translate(File file, Options options, boolean recordFormula) 
+			throws IOException, TrivialFormulaException {
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("dimacs");
+		final MinDimacsReader reader = new MinDimacsReader(options, recordFormula);
+		reader.read(file);
+		if (reader.numVars < 0)
+			throw new IOException("no problem line in " + file);
+
+		final int n = reader.numVars;
+		final List<String> atoms = new ArrayList<String>(Math.max(n, 1));
+		for (int i = 1; i <= Math.max(n, 1); i++)
+			atoms.add(String.valueOf(i));
+		final Universe universe = new Universe(atoms);
+		final TupleFactory factory = universe.factory();
+		final Bounds bounds = new Bounds(universe);
+		bounds.bound(reader.v, (n == 0) ? factory.noneOf(1) : factory.allOf(1));
+		options.reporter().translatingToBoolean(Formula.TRUE, bounds);
+
+		if (reader.unsat)
+			throw new TrivialFormulaException(Formula.FALSE, bounds, BooleanConstant.FALSE, null);
+
+		final Map<Relation, IntSet> varUsage = new LinkedHashMap<Relation, IntSet>();
+		if (n > 0)
+			varUsage.put(reader.v, Ints.rangeSet(Ints.range(1, n)));
+		final Set<IntSet> symmetries = Collections.emptySet();
+		final Set<Map<Integer, Integer>> permutations = Collections.emptySet();
+		final List<MinTranslation.Skolemization> skolemizations = Collections.emptyList();
+		event.translated(n, n, reader.numClauses);
+		return new MinTranslation(reader.cnf, bounds, varUsage, n, null, symmetries, permutations, skolemizations);
+	}
+
+	/**
+	 * Parses the given file, adding its clauses to this.cnf, which is created when the problem
+	 * line is read. Stops at the first trivially unsatisfiable clause.
+	 */
+	private void read(File file) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		try {
+			final FileChannel channel = in.getChannel();
+			final long length = channel.size();
+
+			// The state of the parser, kept from a window to the next.
+			boolean lineStart = true, comment = false, problem = false, negative = false, digits = false;
+			final StringBuilder problemLine = new StringBuilder();
+			long value = 0;
+
+			for (long position = 0; position < length && !unsat; position += WINDOW) {
+				final MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, position,
+						Math.min(WINDOW, length - position));
+				while (buf.hasRemaining()) {
+					final int b = buf.get();
+					if (comment) {
+						if (b == '\n') { comment = false; lineStart = true; }
+						continue;
+					}
+					if (problem) {
+						if (b == '\n') {
+							problem = false;
+							lineStart = true;
+							problem(problemLine.toString(), file);
+						} else
+							problemLine.append((char) b);
+						continue;
+					}
+					if (b >= '0' && b <= '9') {
+						value = value * 10 + (b - '0');
+						if (value > Integer.MAX_VALUE)
+							throw new IOException("literal too large in " + file);
+						digits = true;
+						lineStart = false;
+					} else if (b == '-' && !digits && !negative) {
+						negative = true;
+						lineStart = false;
+					} else if (b == ' ' || b == '\t' || b == '\n' || b == '\r') {
+						if (digits) {
+							literal(negative ? -(int) value : (int) value, file);
+							if (unsat) break;
+						} else if (negative)
+							throw new IOException("dangling '-' in " + file);
+						value = 0;
+						negative = digits = false;
+						lineStart = lineStart || b == '\n';
+					} else if (lineStart && b == 'c') {
+						comment = true;
+					} else if (lineStart && b == 'p') {
+						problem = true;
+					} else if (lineStart && b == '%') {
+						return;
+					} else
+						throw new IOException("unexpected character '" + (char) b + "' in " + file);
+				}
+			}
+			if (problem)
+				problem(problemLine.toString(), file);
+			if (digits && !unsat)
+				literal(negative ? -(int) value : (int) value, file);
+			// A last clause without its terminating 0.
+			if (size > 0 && !unsat)
+				literal(0, file);
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * Reads the given problem line (after the "p"), and creates this.cnf with its variables.
+	 */
+	private void problem(String line, File file) throws IOException {
+		final String[] words = line.trim().split("\\s+");
+		if (cnf != null || words.length != 3 || !words[0].equals("cnf"))
+			throw new IOException("bad problem line 'p " + line.trim() + "' in " + file);
+		try {
+			numVars = Integer.parseInt(words[1]);
+			Integer.parseInt(words[2]);
+		} catch (NumberFormatException e) {
+			throw new IOException("bad problem line 'p " + line.trim() + "' in " + file);
+		}
+		if (numVars < 0)
+			throw new IOException("bad problem line 'p " + line.trim() + "' in " + file);
+		cnf = (MinSATSolver) options.solver().instance();
+		cnf.setNumPrimaryVariables(numVars);
+		if (recordFormula)
+			cnf.recordFormula();
+		cnf.addVariables(numVars);
+	}
+
+	/**
+	 * Adds the given literal to the clause being read, or, if it is 0, adds the clause to this.cnf.
+	 */
+	private void literal(int lit, File file) throws IOException {
+		if (cnf == null)
+			throw new IOException("clause before the problem line in " + file);
+		if (lit != 0) {
+			if (Math.abs(lit) > numVars)
+				throw new IOException("variable " + Math.abs(lit) + " out of range 1.." + numVars + " in " + file);
+			if (size == clause.length)
+				clause = Arrays.copyOf(clause, 2 * size);
+			clause[size++] = lit;
+			return;
+		}
+		numClauses++;
+		if (!cnf.addClause(Arrays.copyOf(clause, size)))
+			unsat = true;
+		size = 0;
+	}
+}
@@ -21,11 +21,13 @@
  */
 package minkodkod.engine.fol2sat;
 
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import minkodkod.MinSATSolver;
 
+import kodkod.ast.Decl;
 import kodkod.ast.Relation;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
@@ -57,6 +59,10 @@ public final class MinTranslation {
 	
 	public final Set<IntSet> symmetries;
 	public final Set<Map<Integer, Integer>> permutations;
+	/* the skolemizations reported while translating, if they were recorded (see MinTranslationCache) */
+	final List<Skolemization> skolemizations;
+	/* this.permutations as arrays over variables; computed on demand */
+	private int[][] permutationArrays = null;
 	
 	/**
 	 * Constructs a new Translation object for the given solver, bounds,  mapping
@@ -67,7 +73,7 @@ public final class MinTranslation {
 	 */
 	MinTranslation(MinSATSolver solver, Bounds bounds, Map<Relation, IntSet> varUsage,
 			int maxPrimaryLit, TranslationLog log, Set<IntSet> symmetries,
-			Set<Map<Integer, Integer>> permutations) {			
+			Set<Map<Integer, Integer>> permutations, List<Skolemization> skolemizations) {			
 		this.solver = solver;				
 		this.bounds = bounds;
 		this.primaryVarUsage = varUsage;
@@ -75,6 +81,7 @@ public final class MinTranslation {
 		this.log = log;
 		this.symmetries = symmetries;
 		this.permutations = permutations;
+		this.skolemizations = skolemizations;
 	}
 
 	/**
@@ -103,6 +110,18 @@ public final class MinTranslation {
 	 * outcome of the last call was not <code>true</code>.
 	 */
 	public Instance interpret() {
+		return interpret(null);
+	}
+	
+	/**
+	 * Returns an interpretation of the given propositional model as a mapping from
+	 * Relations to sets of Tuples, as interpret() does for the last model of this.solver.
+	 * The model only needs to cover the primary variables: model[v-1] > 0 iff v is true.
+	 * @requires model = null || model.length >= this.numPrimaryVariables()
+	 * @return an interpretation of the given model (or of the last model of this.solver, if model = null) 
+	 * as a mapping from (this.variableUsage().keySet() & Relation) to sets of Tuples.
+	 */
+	public Instance interpret(int[] model) {
 		final TupleFactory f = bounds.universe().factory();
 		final Instance instance = new Instance(bounds.universe());
 //		System.out.println(varUsage);
@@ -115,7 +134,7 @@ public final class MinTranslation {
 				int lit = vars.min();
 				for(IntIterator iter = bounds.upperBound(r).indexView().iterator(); iter.hasNext();) {
 					final int index = iter.next();
-					if (!indeces.contains(index) && solver.valueOf(lit++))
+					if (!indeces.contains(index) && (model == null ? solver.valueOf(lit++) : model[lit++ - 1] > 0))
 						indeces.add(index);
 				}
 			}
@@ -124,6 +143,15 @@ public final class MinTranslation {
 		return instance;
 	}
 	
+	/**
+	 * Returns the bounds of this translation, i.e. the bounds of the formula without the
+	 * unused relations, and with the skolem constants.
+	 * @return this.bounds
+	 */
+	Bounds bounds() {
+		return bounds;
+	}
+	
 	/**
 	 * Returns the set of primary variable literals  that represent
 	 * the tuples in the given relation.  If no literals were allocated
@@ -159,5 +187,68 @@ public final class MinTranslation {
 	public TranslationLog log() {
 		return log;
 	}
-			
-}
\ No newline at end of file
+	
+	/**
+	 * Releases the resources of this Translation that are not on the heap: the temporary 
+	 * file of this.log(), if the translation was logged to a file. Otherwise does nothing.
+	 * The log cannot be replayed after this Translation is freed.
+	 * @effects this.log() != null => this.log().free()
+	 */
+	public void free() {
+		if (log != null)
+			log.free();
+	}
+	
+	/**
+	 * Returns this.permutations as arrays, in the iteration order of this.permutations.
+	 * The i-th array maps every variable v < array.length to its image under the i-th
+	 * permutation (v itself if the permutation does not move v); a variable not covered
+	 * by the array is not moved. The arrays are computed on the first call and must not 
+	 * be modified.
+	 * @return this.permutations as arrays over variables
+	 */
+	public int[][] permutationArrays() {
+		if (permutationArrays == null) {
+			final int[][] arrays = new int[permutations.size()][];
+			int i = 0;
+			for(Map<Integer, Integer> aPerm : permutations) {
+				// The SBP may pair a variable with a constant, whose label (Integer.MAX_VALUE
+				// for TRUE, -Integer.MAX_VALUE for FALSE) is not a variable.
+				int maxVar = 0;
+				for(Integer var : aPerm.keySet())
+					if (var < Integer.MAX_VALUE)
+						maxVar = StrictMath.max(maxVar, var);
+				final int[] array = new int[maxVar + 1];
+				for(int var = 0; var <= maxVar; var++)
+					array[var] = var;
+				for(Map.Entry<Integer, Integer> entry : aPerm.entrySet())
+					if (entry.getKey() > 0 && entry.getKey() < Integer.MAX_VALUE)
+						array[entry.getKey()] = entry.getValue();
+				arrays[i++] = array;
+			}
+			permutationArrays = arrays;
+		}
+		return permutationArrays;
+	}
+	
+	/**
+	 * A call to Reporter.skolemizing(decl, skolem, context) made while translating.
+	 * @specfield decl: Decl
+	 * @specfield skolem: Relation
+	 * @specfield context: List<Decl>
+	 */
+	static final class Skolemization {
+		final Decl decl;
+		final Relation skolem;
+		final List<Decl> context;
+		
+		/**
+		 * @effects this.decl' = decl && this.skolem' = skolem && this.context' = context
+		 */
+		Skolemization(Decl decl, Relation skolem, List<Decl> context) {
+			this.decl = decl;
+			this.skolem = skolem;
+			this.context = context;
+		}
+	}
+}
@@ -0,0 +1,677 @@
+package minkodkod.engine.fol2sat;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import minkodkod.MinExtraOptions;
+import minkodkod.MinSATSolver;
+
+import kodkod.ast.BinaryExpression;
+import kodkod.ast.BinaryFormula;
+import kodkod.ast.BinaryIntExpression;
+import kodkod.ast.ComparisonFormula;
+import kodkod.ast.Comprehension;
+import kodkod.ast.ConstantExpression;
+import kodkod.ast.ConstantFormula;
+import kodkod.ast.Decl;
+import kodkod.ast.Decls;
+import kodkod.ast.ExprToIntCast;
+import kodkod.ast.Formula;
+import kodkod.ast.IfExpression;
+import kodkod.ast.IfIntExpression;
+import kodkod.ast.IntComparisonFormula;
+import kodkod.ast.IntConstant;
+import kodkod.ast.IntToExprCast;
+import kodkod.ast.MultiplicityFormula;
+import kodkod.ast.NaryExpression;
+import kodkod.ast.NaryFormula;
+import kodkod.ast.NaryIntExpression;
+import kodkod.ast.Node;
+import kodkod.ast.NotFormula;
+import kodkod.ast.ProjectExpression;
+import kodkod.ast.QuantifiedFormula;
+import kodkod.ast.Relation;
+import kodkod.ast.RelationPredicate;
+import kodkod.ast.SumExpression;
+import kodkod.ast.UnaryExpression;
+import kodkod.ast.UnaryIntExpression;
+import kodkod.ast.Variable;
+import kodkod.ast.visitor.VoidVisitor;
+import kodkod.engine.config.Options;
+import kodkod.instance.Bounds;
+import kodkod.instance.TupleFactory;
+import kodkod.instance.TupleSet;
+import kodkod.instance.Universe;
+import kodkod.util.ints.IntIterator;
+import kodkod.util.ints.IntSet;
+import kodkod.util.ints.IntTreeSet;
+
+// ALUMINUM: lets repeated runs of the same command skip translation
+
+/**
+ * An on-disk cache of translations. A translation is stored in a file of the cache directory named
+ * after a SHA-1 hash of the structure of the formula (see KeyEncoder), the bounds, and the options 
+ * that affect translation. The file keeps everything MinTranslation needs: the skolemizations, the 
+ * bounds (relations by name, skolem constants by skolemization), the primary variables of every 
+ * relation, the CNF, the SBP clauses, the symmetry partitions and the broken permutations. On a hit, 
+ * the file is memory-mapped and the translation is rebuilt from it, without running any of the 
+ * translation steps.
+ *
+ * A skolemization is stored as the name and arity of its skolem constant, and the positions of its
+ * declaration and of the declarations of its context in KeyEncoder's numbering of the nodes of the 
+ * formula. Formulas with the same key have the same numbering, so on a hit the positions give back the
+ * declarations of the formula being translated, and options.reporter().skolemizing(..) is called with 
+ * them, in the original order, as a translation would. Callers such as MinA4Solution rely on it to 
+ * type the skolem constants.
+ *
+ * The cache is best-effort: a file that cannot be read or written is ignored, and the formula is
+ * translated as usual. Translations are not cached if they are logged, or if two relations of the
+ * bounds have the same name, since relations are found again by name. Nor are translations with a
+ * skolemized declaration that is not a node of the formula (e.g., one made by inlining a predicate),
+ * since it has no position.
+ */
+final class MinTranslationCache {
+	private static final int MAGIC = 0x414C5443; // "ALTC"
+	private static final int VERSION = 3;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private MinTranslationCache() {}
+
+	/**
+	 * Returns the translation of the given formula with respect to the given bounds and options,
+	 * from the cache directory of the given extra options if it has it, and otherwise from 
+	 * MinTranslator.translate(..), in which case the result is stored in the cache directory if it can
+	 * be. The solver of the result keeps the clauses of the formula if recordFormula is set (and, on a 
+	 * miss, in any case, since they are stored).
+	 * @requires options.logTranslation() = 0 && some extraOptions.translationCacheDirectory()
+	 * @effects options.reporter().skolemizing(..) is called for every skolemization of the result, and then
+	 * options.reporter().translatingToBoolean(..) with the bounds of the result
+	 * @throws TrivialFormulaException - the given formula is reduced to a constant during translation
+	 * @see MinTranslator#translate(Formula, Bounds, Options)
+	 */
+	static MinTranslation translate(Formula formula, Bounds bounds, Options options, MinExtraOptions extraOptions,
+			boolean recordFormula) throws TrivialFormulaException {
+		final File directory = extraOptions.translationCacheDirectory();
+		final Map<String, Relation> relations = relationsByName(bounds);
+		if (relations == null)
+			return MinTranslator.translateWithoutCache(formula, bounds, options, extraOptions, recordFormula);
+
+		final List<Node> nodes = new ArrayList<Node>();
+		final File file = new File(directory, key(formula, bounds, options, nodes) + ".cnf");
+		if (file.isFile()) {
+			try {
+				final MinTranslation translation = load(file, bounds, relations, nodes, options, recordFormula);
+				for (MinTranslation.Skolemization s : translation.skolemizations)
+					options.reporter().skolemizing(s.decl, s.skolem, s.context);
+				options.reporter().translatingToBoolean(formula, translation.bounds());
+				return translation;
+			} catch (IOException e) {
+				// Unreadable; translate again and overwrite it.
+			} catch (RuntimeException e) {
+				// Truncated or malformed (e.g., BufferUnderflowException); likewise.
+			}
+		}
+
+		// The clauses of the formula are recorded to be stored.
+		final MinTranslation translation = MinTranslator.translateWithoutCache(formula, bounds, options, extraOptions, true);
+		final Map<Node, Integer> positions = new IdentityHashMap<Node, Integer>();
+		for (Node node : nodes)
+			positions.put(node, positions.size());
+		if (!storable(translation, bounds, positions))
+			return translation;
+		try {
+			directory.mkdirs();
+			store(translation, bounds, positions, file);
+		} catch (IOException e) {
+			// The cache is best-effort.
+		}
+		return translation;
+	}
+
+	/**
+	 * Returns true if every skolemized declaration of the given translation, and every declaration of 
+	 * their contexts, has a position, and every relation of its bounds that is not in origBounds is 
+	 * the skolem constant of one of its skolemizations.
+	 */
+	private static boolean storable(MinTranslation translation, Bounds origBounds, Map<Node, Integer> positions) {
+		final Set<Relation> skolems = new LinkedHashSet<Relation>();
+		for (MinTranslation.Skolemization s : translation.skolemizations) {
+			if (!positions.containsKey(s.decl))
+				return false;
+			for (Decl decl : s.context)
+				if (!positions.containsKey(decl))
+					return false;
+			skolems.add(s.skolem);
+		}
+		for (Relation r : translation.bounds().relations())
+			if (!origBounds.relations().contains(r) && !skolems.contains(r))
+				return false;
+		return true;
+	}
+
+	/**
+	 * Returns the relations of the given bounds by name, or null if two of them have the same name.
+	 */
+	private static Map<String, Relation> relationsByName(Bounds bounds) {
+		final Map<String, Relation> result = new HashMap<String, Relation>();
+		for (Relation r : bounds.relations())
+			if (result.put(r.name(), r) != null)
+				return null;
+		return result;
+	}
+
+	/**
+	 * Returns a hex SHA-1 hash of the structure of the given formula, of the bounds, and of the 
+	 * options that affect translation.
+	 * @effects nodes' = nodes + the nodes of the formula, in the order of their numbering by KeyEncoder
+	 */
+	private static String key(Formula formula, Bounds bounds, Options options, List<Node> nodes) {
+		try {
+			final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+			final StringBuilder b = new StringBuilder();
+			b.append(VERSION).append('\n');
+			b.append(options.symmetryBreaking()).append(' ').append(options.skolemDepth()).append(' ')
+				.append(options.bitwidth()).append(' ').append(options.intEncoding()).append(' ')
+				.append(options.flatten()).append(' ').append(options.sharing()).append('\n');
+			final Universe universe = bounds.universe();
+			for (int i = 0; i < universe.size(); i++)
+				b.append(universe.atom(i)).append(' ');
+			b.append('\n');
+			for (Relation r : bounds.relations()) {
+				b.append(r.name()).append(' ').append(r.arity());
+				b.append(' ').append(bounds.lowerBound(r).indexView());
+				b.append(' ').append(bounds.upperBound(r).indexView()).append('\n');
+			}
+			for (IntIterator iter = bounds.ints().iterator(); iter.hasNext();) {
+				final int i = iter.next();
+				b.append(i).append(' ').append(bounds.exactBound(i).indexView()).append('\n');
+			}
+			digest.update(b.toString().getBytes(UTF8));
+			formula.accept(new KeyEncoder(digest, nodes));
+
+			final StringBuilder hex = new StringBuilder();
+			for (byte x : digest.digest())
+				hex.append(Character.forDigit((x >> 4) & 0xF, 16)).append(Character.forDigit(x & 0xF, 16));
+			return hex.toString();
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e); // every JRE has SHA-1
+		}
+	}
+
+	/**
+	 * Writes the given translation of a formula with respect to origBounds to the given file, with
+	 * the declarations of its skolemizations by their positions in the formula.
+	 * The file is written next to its final name first, and then renamed.
+	 * @requires storable(translation, origBounds, positions)
+	 */
+	private static void store(MinTranslation translation, Bounds origBounds, Map<Node, Integer> positions, File file) 
+			throws IOException {
+		final File temp = File.createTempFile(file.getName(), ".tmp", file.getParentFile());
+		final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+		try {
+			out.writeInt(MAGIC);
+			out.writeInt(VERSION);
+
+			final Map<Relation, Integer> skolems = new IdentityHashMap<Relation, Integer>();
+			out.writeInt(translation.skolemizations.size());
+			for (MinTranslation.Skolemization s : translation.skolemizations) {
+				skolems.put(s.skolem, skolems.size());
+				final String name = s.skolem.name();
+				out.writeInt(name.length());
+				out.writeChars(name);
+				out.writeInt(s.skolem.arity());
+				out.writeInt(positions.get(s.decl));
+				out.writeInt(s.context.size());
+				for (Decl decl : s.context)
+					out.writeInt(positions.get(decl));
+			}
+
+			final Bounds bounds = translation.bounds();
+			out.writeInt(bounds.relations().size());
+			for (Relation r : bounds.relations()) {
+				// A skolem constant is written as its skolemization, since its name need not be unique.
+				final Integer skolem = skolems.get(r);
+				out.writeInt((skolem == null) ? -1 : skolem);
+				final String name = r.name();
+				out.writeInt(name.length());
+				out.writeChars(name);
+				out.writeInt(r.arity());
+				writeInts(out, bounds.lowerBound(r).indexView());
+				writeInts(out, bounds.upperBound(r).indexView());
+				final IntSet vars = translation.primaryVariables(r);
+				writeInts(out, (vars == null) ? new IntTreeSet() : vars);
+			}
+			writeInts(out, bounds.ints());
+
+			final MinSATSolver cnf = translation.cnf();
+			out.writeInt(translation.numPrimaryVariables());
+			out.writeInt(cnf.numberOfFormulaVariables());
+			writeInts(out, cnf.formulaClauses());
+			writeInts(out, cnf.sbpClauses());
+
+			out.writeInt(translation.symmetries.size());
+			for (IntSet part : translation.symmetries)
+				writeInts(out, part);
+			out.writeInt(translation.permutations.size());
+			for (Map<Integer, Integer> aPerm : translation.permutations) {
+				out.writeInt(aPerm.size());
+				for (Map.Entry<Integer, Integer> entry : aPerm.entrySet()) {
+					out.writeInt(entry.getKey());
+					out.writeInt(entry.getValue());
+				}
+			}
+		} finally {
+			out.close();
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("cannot rename " + temp + " to " + file);
+			}
+		}
+	}
+
+	/**
+	 * Reads a translation from the given file, finding the original relations in the given map, and the 
+	 * declarations of its skolemizations in the given nodes, numbered as by KeyEncoder. Its solver keeps
+	 * the clauses of the formula if recordFormula is set.
+	 * @throws IOException - the file cannot be read, or is not a translation in this format
+	 */
+	private static MinTranslation load(File file, Bounds origBounds, Map<String, Relation> relations, List<Node> nodes, 
+			Options options, boolean recordFormula) throws IOException {
+		final FileInputStream in = new FileInputStream(file);
+		final MappedByteBuffer buf;
+		try {
+			final FileChannel channel = in.getChannel();
+			buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			in.close();
+		}
+		try {
+			if (buf.getInt() != MAGIC || buf.getInt() != VERSION)
+				throw new IOException("not a translation: " + file);
+
+			final List<MinTranslation.Skolemization> skolemizations = new ArrayList<MinTranslation.Skolemization>();
+			final int numSkolems = buf.getInt();
+			for (int i = 0; i < numSkolems; i++) {
+				final Relation skolem = Relation.nary(readString(buf), buf.getInt());
+				final Decl decl = readDecl(buf, nodes, file);
+				final List<Decl> context = new ArrayList<Decl>();
+				final int depth = buf.getInt();
+				for (int j = 0; j < depth; j++)
+					context.add(readDecl(buf, nodes, file));
+				skolemizations.add(new MinTranslation.Skolemization(decl, skolem, context));
+			}
+
+			final Bounds bounds = new Bounds(origBounds.universe());
+			final TupleFactory factory = bounds.universe().factory();
+			final Map<Relation, IntSet> varUsage = new LinkedHashMap<Relation, IntSet>();
+			final int numRelations = buf.getInt();
+			for (int i = 0; i < numRelations; i++) {
+				final int skolem = buf.getInt();
+				final String name = readString(buf);
+				final int arity = buf.getInt();
+				final Relation r = (skolem < 0) ? relations.get(name) : skolemizations.get(skolem).skolem;
+				if (r == null || r.arity() != arity)
+					throw new IOException("unknown relation " + name + " in " + file);
+				final TupleSet lower = factory.setOf(arity, readIntSet(buf));
+				final TupleSet upper = factory.setOf(arity, readIntSet(buf));
+				bounds.bound(r, lower, upper);
+				final IntSet vars = readIntSet(buf);
+				if (!vars.isEmpty())
+					varUsage.put(r, vars);
+			}
+			final int[] ints = readInts(buf);
+			for (int i : ints)
+				bounds.boundExactly(i, origBounds.exactBound(i));
+
+			final int maxPrimaryLit = buf.getInt();
+			final int numVars = buf.getInt();
+			final MinSATSolver cnf = (MinSATSolver) options.solver().instance();
+			cnf.setNumPrimaryVariables(maxPrimaryLit);
+			if (recordFormula)
+				cnf.recordFormula();
+			cnf.addVariables(numVars);
+			final int[] clauses = readInts(buf);
+			for (int k = 0; k < clauses.length; k += clauses[k] + 1)
+				cnf.addClause(Arrays.copyOfRange(clauses, k + 1, k + 1 + clauses[k]));
+			final int[] sbpClauses = readInts(buf);
+			for (int k = 0; k < sbpClauses.length; k += sbpClauses[k] + 1)
+				cnf.addSBPClause(Arrays.copyOfRange(sbpClauses, k + 1, k + 1 + sbpClauses[k]));
+
+			final Set<IntSet> symmetries = new LinkedHashSet<IntSet>();
+			final int numParts = buf.getInt();
+			for (int i = 0; i < numParts; i++)
+				symmetries.add(readIntSet(buf));
+			// Kept in the stored order, which decides the permuted cone restrictions that are added.
+			final List<Map<Integer, Integer>> perms = new ArrayList<Map<Integer, Integer>>();
+			final int numPerms = buf.getInt();
+			for (int i = 0; i < numPerms; i++) {
+				final Map<Integer, Integer> aPerm = new HashMap<Integer, Integer>();
+				final int size = buf.getInt();
+				for (int j = 0; j < size; j++)
+					aPerm.put(buf.getInt(), buf.getInt());
+				perms.add(aPerm);
+			}
+
+			return new MinTranslation(cnf, bounds, varUsage, maxPrimaryLit, null, symmetries,
+					new LinkedHashSet<Map<Integer, Integer>>(perms), skolemizations);
+		} catch (BufferUnderflowException e) {
+			throw new IOException("truncated translation: " + file);
+		}
+	}
+
+	/**
+	 * Feeds the structure of a formula to a digest, for its cache key. A node is written as its kind 
+	 * and operator, followed by its children. Relations and constants are written by name. Variables 
+	 * are written by the order in which they are first met, so distinct variables with the same name 
+	 * stay distinct. Unlike the printed formula, this keeps every node apart from the others. The 
+	 * formula is a DAG, and how its nodes are shared changes the translation, so a node met again is 
+	 * written as a reference to its first occurrence.
+	 */
+	private static final class KeyEncoder implements VoidVisitor {
+		private final MessageDigest digest;
+		/** The nodes met so far, numbered in the order in which they were first met. */
+		private final Map<Node, Integer> seen = new IdentityHashMap<Node, Integer>();
+		/** The nodes met so far, in the order of their numbers. */
+		private final List<Node> nodes;
+
+		KeyEncoder(MessageDigest digest, List<Node> nodes) {
+			this.digest = digest;
+			this.nodes = nodes;
+		}
+
+		private void write(int i) {
+			digest.update((byte) (i >>> 24));
+			digest.update((byte) (i >>> 16));
+			digest.update((byte) (i >>> 8));
+			digest.update((byte) i);
+		}
+
+		private void write(Object token) {
+			final byte[] bytes = String.valueOf(token).getBytes(UTF8);
+			write(bytes.length);
+			digest.update(bytes);
+		}
+
+		/**
+		 * Writes a reference to the given node and returns true if it was met before; 
+		 * otherwise, numbers it, writes the given kind, and returns false.
+		 */
+		private boolean visited(Node node, String kind) {
+			final Integer id = seen.get(node);
+			if (id != null) {
+				write("@");
+				write(id);
+				return true;
+			}
+			seen.put(node, seen.size());
+			nodes.add(node);
+			write(kind);
+			return false;
+		}
+
+		public void visit(Decls decls) {
+			if (visited(decls, "decls")) return;
+			write(decls.size());
+			for (Decl decl : decls)
+				decl.accept(this);
+		}
+
+		public void visit(Decl decl) {
+			if (visited(decl, "decl")) return;
+			write(decl.multiplicity());
+			decl.variable().accept(this);
+			decl.expression().accept(this);
+		}
+
+		public void visit(Relation relation) {
+			if (visited(relation, "relation")) return;
+			write(relation.name());
+			write(relation.arity());
+		}
+
+		public void visit(Variable variable) {
+			if (visited(variable, "variable")) return;
+			write(variable.arity());
+		}
+
+		public void visit(ConstantExpression constExpr) {
+			if (visited(constExpr, "constant")) return;
+			write(constExpr.name());
+		}
+
+		public void visit(UnaryExpression unaryExpr) {
+			if (visited(unaryExpr, "unary")) return;
+			write(unaryExpr.op());
+			unaryExpr.expression().accept(this);
+		}
+
+		public void visit(BinaryExpression binExpr) {
+			if (visited(binExpr, "binary")) return;
+			write(binExpr.op());
+			binExpr.left().accept(this);
+			binExpr.right().accept(this);
+		}
+
+		public void visit(NaryExpression expr) {
+			if (visited(expr, "nary")) return;
+			write(expr.op());
+			write(expr.size());
+			for (int i = 0; i < expr.size(); i++)
+				expr.child(i).accept(this);
+		}
+
+		public void visit(Comprehension comprehension) {
+			if (visited(comprehension, "comprehension")) return;
+			comprehension.decls().accept(this);
+			comprehension.formula().accept(this);
+		}
+
+		public void visit(IfExpression ifExpr) {
+			if (visited(ifExpr, "if")) return;
+			ifExpr.condition().accept(this);
+			ifExpr.thenExpr().accept(this);
+			ifExpr.elseExpr().accept(this);
+		}
+
+		public void visit(ProjectExpression project) {
+			if (visited(project, "project")) return;
+			project.expression().accept(this);
+			write(project.arity());
+			for (int i = 0; i < project.arity(); i++)
+				project.column(i).accept(this);
+		}
+
+		public void visit(IntToExprCast castExpr) {
+			if (visited(castExpr, "intcast")) return;
+			write(castExpr.op());
+			castExpr.intExpr().accept(this);
+		}
+
+		public void visit(IntConstant intConst) {
+			if (visited(intConst, "int")) return;
+			write(intConst.value());
+		}
+
+		public void visit(IfIntExpression intExpr) {
+			if (visited(intExpr, "ifint")) return;
+			intExpr.condition().accept(this);
+			intExpr.thenExpr().accept(this);
+			intExpr.elseExpr().accept(this);
+		}
+
+		public void visit(ExprToIntCast intExpr) {
+			if (visited(intExpr, "exprcast")) return;
+			write(intExpr.op());
+			intExpr.expression().accept(this);
+		}
+
+		public void visit(NaryIntExpression intExpr) {
+			if (visited(intExpr, "naryint")) return;
+			write(intExpr.op());
+			write(intExpr.size());
+			for (int i = 0; i < intExpr.size(); i++)
+				intExpr.child(i).accept(this);
+		}
+
+		public void visit(BinaryIntExpression intExpr) {
+			if (visited(intExpr, "binaryint")) return;
+			write(intExpr.op());
+			intExpr.left().accept(this);
+			intExpr.right().accept(this);
+		}
+
+		public void visit(UnaryIntExpression intExpr) {
+			if (visited(intExpr, "unaryint")) return;
+			write(intExpr.op());
+			intExpr.intExpr().accept(this);
+		}
+
+		public void visit(SumExpression intExpr) {
+			if (visited(intExpr, "sum")) return;
+			intExpr.decls().accept(this);
+			intExpr.intExpr().accept(this);
+		}
+
+		public void visit(IntComparisonFormula intComp) {
+			if (visited(intComp, "intcomparison")) return;
+			write(intComp.op());
+			intComp.left().accept(this);
+			intComp.right().accept(this);
+		}
+
+		public void visit(QuantifiedFormula quantFormula) {
+			if (visited(quantFormula, "quantified")) return;
+			write(quantFormula.quantifier());
+			quantFormula.decls().accept(this);
+			quantFormula.formula().accept(this);
+		}
+
+		public void visit(NaryFormula formula) {
+			if (visited(formula, "naryformula")) return;
+			write(formula.op());
+			write(formula.size());
+			for (int i = 0; i < formula.size(); i++)
+				formula.child(i).accept(this);
+		}
+
+		public void visit(BinaryFormula binFormula) {
+			if (visited(binFormula, "binaryformula")) return;
+			write(binFormula.op());
+			binFormula.left().accept(this);
+			binFormula.right().accept(this);
+		}
+
+		public void visit(NotFormula not) {
+			if (visited(not, "not")) return;
+			not.formula().accept(this);
+		}
+
+		public void visit(ConstantFormula constant) {
+			if (visited(constant, "constantformula")) return;
+			write(constant.booleanValue());
+		}
+
+		public void visit(ComparisonFormula compFormula) {
+			if (visited(compFormula, "comparison")) return;
+			write(compFormula.op());
+			compFormula.left().accept(this);
+			compFormula.right().accept(this);
+		}
+
+		public void visit(MultiplicityFormula multFormula) {
+			if (visited(multFormula, "multiplicity")) return;
+			write(multFormula.multiplicity());
+			multFormula.expression().accept(this);
+		}
+
+		public void visit(RelationPredicate predicate) {
+			if (visited(predicate, "predicate")) return;
+			write(predicate.name());
+			predicate.relation().accept(this);
+			switch (predicate.name()) {
+			case ACYCLIC:
+				break;
+			case FUNCTION:
+				final RelationPredicate.Function fn = (RelationPredicate.Function) predicate;
+				write(fn.targetMult());
+				fn.domain().accept(this);
+				fn.range().accept(this);
+				break;
+			case TOTAL_ORDERING:
+				final RelationPredicate.TotalOrdering tord = (RelationPredicate.TotalOrdering) predicate;
+				tord.ordered().accept(this);
+				tord.first().accept(this);
+				tord.last().accept(this);
+				break;
+			default:
+				throw new IllegalArgumentException("unknown relation predicate: " + predicate.name());
+			}
+		}
+	}
+
+	private static void writeInts(DataOutputStream out, IntSet ints) throws IOException {
+		out.writeInt(ints.size());
+		for (IntIterator iter = ints.iterator(); iter.hasNext();)
+			out.writeInt(iter.next());
+	}
+
+	private static void writeInts(DataOutputStream out, int[] ints) throws IOException {
+		out.writeInt(ints.length);
+		for (int i : ints)
+			out.writeInt(i);
+	}
+
+	private static String readString(MappedByteBuffer buf) {
+		final char[] chars = new char[buf.getInt()];
+		for (int i = 0; i < chars.length; i++)
+			chars[i] = buf.getChar();
+		return new String(chars);
+	}
+
+	/**
+	 * Reads a position and returns the declaration at that position of the given nodes.
+	 * @throws IOException - the position is not that of a declaration
+	 */
+	private static Decl readDecl(MappedByteBuffer buf, List<Node> nodes, File file) throws IOException {
+		final int position = buf.getInt();
+		if (position < 0 || position >= nodes.size() || !(nodes.get(position) instanceof Decl))
+			throw new IOException("no declaration at " + position + " in " + file);
+		return (Decl) nodes.get(position);
+	}
+
+	private static int[] readInts(MappedByteBuffer buf) {
+		final int[] result = new int[buf.getInt()];
+		buf.asIntBuffer().get(result);
+		buf.position(buf.position() + 4 * result.length);
+		return result;
+	}
+
+	private static IntSet readIntSet(MappedByteBuffer buf) {
+		final IntSet result = new IntTreeSet();
+		for (int i : readInts(buf))
+			result.add(i);
+		return result;
+	}
+}
@@ -21,12 +21,22 @@
  */
 package minkodkod.engine.fol2sat;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import minkodkod.MinClauseBuffer;
+import minkodkod.MinExtraOptions;
+import minkodkod.MinFlightRecorder;
+import minkodkod.MinReporterToGatherSkolemBounds;
 import minkodkod.MinSATSolver;
 
+import kodkod.ast.Decl;
 import kodkod.ast.Expression;
 import kodkod.ast.Formula;
 import kodkod.ast.IntExpression;
@@ -42,7 +52,9 @@ import kodkod.engine.bool.BooleanMatrix;
 import kodkod.engine.bool.BooleanValue;
 import kodkod.engine.bool.Int;
 import kodkod.engine.bool.Operator;
+import kodkod.engine.config.AbstractReporter;
 import kodkod.engine.config.Options;
+import kodkod.engine.config.Reporter;
 import kodkod.instance.Bounds;
 import kodkod.instance.Instance;
 import kodkod.util.ints.IntSet;
@@ -125,33 +137,151 @@ public final class MinTranslator {
 	 * be skolemized, or it can be skolemized but options.skolemize is false.
 	 */
 	public static MinTranslation translate(Formula formula, Bounds bounds, Options options) throws TrivialFormulaException {
-		return (new MinTranslator(formula,bounds,options)).translate();
+		return (new MinTranslator(formula,bounds,options,new MinExtraOptions(),false)).translate();
 	}
 	
+	/**
+	 * Translates the given formula using the specified bounds and options, as translate(formula, bounds, options)
+	 * does, but first looks for the translation in the given cache directory, and stores it there if it is not 
+	 * found. If cacheDirectory is null, or the translation is logged (options.logTranslation() > 0), the cache 
+	 * is not used.
+	 * @return a Translation of the given formula, as translate(formula, bounds, options)
+	 * @throws TrivialFormulaException - the given formula is reduced to a constant during translation
+	 * (i.e. the formula is trivially (un)satisfiable).
+	 * @throws NullPointerException - formula = null || bounds = null || options = null
+	 * @throws UnboundLeafException - the formula refers to an undeclared variable or a relation not mapped by the given bounds.
+	 * @throws MinHigherOrderDeclException - the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but options.skolemize is false.
+	 * @see MinTranslationCache
+	 */
+	public static MinTranslation translate(Formula formula, Bounds bounds, Options options, File cacheDirectory) throws TrivialFormulaException {
+		final MinExtraOptions extraOptions = new MinExtraOptions();
+		extraOptions.setTranslationCacheDirectory(cacheDirectory);
+		return translate(formula, bounds, options, extraOptions);
+	}
+
+	/**
+	 * Translates the given formula using the specified bounds and options, as translate(formula, bounds, options,
+	 * extraOptions.translationCacheDirectory()) does, but with the translation settings of the given extra options:
+	 * the top-level conjuncts of the formula are translated to boolean circuits on extraOptions.translationThreads() 
+	 * threads, unless the translation is logged, and the caches of the translation to circuits are bounded by 
+	 * extraOptions.circuitCacheBudget(). The resulting CNF may differ from the sequential one, but it has the same 
+	 * models over the primary variables. If options.reporter() is a MinReporterToGatherSkolemBounds, it gets the 
+	 * hits, misses and evictions of the caches. The solver of the translation keeps the clauses of the formula,
+	 * so that it can be copied, iff extraOptions.consistentFactsThreads() > 1.
+	 * @return a Translation of the given formula, as translate(formula, bounds, options)
+	 * @throws TrivialFormulaException - the given formula is reduced to a constant during translation
+	 * (i.e. the formula is trivially (un)satisfiable).
+	 * @throws NullPointerException - any of the arguments are null
+	 * @throws UnboundLeafException - the formula refers to an undeclared variable or a relation not mapped by the given bounds.
+	 * @throws MinHigherOrderDeclException - the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but options.skolemize is false.
+	 * @see MinConjunctTranslator
+	 * @see FOL2BoolCache
+	 */
+	public static MinTranslation translate(Formula formula, Bounds bounds, Options options, MinExtraOptions extraOptions) 
+	throws TrivialFormulaException {
+		return translate(formula, bounds, options, extraOptions, extraOptions.consistentFactsThreads() > 1);
+	}
+
+	/**
+	 * Translates the given formula as translate(formula, bounds, options, extraOptions) does, but the 
+	 * solver of the translation keeps the clauses of the formula iff recordFormula is set, e.g. for a
+	 * caller that solves copies of it (see MinSATSolver.copyOfFormula()).
+	 * @return a Translation of the given formula, as translate(formula, bounds, options)
+	 * @throws TrivialFormulaException - the given formula is reduced to a constant during translation
+	 * (i.e. the formula is trivially (un)satisfiable).
+	 * @throws NullPointerException - any of the arguments are null
+	 * @throws UnboundLeafException - the formula refers to an undeclared variable or a relation not mapped by the given bounds.
+	 * @throws MinHigherOrderDeclException - the formula contains a higher order declaration that cannot
+	 * be skolemized, or it can be skolemized but options.skolemize is false.
+	 * @see MinSATSolver#recordFormula()
+	 */
+	public static MinTranslation translate(Formula formula, Bounds bounds, Options options, MinExtraOptions extraOptions,
+			boolean recordFormula) throws TrivialFormulaException {
+		if (extraOptions.translationCacheDirectory() == null || options.logTranslation() > 0)
+			return translateWithoutCache(formula, bounds, options, extraOptions, recordFormula);
+		return MinTranslationCache.translate(formula, bounds, options, extraOptions, recordFormula);
+	}
+
+	/**
+	 * Translates the given formula as translate(formula, bounds, options, extraOptions, recordFormula) does, 
+	 * but without the cache directory of the extra options.
+	 * @return a Translation of the given formula, as translate(formula, bounds, options)
+	 * @throws TrivialFormulaException - the given formula is reduced to a constant during translation
+	 */
+	static MinTranslation translateWithoutCache(Formula formula, Bounds bounds, Options options, MinExtraOptions extraOptions,
+			boolean recordFormula) throws TrivialFormulaException {
+		return (new MinTranslator(formula,bounds,options,extraOptions,recordFormula)).translate();
+	}
+
+	/**
+	 * Reads the CNF in the given DIMACS file into a new solver, without translating any formula.
+	 * Every variable of the CNF is primary: variable i stands for the atom "i" of a unary relation
+	 * v, whose upper bound is the universe of atoms "1" to "n", n being the number of variables
+	 * declared by the file. The translation has no symmetries.
+	 * @return a Translation whose solver is a SATSolver instance initialized with the clauses of the given file
+	 * @effects options.reporter().translatingToBoolean(Formula.TRUE, bounds of the translation)
+	 * @throws IOException - the file cannot be read, or it is not a CNF in DIMACS format
+	 * @throws TrivialFormulaException - the CNF is trivially unsatisfiable (e.g., it has an empty clause)
+	 * @throws NullPointerException - dimacs = null || options = null
+	 * @see MinDimacsReader
+	 */
+	public static MinTranslation translate(File dimacs, Options options) throws IOException, TrivialFormulaException {
+		return translate(dimacs, options, false);
+	}
+
+	/**
+	 * Reads the CNF in the given DIMACS file as translate(dimacs, options) does, but the solver 
+	 * of the translation keeps the clauses of the CNF iff recordFormula is set.
+	 * @return a Translation whose solver is a SATSolver instance initialized with the clauses of the given file
+	 * @throws IOException - the file cannot be read, or it is not a CNF in DIMACS format
+	 * @throws TrivialFormulaException - the CNF is trivially unsatisfiable (e.g., it has an empty clause)
+	 * @throws NullPointerException - dimacs = null || options = null
+	 * @see MinSATSolver#recordFormula()
+	 */
+	public static MinTranslation translate(File dimacs, Options options, boolean recordFormula) 
+			throws IOException, TrivialFormulaException {
+		return MinDimacsReader.translate(dimacs, options, recordFormula);
+	}
+
 	/*---------------------- private translation state and methods ----------------------*/
 	/**
 	 * @specfield formula: Formula
 	 * @specfield bounds: Bounds
 	 * @specfield options: Options
 	 * @specfield log: TranslationLog
+	 * @specfield extraOptions: MinExtraOptions
 	 */
 	private final Formula formula;
 	private final Bounds bounds;
 	private final Options options;
+	private final MinExtraOptions extraOptions;
+	/** If set, the solver of the translation keeps the clauses of the formula (see MinSATSolver.recordFormula()). */
+	private final boolean recordFormula;
+	/** The skolemizations reported so far, if the translation may be cached; otherwise null. */
+	private final List<MinTranslation.Skolemization> skolemizations;
 	
 	private TranslationLog log;
 		
 	/**
-	 * Constructs a Translator for the given formula, bounds and options.
+	 * Constructs a Translator for the given formula, bounds, options and extra options.
 	 * @effects this.formula' = formula and 
 	 * 	this.options' = options and 
 	 * 	this.bounds' = bounds.clone() and
+	 * 	this.extraOptions' = extraOptions and
+	 * 	this.recordFormula' = recordFormula and
+	 * 	(some extraOptions.translationCacheDirectory() => no this.skolemizations' else this.skolemizations' = null) and
 	 *  no this.log'
 	 */
-	private MinTranslator(Formula formula, Bounds bounds, Options options) {
+	private MinTranslator(Formula formula, Bounds bounds, Options options, MinExtraOptions extraOptions, boolean recordFormula) {
 		this.formula = formula;
 		this.bounds = bounds.clone();
 		this.options = options;
+		this.extraOptions = extraOptions;
+		this.recordFormula = recordFormula;
+		this.skolemizations = (extraOptions.translationCacheDirectory() == null) ? null 
+				: new ArrayList<MinTranslation.Skolemization>();
 		this.log = null;
 	}
 	
@@ -183,12 +313,15 @@ public final class MinTranslator {
 	 * @return { b: SymmetryBreaker | b.bounds = this.bounds' }
 	 */
 	private MinSymmetryBreaker optimizeBounds(AnnotatedNode<Formula> annotated) {	
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("optimizeBounds");
 		// remove bindings for unused relations/ints
 		bounds.relations().retainAll(annotated.relations());
 		if (!annotated.usesInts()) bounds.ints().clear();
 		
 		// detect symmetries
-		return new MinSymmetryBreaker(bounds, options.reporter());
+		final MinSymmetryBreaker breaker = new MinSymmetryBreaker(bounds, options.reporter());
+		event.translated(0, 0, 0);
+		return breaker;
 	}
 	
 	/**
@@ -205,13 +338,13 @@ public final class MinTranslator {
 
 		if (options.logTranslation()==0) { // no logging
 			annotated = inlinePredicates(annotated, breaker.breakMatrixSymmetries(annotated.predicates(), true).keySet());
-			return options.skolemDepth()>=0 ? Skolemizer.skolemize(annotated, bounds, options) : annotated;
+			return options.skolemDepth()>=0 ? skolemize(annotated) : annotated;
 		} else { // logging; inlining of predicates *must* happen last when logging is enabled
 			if (options.coreGranularity()==1) { 
 				annotated = FormulaFlattener.flatten(annotated, false);
 			}
 			if (options.skolemDepth()>=0) {
-				annotated = Skolemizer.skolemize(annotated, bounds, options);
+				annotated = skolemize(annotated);
 			}
 			if (options.coreGranularity()>1) { 
 				annotated = FormulaFlattener.flatten(annotated, options.coreGranularity()==3);
@@ -220,6 +353,32 @@ public final class MinTranslator {
 		}
 	}
 	
+	/**
+	 * Skolemizes the given annotated formula, up to depth this.options.skolemDepth, 
+	 * and adds the skolem constants to this.bounds. If this.skolemizations is not null,
+	 * the skolemizations reported to this.options.reporter() are also appended to it.
+	 * @return Skolemizer.skolemize(annotated, this.bounds, this.options)
+	 */
+	private AnnotatedNode<Formula> skolemize(AnnotatedNode<Formula> annotated) {
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("skolemize");
+		final AnnotatedNode<Formula> skolemized;
+		if (skolemizations == null) {
+			skolemized = Skolemizer.skolemize(annotated, bounds, options);
+		} else {
+			final Reporter reporter = options.reporter();
+			skolemized = Skolemizer.skolemize(annotated, bounds, options, new AbstractReporter() {
+				@Override
+				public void skolemizing(Decl decl, Relation skolem, List<Decl> context) {
+					reporter.skolemizing(decl, skolem, context);
+					// The context is a view of the skolemizer's scope, which changes as it goes on.
+					skolemizations.add(new MinTranslation.Skolemization(decl, skolem, new ArrayList<Decl>(context)));
+				}
+			});
+		}
+		event.translated(0, 0, 0);
+		return skolemized;
+	}
+	
 	/**
 	 * Returns an annotated formula f such that f.node is equivalent to annotated.node
 	 * with its <tt>truePreds</tt> replaced with the constant formula TRUE and the remaining
@@ -307,10 +466,12 @@ public final class MinTranslator {
 		options.reporter().translatingToBoolean(annotated.node(), bounds);
 		
 		final LeafInterpreter interpreter = LeafInterpreter.exact(bounds, options);
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("toBoolean");
 		
 		if (options.logTranslation()>0) {
 			final TranslationLogger logger = options.logTranslation()==1 ? new MemoryLogger(annotated, bounds) : new FileLogger(annotated, bounds);
 			final BooleanAccumulator circuit = FOL2BoolTranslator.translate(annotated, interpreter, logger);
+			event.translated(interpreter.factory().numberOfVariables(), 0, 0);
 			log = logger.log();
 			if (circuit.isShortCircuited()) {
 				throw new TrivialFormulaException(annotated.node(), bounds, circuit.op().shortCircuit(), log);
@@ -319,7 +480,13 @@ public final class MinTranslator {
 			}
 			return generateSBP(circuit, interpreter, breaker);
 		} else {
-			final BooleanValue circuit = (BooleanValue)FOL2BoolTranslator.translate(annotated, interpreter);
+			final FOL2BoolCache.Budget budget = new FOL2BoolCache.Budget(extraOptions.circuitCacheBudget());
+			final BooleanValue circuit = MinConjunctTranslator.translate(annotated, bounds, options, interpreter, 
+					extraOptions.translationThreads(), budget);
+			if (options.reporter() instanceof MinReporterToGatherSkolemBounds) {
+				((MinReporterToGatherSkolemBounds)options.reporter()).translatedToBoolean(budget.hits(), budget.misses(), budget.evictions());
+			}
+			event.translated(interpreter.factory().numberOfVariables(), 0, 0);
 			if (circuit.op()==Operator.CONST) {
 				throw new TrivialFormulaException(annotated.node(), bounds, (BooleanConstant)circuit, null);
 			} 
@@ -339,7 +506,9 @@ public final class MinTranslator {
 		options.reporter().generatingSBP();
 		final BooleanFactory factory = interpreter.factory();
 		//circuit.add(breaker.generateSBP(interpreter, options.symmetryBreaking())); 
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("generateSBP");
 		BooleanValue sbp = breaker.generateSBP(interpreter, options.symmetryBreaking());
+		event.translated(factory.numberOfVariables(), 0, 0);
 		//return toCNF((BooleanFormula)factory.accumulate(circuit), factory.numberOfVariables(), interpreter.vars());
 		return toCNF((BooleanFormula)factory.accumulate(circuit), 
 				     sbp,
@@ -359,7 +528,9 @@ public final class MinTranslator {
 	private MinTranslation generateSBP(AnnotatedNode<Formula> annotated, BooleanFormula circuit, LeafInterpreter interpreter, MinSymmetryBreaker breaker) 
 	throws TrivialFormulaException {
 		options.reporter().generatingSBP();
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("generateSBP");
 		final BooleanValue sbp = breaker.generateSBP(interpreter, options.symmetryBreaking());						
+		event.translated(interpreter.factory().numberOfVariables(), 0, 0);
 		
 		//return flatten(annotated, (BooleanFormula)factory.and(circuit, sbp), factory.and(circuit, sbp), interpreter);
 		return flatten(annotated, (BooleanFormula)circuit, sbp, interpreter, breaker);
@@ -380,7 +551,9 @@ public final class MinTranslator {
 		final BooleanFactory factory = interpreter.factory();
 		if (options.flatten()) {
 			options.reporter().flattening(circuit);
+			final MinFlightRecorder.Event event = MinFlightRecorder.translation("flatten");
 			final BooleanValue flatCircuit = BooleanFormulaFlattener.flatten(circuit, factory);
+			event.translated(factory.numberOfVariables(), 0, 0);
 			if (flatCircuit.op()==Operator.CONST) {
 				throw new TrivialFormulaException(annotated.node(), bounds, (BooleanConstant)flatCircuit, null);
 			} else {
@@ -405,8 +578,27 @@ public final class MinTranslator {
 	 */
 	private MinTranslation toCNF(BooleanFormula fmlaCircuit, BooleanValue sbpValue, int primaryVars, Map<Relation,IntSet> varUsage, MinSymmetryBreaker breaker) {	
 		options.reporter().translatingToCNF(fmlaCircuit);			
-		final MinSATSolver cnf = MinBool2CNFTranslator.translate((BooleanFormula)fmlaCircuit, sbpValue, options.solver(), primaryVars);		
-		return new MinTranslation(cnf, bounds, varUsage, primaryVars, log, breaker.getSymmetries(), breaker.brokenPermutations);
+		// The clauses are generated first, and then loaded into the solver at once.
+		final MinFlightRecorder.Event event = MinFlightRecorder.translation("toCNF");
+		final MinClauseBuffer clauses = MinBool2CNFTranslator.toClauses(fmlaCircuit, primaryVars);
+		final int numVariables = MinBool2CNFTranslator.numberOfVariables(fmlaCircuit, primaryVars);
+		MinClauseBuffer sbpClauses = null;
+		int numSBPVariables = 0;
+		if (sbpValue instanceof BooleanFormula) {
+			sbpClauses = MinBool2CNFTranslator.toClauses((BooleanFormula) sbpValue, primaryVars);
+			numSBPVariables = MinBool2CNFTranslator.numberOfVariables((BooleanFormula) sbpValue, primaryVars);
+		}
+		event.translated(primaryVars, StrictMath.max(numVariables, numSBPVariables), 
+				clauses.size() + (sbpClauses == null ? 0 : sbpClauses.size()));
+		
+		final MinFlightRecorder.Event load = MinFlightRecorder.translation("loadCNF");
+		final MinSATSolver cnf = MinBool2CNFTranslator.load(options.solver(), primaryVars, clauses, numVariables, 
+				sbpClauses, numSBPVariables, recordFormula);
+		load.translated(primaryVars, cnf.numberOfVariables(), cnf.numberOfClauses());
+		final List<MinTranslation.Skolemization> reported = (skolemizations == null) 
+				? Collections.<MinTranslation.Skolemization>emptyList() : skolemizations;
+		return new MinTranslation(cnf, bounds, varUsage, primaryVars, log, breaker.getSymmetries(), breaker.brokenPermutations,
+				reported);
 	}
 	
 }
\ No newline at end of file
@@ -88,11 +88,22 @@ abstract class Skolemizer extends AbstractReplacer {
 	 * @throws IllegalArgumentException - some Relation & annotated.node.^children - bounds.relations
 	 * @throws UnsupportedOperationException - bounds is unmodifiable
 	 */
-	@SuppressWarnings("unchecked")
 	static AnnotatedNode<Formula> skolemize(final AnnotatedNode<Formula> annotated, Bounds bounds, Options options) {
+		return skolemize(annotated, bounds, options, options.reporter());
+	}
+	
+	/**
+	 * Skolemizes the given annotated formula as skolemize(annotated, bounds, options) does,
+	 * but reports the skolem constants to the given reporter instead of options.reporter().
+	 * @effects upper bound mappings for skolem constants, if any, are added to the bounds
+	 * @return the skolemized version of the given formula
+	 */
+	@SuppressWarnings("unchecked")
+	static AnnotatedNode<Formula> skolemize(final AnnotatedNode<Formula> annotated, Bounds bounds, Options options,
+			Reporter reporter) {
 		if (options.logTranslation()>0) {
 			final Map<Node,Node> source = new IdentityHashMap<Node,Node>();
-			final Skolemizer r = new Skolemizer(annotated, bounds, options) {
+			final Skolemizer r = new Skolemizer(annotated, bounds, options, reporter) {
 				protected Formula source(Formula f, Node n) {
 					//System.out.println("logging " + f + " <-- " + n);
 					final Node nsource = annotated.sourceOf(n);
@@ -103,7 +114,7 @@ abstract class Skolemizer extends AbstractReplacer {
 			final Formula f = annotated.node().accept(r);
 			return f==annotated.node() ? annotated : annotate(f, source);
 		} else {
-			final Skolemizer r = new Skolemizer(annotated, bounds, options) {};
+			final Skolemizer r = new Skolemizer(annotated, bounds, options, reporter) {};
 			final Formula f = annotated.node().accept(r);
 			return f==annotated.node() ? annotated : annotate(f);
 		}
@@ -154,7 +165,7 @@ abstract class Skolemizer extends AbstractReplacer {
 	/**
 	 * Constructs a skolem replacer from the given arguments. 
 	 */
-	private Skolemizer(AnnotatedNode<Formula> annotated, Bounds bounds, Options options) {
+	private Skolemizer(AnnotatedNode<Formula> annotated, Bounds bounds, Options options, Reporter reporter) {
 		super(annotated.sharedNodes());
 
 		// only cache intermediate computations for expressions with no free variables
@@ -167,7 +178,7 @@ abstract class Skolemizer extends AbstractReplacer {
 					this.cache.put(n, null);
 			}
 		}
-		this.reporter = options.reporter();
+		this.reporter = reporter;
 		this.bounds = bounds;
 		this.interpreter = LeafInterpreter.overapproximating(bounds, options);
 		this.repEnv = Environment.empty();
@@ -22,12 +22,16 @@
 package minkodkod.engine.fol2sat;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 import kodkod.ast.Formula;
+import kodkod.ast.Node;
+import kodkod.ast.Variable;
 import kodkod.engine.Solver;
 import kodkod.engine.config.Options;
 import kodkod.instance.Bounds;
+import kodkod.instance.TupleSet;
 
 /**
  * A log of the translations of the descendants of a given formula that 
@@ -104,6 +108,32 @@ public abstract class TranslationLog {
 		return replay(RecordFilter.ALL);
 	}
 	
+	/**
+	 * Returns an iterator over the translation records in this log whose translated formula
+	 * is in the given set and that are accepted by the given filter: the records returned by 
+	 * {@linkplain #replay(RecordFilter) replay(filter)} for those formulas, in the same order.
+	 * The default implementation filters replay(filter). A log that can find the records of 
+	 * a formula without reading the others overrides it.
+	 * @return an iterator, in the proper replay sequence, over the translation records 
+	 * of the given formulas in this log that are accepted by the given filter.
+	 * @see #replay(RecordFilter)
+	 */
+	public Iterator<TranslationRecord> replay(final Set<? extends Node> translated, final RecordFilter filter) {
+		return replay(new RecordFilter() {
+			public boolean accept(Node node, Formula formula, int literal, Map<Variable,TupleSet> env) {
+				return translated.contains(formula) && filter.accept(node, formula, literal, env);
+			}
+		});
+	}
+	
+	/**
+	 * Releases the resources of this log that are not on the heap, if any: the temporary
+	 * file of a log that was written to a file (options.logTranslation() = 2). The log
+	 * cannot be replayed after it is freed. The default implementation does nothing.
+	 * @effects releases the resources of this log
+	 */
+	public void free() {}
+	
 //	/**
 //	 * Compresses this translation log (optional operation) by eliminating
 //	 * redundant records.